@@ -0,0 +1,196 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Runs the slow TownGraphManager calls on a RoutingScheduler
+ * Each call returns right away with a CompletableFuture. Cancelling the future
+ * interrupts the search or load that is still running, so a UI can drop a
+ * search it no longer needs and a server can give up on a timed out request.
+ * @author - Faith Fru Nchang
+ */
+public class AsyncTownGraphManager implements AutoCloseable
+{
+	private final TownGraphManager manager;
+	private final RoutingScheduler scheduler;
+
+	/**
+	 * creates a facade with its own scheduler, running one call per core
+	 * @param manager - manager to run the calls on
+	 */
+	public AsyncTownGraphManager(TownGraphManager manager)
+	{
+		this(manager, new RoutingScheduler());
+	}
+
+	/**
+	 * creates a facade that runs the calls on the given scheduler
+	 * @param manager - manager to run the calls on
+	 * @param scheduler - scheduler for the calls, closed by close
+	 */
+	public AsyncTownGraphManager(TownGraphManager manager, RoutingScheduler scheduler)
+	{
+		this.manager = manager;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * gets the manager the calls run on
+	 * @return manager
+	 */
+	public TownGraphManager getManager()
+	{
+		return manager;
+	}
+
+	/**
+	 * finds the shortest path from town 1 to town 2 in the background
+	 * @param town1 name of town 1
+	 * @param town2 name of town 2
+	 * @return future for the path, see TownGraphManager.getPath
+	 * @throws java.util.concurrent.RejectedExecutionException if the scheduler queue is full
+	 */
+	public CompletableFuture<ArrayList<String>> getPath(String town1, String town2)
+	{
+		return submit(() -> manager.getPath(town1, town2));
+	}
+
+	/**
+	 * finds the shortest path for every pair of towns, the searches run in parallel
+	 * @param pairs each element holds the names of the start and destination towns
+	 * @return future for the paths, in the order of the pairs
+	 * @throws java.util.concurrent.RejectedExecutionException if the scheduler queue is full
+	 */
+	public CompletableFuture<List<ArrayList<String>>> getPaths(List<String[]> pairs)
+	{
+		List<CompletableFuture<ArrayList<String>>> searches = new ArrayList<>();
+		try
+		{
+			for (String[] pair : pairs)
+			{
+				searches.add(getPath(pair[0], pair[1]));
+			}
+		}
+		catch (RuntimeException e)
+		{
+			// a rejected search fails the whole batch, so the ones already queued are dropped
+			searches.forEach(search -> search.cancel(true));
+			throw e;
+		}
+
+		CompletableFuture<List<ArrayList<String>>> result = CompletableFuture
+				.allOf(searches.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> {
+					List<ArrayList<String>> paths = new ArrayList<>();
+					for (CompletableFuture<ArrayList<String>> search : searches)
+					{
+						paths.add(search.join());
+					}
+					return paths;
+				});
+		result.whenComplete((paths, error) -> {
+			if (result.isCancelled())
+				searches.forEach(search -> search.cancel(true));
+		});
+		return result;
+	}
+
+	/**
+	 * finds the distance table from every source to every target in the background,
+	 * splitting the smaller side into one share per search the scheduler runs at once
+	 * @param sources names of the towns to measure from
+	 * @param targets names of the towns to measure to
+	 * @param profile cost of each road
+	 * @return future for the table, see TownGraphManager.getDistanceTable
+	 * @throws java.util.concurrent.RejectedExecutionException if the scheduler queue is full
+	 */
+	public CompletableFuture<int[][]> getDistanceTable(List<String> sources, List<String> targets, CostProfile profile)
+	{
+		// each share keeps the side that is searched the smaller one, so it still searches from it
+		boolean bySource = sources.size() <= targets.size();
+		List<String> split = bySource ? sources : targets;
+		int shares = Math.max(1, Math.min(scheduler.getConcurrency(), split.size()));
+		List<CompletableFuture<int[][]>> parts = new ArrayList<>();
+		try
+		{
+			for (int s = 0; s < shares; s++)
+			{
+				List<String> share = split.subList(split.size() * s / shares, split.size() * (s + 1) / shares);
+				parts.add(submit(() -> bySource ? manager.getDistanceTable(share, targets, profile) : manager.getDistanceTable(sources, share, profile)));
+			}
+		}
+		catch (RuntimeException e)
+		{
+			parts.forEach(part -> part.cancel(true));
+			throw e;
+		}
+
+		CompletableFuture<int[][]> result = CompletableFuture
+				.allOf(parts.toArray(new CompletableFuture<?>[0]))
+				.thenApply(done -> {
+					int[][] table = new int[sources.size()][];
+					int at = 0;
+					for (CompletableFuture<int[][]> part : parts)
+					{
+						int[][] rows = part.join();
+						if (bySource)
+						{
+							System.arraycopy(rows, 0, table, at, rows.length);
+							at += rows.length;
+							continue;
+						}
+						// a share of the targets holds columns at and on of every row
+						for (int r = 0; r < rows.length; r++)
+						{
+							if (table[r] == null)
+								table[r] = new int[targets.size()];
+							System.arraycopy(rows[r], 0, table[r], at, rows[r].length);
+						}
+						at += rows.length == 0 ? 0 : rows[0].length;
+					}
+					return table;
+				});
+		result.whenComplete((table, error) -> {
+			if (result.isCancelled())
+				parts.forEach(part -> part.cancel(true));
+		});
+		return result;
+	}
+
+	/**
+	 * reads the roads of a file in the background
+	 * @param file road file, see TownGraphManager.populateTownGraph
+	 * @param progress receives the fraction of the file read so far, may be null
+	 * @return future completed once every road is in the graph
+	 */
+	public CompletableFuture<Void> populateTownGraph(File file, DoubleConsumer progress)
+	{
+		return submit(() -> {
+			manager.populateTownGraph(file, progress);
+			return null;
+		});
+	}
+
+	/**
+	 * runs a task on the scheduler, cancelling the future interrupts the task
+	 * @param task - work to run
+	 * @return future for the result of the task
+	 * @throws java.util.concurrent.RejectedExecutionException if the scheduler queue is full
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task)
+	{
+		return scheduler.submit(task);
+	}
+
+	/**
+	 * stops accepting calls and interrupts the running ones
+	 */
+	@Override
+	public void close()
+	{
+		scheduler.close();
+	}
+}
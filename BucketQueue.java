@@ -0,0 +1,149 @@
+import java.util.Arrays;
+
+/**
+ * Dial's bucket queue for non-negative integer keys
+ * Ids wait in a ring of width buckets, one per key modulo width. Dijkstra only
+ * ever queues keys between the last key removed and that key plus the heaviest
+ * road, so with width above the heaviest road each bucket holds one key at a
+ * time and the smallest key is found by stepping the cursor forward. Buckets
+ * are doubly linked lists threaded through int arrays indexed by id, so moving
+ * an id to a lower bucket is constant time and nothing is allocated.
+ * @author - Faith Fru Nchang
+ */
+public class BucketQueue implements VertexQueue
+{
+	private int[] keys;
+	private int[] heads;
+	private int[] next;
+	private int[] previous;
+	// bucket of each queued id, -1 when the id is not queued
+	private int[] buckets;
+	private int width;
+	private int cursor;
+	private int size;
+
+	/**
+	 * creates a queue for ids below the length of the key array
+	 * @param keys - key of each id
+	 * @param maxWeight - heaviest road the search will relax
+	 */
+	public BucketQueue(int[] keys, int maxWeight)
+	{
+		heads = new int[0];
+		next = new int[0];
+		previous = new int[0];
+		buckets = new int[0];
+		setMaxWeight(maxWeight);
+		reset(keys);
+	}
+
+	/**
+	 * sets the heaviest road the next search will relax, call before reset
+	 * @param maxWeight - heaviest road weight, from 0 to RouteSearch.MAX_BUCKET_WEIGHT
+	 */
+	public void setMaxWeight(int maxWeight)
+	{
+		if (maxWeight < 0)
+			throw new IllegalArgumentException("bucket queue needs non-negative weights");
+		if (maxWeight > RouteSearch.MAX_BUCKET_WEIGHT)
+			throw new IllegalArgumentException("bucket queue needs weights up to " + RouteSearch.MAX_BUCKET_WEIGHT + ", not " + maxWeight);
+
+		width = maxWeight + 1;
+		if (width > heads.length)
+			heads = new int[width];
+	}
+
+	/**
+	 * empties the queue and switches to a new key array, growing the queue to match
+	 * @param keys - key of each id
+	 */
+	@Override
+	public void reset(int[] keys)
+	{
+		if (keys.length > next.length)
+		{
+			next = new int[keys.length];
+			previous = new int[keys.length];
+			buckets = new int[keys.length];
+		}
+		this.keys = keys;
+		// a search that stopped early leaves ids behind, only the heads need clearing
+		Arrays.fill(heads, 0, width, -1);
+		cursor = 0;
+		size = 0;
+	}
+
+	/**
+	 * marks an id as never inserted, must be called before the first insert of the
+	 * id after a reset since per id state is not cleared between searches
+	 * @param id - town id
+	 */
+	@Override
+	public void forget(int id)
+	{
+		buckets[id] = -1;
+	}
+
+	/**
+	 * checks if the queue is empty
+	 * @return true if there are no ids in the queue
+	 */
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * adds an id, or moves it to its new bucket if its key was lowered
+	 * @param id - town id whose key was set or lowered
+	 */
+	@Override
+	public void insertOrDecrease(int id)
+	{
+		if (buckets[id] >= 0)
+			unlink(id);
+		else
+			size++;
+
+		int bucket = keys[id] % width;
+		buckets[id] = bucket;
+		previous[id] = -1;
+		next[id] = heads[bucket];
+		if (heads[bucket] >= 0)
+			previous[heads[bucket]] = id;
+		heads[bucket] = id;
+	}
+
+	/**
+	 * removes an id with the smallest key
+	 * @return the id
+	 */
+	@Override
+	public int pollMin()
+	{
+		int bucket = cursor % width;
+		while (heads[bucket] < 0)
+		{
+			cursor++;
+			bucket = bucket + 1 == width ? 0 : bucket + 1;
+		}
+		int min = heads[bucket];
+		cursor = keys[min];
+		unlink(min);
+		buckets[min] = -1;
+		size--;
+		return min;
+	}
+
+	private void unlink(int id)
+	{
+		int bucket = buckets[id];
+		if (previous[id] >= 0)
+			next[previous[id]] = next[id];
+		else
+			heads[bucket] = next[id];
+		if (next[id] >= 0)
+			previous[next[id]] = previous[id];
+	}
+}
@@ -0,0 +1,728 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Write-ahead log of graph edits, with snapshots that let it be cut short
+ *
+ * The directory holds snapshot.bin, every town and road as of some point, and
+ * log-N.bin segments with the edits made since, oldest first. Each edit is a
+ * record of its length, a CRC32 and the edit itself. Records are appended to a
+ * buffer and made durable by commit: the first caller to commit writes and
+ * fsyncs everything buffered so far while the others wait, so callers that
+ * commit at the same time share one fsync.
+ *
+ * Compaction starts a new segment with rotate and then writes a snapshot of
+ * the graph as it was at the rotation. The snapshot is written to a temporary
+ * file and renamed over the old one, and only then are the older segments
+ * deleted, so a crash at any point leaves a snapshot and the segments after it.
+ * A record cut short by a crash fails its length or CRC check; replay stops
+ * there and truncates the segment.
+ * @author - Faith Fru Nchang
+ */
+public class ChangeLog implements AutoCloseable
+{
+	public static final long DEFAULT_COMPACT_BYTES = 64L << 20;
+
+	private static final int SNAPSHOT_MAGIC = 0x47534e31;
+	private static final int MAX_RECORD = 1 << 20;
+	private static final byte ADD_TOWN = 1;
+	private static final byte ADD_ROAD = 2;
+	private static final byte DELETE_ROAD = 3;
+	private static final byte DELETE_TOWN = 4;
+	private static final byte REWEIGHT_ROAD = 5;
+	private static final byte ADD_ONE_WAY_ROAD = 6;
+	// a road with its travel time or toll given, roads without either leave them out
+	private static final byte ADD_COSTED_ROAD = 7;
+	private static final byte SET_TRAVEL_TIME_PROFILE = 8;
+
+	/**
+	 * Receives the edits of the log during replay
+	 */
+	public interface Changes
+	{
+		void addTown(String town);
+
+		void addRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll);
+
+		void deleteRoad(String town1, String town2, String roadName);
+
+		void deleteTown(String town);
+
+		void reweightRoad(String town1, String town2, String roadName, int weight);
+
+		void setTravelTimeProfile(String town1, String town2, String roadName, int[] seconds, int[] factors);
+	}
+
+	private final File directory;
+	private final long compactBytes;
+	private FileChannel channel;
+	private long generation;
+	private long segmentBytes;
+	// records appended but not yet written
+	private ByteArrayOutputStream pending;
+	private long appended;
+	private long durable;
+	private boolean flushing;
+	private IOException failure;
+
+	/**
+	 * opens the log in a directory, creating it if needed; call replay before appending
+	 * @param directory - directory for the snapshot and segments
+	 * @param compactBytes - segment size past which needsCompaction is true
+	 * @throws IOException if the directory cannot be created or read
+	 */
+	public ChangeLog(File directory, long compactBytes) throws IOException
+	{
+		if (!directory.isDirectory() && !directory.mkdirs())
+			throw new IOException("cannot create " + directory);
+
+		this.directory = directory;
+		this.compactBytes = compactBytes;
+		pending = new ByteArrayOutputStream();
+		List<Long> segments = segments();
+		generation = segments.isEmpty() ? snapshotGeneration() : segments.get(segments.size() - 1);
+	}
+
+	/**
+	 * reads the snapshot
+	 * @return batch with every town and road of the snapshot, empty if there is none
+	 * @throws IOException if the snapshot cannot be read or fails its checksum
+	 */
+	public GraphBatch readSnapshot() throws IOException
+	{
+		GraphBatch batch = new GraphBatch();
+		File file = new File(directory, "snapshot.bin");
+		if (!file.exists())
+			return batch;
+
+		CRC32 crc = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(new FileInputStream(file)), crc)))
+		{
+			if (in.readInt() != SNAPSHOT_MAGIC)
+				throw new IOException(file + " is not a graph snapshot");
+			in.readLong();
+
+			int townCount = in.readInt();
+			String[] towns = new String[townCount];
+			for (int i = 0; i < townCount; i++)
+			{
+				towns[i] = in.readUTF();
+				batch.addTown(towns[i]);
+			}
+			// profile ids are given in the order profiles are first stored, so they are renumbered
+			int[] profiles = new int[in.readInt()];
+			for (int i = 0; i < profiles.length; i++)
+			{
+				int[][] breakpoints = readBreakpoints(in);
+				profiles[i] = TravelTimeProfiles.SHARED.register(breakpoints[0], breakpoints[1]);
+			}
+			int roadCount = in.readInt();
+			for (int i = 0; i < roadCount; i++)
+			{
+				String source = towns[in.readInt()];
+				String destination = towns[in.readInt()];
+				int weight = in.readInt();
+				String name = readName(in);
+				boolean oneWay = in.readBoolean();
+				int seconds = in.readInt();
+				int toll = in.readInt();
+				int profile = in.readInt();
+				try
+				{
+					batch.addRoad(source, destination, weight, name, oneWay, seconds, toll, profile < 0 ? -1 : profiles[profile]);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// the graph never holds a road that cannot follow its profile
+					throw new IOException(file + " holds road " + name + " that cannot follow its profile", e);
+				}
+			}
+			long expected = crc.getValue();
+			if (in.readLong() != expected)
+				throw new IOException(file + " fails its checksum");
+		}
+		return batch;
+	}
+
+	/**
+	 * replays the edits of every segment written after the snapshot, truncating
+	 * a segment at the first record cut short by a crash, and opens the newest
+	 * segment for appending
+	 * @param changes - receives the edits in the order they were made
+	 * @throws IOException if a segment cannot be read
+	 */
+	public synchronized void replay(Changes changes) throws IOException
+	{
+		long first = snapshotGeneration();
+		for (long segment : segments())
+		{
+			if (segment >= first)
+				replay(segmentFile(segment), changes);
+		}
+		open(Math.max(generation, first));
+	}
+
+	/**
+	 * appends the addition of a town
+	 * @param town - town name
+	 * @return sequence number to pass to commit
+	 */
+	public long addTown(String town)
+	{
+		return append(out -> {
+			out.writeByte(ADD_TOWN);
+			out.writeUTF(town);
+		});
+	}
+
+	/**
+	 * appends the addition of a road
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param weight - road distance
+	 * @param roadName - road name, may be null
+	 * @return sequence number to pass to commit
+	 */
+	public long addRoad(String town1, String town2, int weight, String roadName)
+	{
+		return addRoad(town1, town2, weight, roadName, false);
+	}
+
+	/**
+	 * appends the addition of a road that may be one-way
+	 * @param town1 - name of town 1, the town a one-way road leads from
+	 * @param town2 - name of town 2
+	 * @param weight - road distance
+	 * @param roadName - road name, may be null
+	 * @param oneWay - true if the road only leads from town 1 to town 2
+	 * @return sequence number to pass to commit
+	 */
+	public long addRoad(String town1, String town2, int weight, String roadName, boolean oneWay)
+	{
+		return addRoad(town1, town2, weight, roadName, oneWay, -1, 0);
+	}
+
+	/**
+	 * appends the addition of a road with its travel time and toll
+	 * @param town1 - name of town 1, the town a one-way road leads from
+	 * @param town2 - name of town 2
+	 * @param weight - road distance
+	 * @param roadName - road name, may be null
+	 * @param oneWay - true if the road only leads from town 1 to town 2
+	 * @param seconds - travel time, or -1 for the time at Road.DEFAULT_SPEED
+	 * @param toll - toll in cents
+	 * @return sequence number to pass to commit
+	 */
+	public long addRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll)
+	{
+		boolean costed = seconds >= 0 || toll != 0;
+		return append(out -> {
+			out.writeByte(costed ? ADD_COSTED_ROAD : oneWay ? ADD_ONE_WAY_ROAD : ADD_ROAD);
+			out.writeUTF(town1);
+			out.writeUTF(town2);
+			out.writeInt(weight);
+			writeName(out, roadName);
+			if (costed)
+			{
+				out.writeBoolean(oneWay);
+				out.writeInt(seconds);
+				out.writeInt(toll);
+			}
+		});
+	}
+
+	/**
+	 * appends the removal of a road
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param roadName - road name
+	 * @return sequence number to pass to commit
+	 */
+	public long deleteRoad(String town1, String town2, String roadName)
+	{
+		return append(out -> {
+			out.writeByte(DELETE_ROAD);
+			out.writeUTF(town1);
+			out.writeUTF(town2);
+			writeName(out, roadName);
+		});
+	}
+
+	/**
+	 * appends the removal of a town
+	 * @param town - town name
+	 * @return sequence number to pass to commit
+	 */
+	public long deleteTown(String town)
+	{
+		return append(out -> {
+			out.writeByte(DELETE_TOWN);
+			out.writeUTF(town);
+		});
+	}
+
+	/**
+	 * appends a new weight for a road
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param roadName - road name
+	 * @param weight - new road distance
+	 * @return sequence number to pass to commit
+	 */
+	public long reweightRoad(String town1, String town2, String roadName, int weight)
+	{
+		return append(out -> {
+			out.writeByte(REWEIGHT_ROAD);
+			out.writeUTF(town1);
+			out.writeUTF(town2);
+			writeName(out, roadName);
+			out.writeInt(weight);
+		});
+	}
+
+	/**
+	 * appends a change to the travel time profile of a road, with the profile's
+	 * breakpoints rather than its id, which is only stable within one process
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param roadName - road name
+	 * @param profile - id in TravelTimeProfiles.SHARED, or -1 for the same time all day
+	 * @return sequence number to pass to commit
+	 */
+	public long setTravelTimeProfile(String town1, String town2, String roadName, int profile)
+	{
+		int[] seconds = profile < 0 ? new int[0] : TravelTimeProfiles.SHARED.getSeconds(profile);
+		int[] factors = profile < 0 ? new int[0] : TravelTimeProfiles.SHARED.getFactors(profile);
+		return append(out -> {
+			out.writeByte(SET_TRAVEL_TIME_PROFILE);
+			out.writeUTF(town1);
+			out.writeUTF(town2);
+			writeName(out, roadName);
+			writeBreakpoints(out, seconds, factors);
+		});
+	}
+
+	/**
+	 * waits until a record and every record before it are on disk, writing and
+	 * syncing them itself unless another commit is already doing so
+	 * @param sequence - sequence number returned by an append
+	 * @throws IOException if the records cannot be written
+	 */
+	public void commit(long sequence) throws IOException
+	{
+		ByteArrayOutputStream batch;
+		long last;
+		synchronized (this)
+		{
+			while (durable < sequence && flushing && failure == null)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					throw new IOException("interrupted waiting for the change log", e);
+				}
+			}
+			if (failure != null)
+				throw new IOException("change log failed", failure);
+			if (durable >= sequence)
+				return;
+
+			flushing = true;
+			batch = pending;
+			pending = new ByteArrayOutputStream();
+			last = appended;
+		}
+
+		IOException error = null;
+		try
+		{
+			write(batch);
+		}
+		catch (IOException e)
+		{
+			error = e;
+		}
+		synchronized (this)
+		{
+			flushing = false;
+			if (error == null)
+				durable = last;
+			else
+				failure = error;
+			notifyAll();
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * checks if the current segment has grown past the compaction size
+	 * @return true if compact should be called
+	 */
+	public synchronized boolean needsCompaction()
+	{
+		return segmentBytes > compactBytes;
+	}
+
+	/**
+	 * makes everything appended so far durable and starts a new segment, the
+	 * caller must keep edits from being made while it runs and then pass the
+	 * graph as it is now to writeSnapshot
+	 * @return generation of the new segment
+	 * @throws IOException if the segments cannot be written
+	 */
+	public synchronized long rotate() throws IOException
+	{
+		commit(appended);
+		// commit returns once the records are durable, a slower flusher may still be closing up
+		while (flushing)
+		{
+			try
+			{
+				wait();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted waiting for the change log", e);
+			}
+		}
+		channel.close();
+		open(generation + 1);
+		return generation;
+	}
+
+	/**
+	 * writes a snapshot that replaces the segments before a generation and deletes them
+	 * @param graph - graph as it was when rotate returned the generation
+	 * @param first - generation returned by rotate
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void writeSnapshot(GraphSnapshot graph, long first) throws IOException
+	{
+		File temporary = new File(directory, "snapshot.tmp");
+		try (FileOutputStream file = new FileOutputStream(temporary))
+		{
+			CRC32 crc = new CRC32();
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), crc));
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeLong(first);
+
+			// towns are numbered in the order written so roads can name them by index
+			int[] index = new int[graph.getIdCapacity()];
+			out.writeInt(graph.getVertexCount());
+			int next = 0;
+			for (int id = 0; id < index.length; id++)
+			{
+				Town town = graph.getTown(id);
+				if (town != null)
+				{
+					index[id] = next++;
+					out.writeUTF(town.getName());
+				}
+			}
+			// every stored profile, roads refer to them by id
+			int profiles = TravelTimeProfiles.SHARED.size();
+			out.writeInt(profiles);
+			for (int p = 0; p < profiles; p++)
+			{
+				writeBreakpoints(out, TravelTimeProfiles.SHARED.getSeconds(p), TravelTimeProfiles.SHARED.getFactors(p));
+			}
+			out.writeInt(graph.getEdgeCount());
+			for (int id = 0; id < index.length; id++)
+			{
+				for (Road road : graph.getRoads(id))
+				{
+					// each road is in two rows, written from its source only
+					if (road.getSource().getId() != id)
+						continue;
+
+					out.writeInt(index[id]);
+					out.writeInt(index[road.getDestination().getId()]);
+					out.writeInt(road.getWeight());
+					writeName(out, road.getName());
+					out.writeBoolean(road.isOneWay());
+					out.writeInt(road.hasDefaultTime() ? -1 : road.getTime());
+					out.writeInt(road.getToll());
+					out.writeInt(road.getTravelTimeProfile());
+				}
+			}
+			long checksum = crc.getValue();
+			out.writeLong(checksum);
+			out.flush();
+			file.getChannel().force(true);
+		}
+		Files.move(temporary.toPath(), new File(directory, "snapshot.bin").toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory();
+
+		for (long segment : segments())
+		{
+			if (segment < first)
+				Files.deleteIfExists(segmentFile(segment).toPath());
+		}
+	}
+
+	/**
+	 * makes everything appended durable and closes the segment
+	 * @throws IOException if the records cannot be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		long last;
+		synchronized (this)
+		{
+			last = appended;
+		}
+		commit(last);
+		synchronized (this)
+		{
+			if (channel != null)
+				channel.close();
+		}
+	}
+
+	/**
+	 * Writes the fields of one edit
+	 */
+	private interface Record
+	{
+		void write(DataOutputStream out) throws IOException;
+	}
+
+	private synchronized long append(Record record)
+	{
+		try
+		{
+			ByteArrayOutputStream payload = new ByteArrayOutputStream();
+			record.write(new DataOutputStream(payload));
+			byte[] bytes = payload.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(bytes);
+
+			DataOutputStream out = new DataOutputStream(pending);
+			out.writeInt(bytes.length);
+			out.writeInt((int) crc.getValue());
+			out.write(bytes);
+			return ++appended;
+		}
+		catch (IOException e)
+		{
+			// writing to memory does not fail
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// writes a batch of records to the current segment and syncs it
+	private void write(ByteArrayOutputStream batch) throws IOException
+	{
+		FileChannel target;
+		synchronized (this)
+		{
+			target = channel;
+			segmentBytes += batch.size();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+		while (buffer.hasRemaining())
+		{
+			target.write(buffer);
+		}
+		target.force(false);
+	}
+
+	private void replay(File segment, Changes changes) throws IOException
+	{
+		long good = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment))))
+		{
+			while (true)
+			{
+				byte[] bytes;
+				try
+				{
+					int length = in.readInt();
+					int crc = in.readInt();
+					if (length < 0 || length > MAX_RECORD)
+						break;
+					bytes = new byte[length];
+					in.readFully(bytes);
+					CRC32 check = new CRC32();
+					check.update(bytes);
+					if ((int) check.getValue() != crc)
+						break;
+				}
+				catch (EOFException e)
+				{
+					break;
+				}
+				apply(new DataInputStream(new ByteArrayInputStream(bytes)), changes);
+				good += 8 + bytes.length;
+			}
+		}
+		if (good < segment.length())
+		{
+			// the tail was cut short by a crash, drop it so new records follow the last good one
+			try (FileChannel file = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE))
+			{
+				file.truncate(good);
+				file.force(true);
+			}
+		}
+	}
+
+	private static void apply(DataInputStream in, Changes changes) throws IOException
+	{
+		byte type = in.readByte();
+		switch (type)
+		{
+			case ADD_TOWN:
+				changes.addTown(in.readUTF());
+				break;
+			case ADD_ROAD:
+			case ADD_ONE_WAY_ROAD:
+				changes.addRoad(in.readUTF(), in.readUTF(), in.readInt(), readName(in), type == ADD_ONE_WAY_ROAD, -1, 0);
+				break;
+			case ADD_COSTED_ROAD:
+				changes.addRoad(in.readUTF(), in.readUTF(), in.readInt(), readName(in), in.readBoolean(), in.readInt(), in.readInt());
+				break;
+			case SET_TRAVEL_TIME_PROFILE:
+			{
+				String town1 = in.readUTF();
+				String town2 = in.readUTF();
+				String roadName = readName(in);
+				int[][] breakpoints = readBreakpoints(in);
+				changes.setTravelTimeProfile(town1, town2, roadName, breakpoints[0], breakpoints[1]);
+				break;
+			}
+			case DELETE_ROAD:
+				changes.deleteRoad(in.readUTF(), in.readUTF(), readName(in));
+				break;
+			case DELETE_TOWN:
+				changes.deleteTown(in.readUTF());
+				break;
+			case REWEIGHT_ROAD:
+				changes.reweightRoad(in.readUTF(), in.readUTF(), readName(in), in.readInt());
+				break;
+			default:
+				throw new IOException("unknown change log record " + type);
+		}
+	}
+
+	private void open(long segment) throws IOException
+	{
+		generation = segment;
+		channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		segmentBytes = channel.size();
+		syncDirectory();
+	}
+
+	private long snapshotGeneration() throws IOException
+	{
+		File file = new File(directory, "snapshot.bin");
+		if (!file.exists())
+			return 0;
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file)))
+		{
+			if (in.readInt() != SNAPSHOT_MAGIC)
+				throw new IOException(file + " is not a graph snapshot");
+			return in.readLong();
+		}
+	}
+
+	// generations of the segments in the directory, oldest first
+	private List<Long> segments()
+	{
+		List<Long> segments = new ArrayList<>();
+		String[] names = directory.list();
+		if (names == null)
+			return segments;
+
+		for (String name : names)
+		{
+			if (name.startsWith("log-") && name.endsWith(".bin"))
+				segments.add(Long.parseLong(name.substring(4, name.length() - 4)));
+		}
+		segments.sort(null);
+		return segments;
+	}
+
+	private File segmentFile(long segment)
+	{
+		return new File(directory, "log-" + segment + ".bin");
+	}
+
+	// makes created, renamed and deleted files in the directory durable
+	private void syncDirectory()
+	{
+		try (FileChannel dir = FileChannel.open(directory.toPath(), StandardOpenOption.READ))
+		{
+			dir.force(true);
+		}
+		catch (IOException e)
+		{
+			// not every platform can sync a directory, the files themselves are already synced
+		}
+	}
+
+	private static void writeName(DataOutputStream out, String name) throws IOException
+	{
+		out.writeBoolean(name != null);
+		if (name != null)
+			out.writeUTF(name);
+	}
+
+	private static String readName(DataInputStream in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeBreakpoints(DataOutputStream out, int[] seconds, int[] factors) throws IOException
+	{
+		out.writeInt(seconds.length);
+		for (int i = 0; i < seconds.length; i++)
+		{
+			out.writeInt(seconds[i]);
+			out.writeInt(factors[i]);
+		}
+	}
+
+	// seconds and factors of a profile, both empty for a road without one
+	private static int[][] readBreakpoints(DataInputStream in) throws IOException
+	{
+		int count = in.readInt();
+		if (count < 0 || count > MAX_RECORD)
+			throw new IOException("bad travel time profile size " + count);
+
+		int[][] breakpoints = new int[2][count];
+		for (int i = 0; i < count; i++)
+		{
+			breakpoints[0][i] = in.readInt();
+			breakpoints[1][i] = in.readInt();
+		}
+		return breakpoints;
+	}
+}
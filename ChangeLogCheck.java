@@ -0,0 +1,193 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a TownGraphManager recovers from its change log what it had
+ * Several threads add, reweight and delete towns and roads, give roads travel
+ * time profiles and apply batches, some adding roads that already follow a
+ * profile, with the log compacting often on the way.
+ * The manager is then dropped without closeChangeLog, as a crash would leave
+ * it, and a new manager opened on the same directory must hold exactly the
+ * same towns and roads, with the same miles, times, tolls and profiles. The
+ * directory is removed when the check ends.
+ *
+ * usage: java ChangeLogCheck [-n edits] [-t threads]
+ * @author - Faith Fru Nchang
+ */
+public class ChangeLogCheck
+{
+	private static final int DEFAULT_EDITS = 4000;
+	private static final int DEFAULT_THREADS = 4;
+	private static final int TOWNS = 200;
+	// small enough that the log is compacted while the threads are editing
+	private static final long COMPACT_BYTES = 16 << 10;
+	private static final long SEED = 11;
+
+	/**
+	 * Runs the check, exiting with status 1 if the recovered graph differs
+	 * @param args optionally -n and the number of edits per thread and -t and the number of threads
+	 * @throws Exception if the log cannot be written or read
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int edits = DEFAULT_EDITS;
+		int threads = DEFAULT_THREADS;
+		for (int i = 0; i + 1 < args.length; i += 2)
+		{
+			if (args[i].equals("-n"))
+				edits = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-t"))
+				threads = Integer.parseInt(args[i + 1]);
+			else
+			{
+				System.err.println("usage: java ChangeLogCheck [-n edits] [-t threads]");
+				System.exit(2);
+			}
+		}
+
+		File directory = Files.createTempDirectory("changelog").toFile();
+		try
+		{
+			TownGraphManager written = new TownGraphManager();
+			written.openChangeLog(directory, COMPACT_BYTES);
+			int rush = written.addTravelTimeProfile(new int[] { 0, 7 * 3600, 8 * 3600, 9 * 3600 }, new int[] { 1000, 1000, 2000, 1000 });
+
+			List<Thread> workers = new ArrayList<>();
+			List<Throwable> failures = new ArrayList<>();
+			int perThread = edits;
+			for (int t = 0; t < threads; t++)
+			{
+				Random random = new Random(SEED + t);
+				Thread worker = new Thread(() -> edit(written, random, perThread, rush));
+				worker.setUncaughtExceptionHandler((thread, e) -> {
+					synchronized (failures)
+					{
+						failures.add(e);
+					}
+				});
+				workers.add(worker);
+				worker.start();
+			}
+			for (Thread worker : workers)
+			{
+				worker.join();
+			}
+			if (!failures.isEmpty())
+				throw new IllegalStateException("an editing thread failed", failures.get(0));
+
+			// dropped without closeChangeLog, every edit that returned must already be durable
+			TreeSet<String> expected = describe(written);
+			TownGraphManager recovered = new TownGraphManager();
+			recovered.openChangeLog(directory, COMPACT_BYTES);
+			TreeSet<String> found = describe(recovered);
+			recovered.closeChangeLog();
+
+			if (!expected.equals(found))
+			{
+				TreeSet<String> missing = new TreeSet<>(expected);
+				missing.removeAll(found);
+				TreeSet<String> extra = new TreeSet<>(found);
+				extra.removeAll(expected);
+				throw new IllegalStateException("recovered graph differs, missing " + missing + ", extra " + extra);
+			}
+			long profiled = found.stream().filter(road -> road.endsWith(" profile " + rush)).count();
+			if (profiled == 0)
+				throw new IllegalStateException("no road with a travel time profile was recovered");
+			System.out.println("changelog ok, " + threads + " threads of " + edits + " edits, " + recovered.allTowns().size() + " towns and "
+					+ recovered.allRoads().size() + " roads recovered, " + profiled + " of them with a profile");
+		}
+		finally
+		{
+			try (Stream<File> files = Files.walk(directory.toPath()).map(path -> path.toFile()))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(File::delete);
+			}
+		}
+	}
+
+	// makes random edits, mostly to roads, some of which the graph refuses
+	private static void edit(TownGraphManager manager, Random random, int edits, int rush)
+	{
+		for (int i = 0; i < edits; i++)
+		{
+			String town1 = "T" + random.nextInt(TOWNS);
+			String town2 = "T" + random.nextInt(TOWNS);
+			String road = "R" + random.nextInt(TOWNS * 2);
+			int kind = random.nextInt(100);
+			if (kind < 15)
+				manager.addTown(town1);
+			else if (kind < 50)
+				manager.addRoad(town1, town2, 1 + random.nextInt(500), road, random.nextInt(4) == 0, random.nextBoolean() ? -1 : 60 + random.nextInt(3600), random.nextInt(3) * 100);
+			else if (kind < 65)
+				manager.reweightRoad(town1, town2, road, 1 + random.nextInt(500));
+			else if (kind < 72)
+			{
+				try
+				{
+					manager.setTravelTimeProfile(town1, town2, road, random.nextBoolean() ? rush : -1);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// the profile falls faster than the clock on this road, nothing is logged
+				}
+			}
+			else if (kind < 85)
+				manager.deleteRoadConnection(town1, town2, road);
+			else if (kind < 88)
+				manager.deleteTown(town1);
+			else if (kind < 94)
+			{
+				GraphBatch batch = new GraphBatch();
+				for (int r = 0; r < 5; r++)
+				{
+					batch.addRoad("T" + random.nextInt(TOWNS), "T" + random.nextInt(TOWNS), 1 + random.nextInt(500), "R" + random.nextInt(TOWNS * 2));
+				}
+				// roads of an hour or less can follow the rush hour profile
+				batch.addRoad(town1, town2, 1 + random.nextInt(500), road, random.nextInt(4) == 0, 60 + random.nextInt(3540), 0, rush);
+				batch.removeRoad(town2, town1, "R" + random.nextInt(TOWNS * 2));
+				batch.reweightRoad(town2, town1, "R" + random.nextInt(TOWNS * 2), 1 + random.nextInt(500));
+				manager.apply(batch);
+			}
+			else
+			{
+				GraphBatch batch = new GraphBatch();
+				for (int r = 0; r < 5; r++)
+				{
+					batch.reweightRoad("T" + random.nextInt(TOWNS), "T" + random.nextInt(TOWNS), "R" + random.nextInt(TOWNS * 2), 1 + random.nextInt(500));
+				}
+				manager.reweightRoads(batch);
+			}
+		}
+	}
+
+	// every town and road of a manager's graph as text, roads with all that the log keeps of them
+	private static TreeSet<String> describe(TownGraphManager manager)
+	{
+		TreeSet<String> graph = new TreeSet<>();
+		GraphSnapshot snapshot = manager.getGraph().snapshot();
+		for (int id = 0; id < snapshot.getIdCapacity(); id++)
+		{
+			Town town = snapshot.getTown(id);
+			if (town == null)
+				continue;
+
+			graph.add(town.getName());
+			for (Road road : snapshot.getRoads(id))
+			{
+				if (road.getSource().getId() != id)
+					continue;
+
+				graph.add(road.getSource().getName() + (road.isOneWay() ? ">" : "-") + road.getDestination().getName() + " " + road.getName()
+						+ " " + road.getWeight() + " mi " + (road.hasDefaultTime() ? "default" : road.getTime() + " s") + " toll " + road.getToll()
+						+ " profile " + road.getTravelTimeProfile());
+			}
+		}
+		return graph;
+	}
+}
@@ -0,0 +1,202 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a binary file of int columns through a FileChannel, for exporting
+ * route results to other programs
+ * The file starts with a magic number and is followed by the blocks a subclass
+ * writes, then a footer and finally the footer's offset as a long and the magic
+ * number again, so a reader starts from the end. Every number is big-endian.
+ * A column is its values one after the other, either as 4 byte ints or, with
+ * delta encoding, as the difference from the value before it (0 before the
+ * first) zigzag encoded into a variable length int of 1 to 5 bytes, which is
+ * much smaller for sorted ids and for distances to nearby towns but can only
+ * be read from the start of the column. Strings are a variable length byte
+ * count followed by UTF-8.
+ *
+ * Output goes through one direct buffer, so nothing but the current block and
+ * what the subclass keeps for its footer is held on the heap.
+ * @author - Faith Fru Nchang
+ */
+public abstract class ColumnarWriter implements AutoCloseable
+{
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private final int magic;
+	private final boolean delta;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	// bytes already written to the channel
+	private long flushed;
+	private boolean closed;
+
+	/**
+	 * creates the file, replacing any file already there, and writes the magic number
+	 * @param file - file to write
+	 * @param magic - number the file starts and ends with
+	 * @param delta - true to delta encode the columns
+	 * @throws IOException if the file cannot be created
+	 */
+	protected ColumnarWriter(File file, int magic, boolean delta) throws IOException
+	{
+		this.magic = magic;
+		this.delta = delta;
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		putInt(magic);
+	}
+
+	/**
+	 * checks if columns are delta encoded
+	 * @return delta
+	 */
+	public boolean isDelta()
+	{
+		return delta;
+	}
+
+	/**
+	 * gets the offset the next byte is written at
+	 * @return position in the file
+	 */
+	protected long position()
+	{
+		return flushed + buffer.position();
+	}
+
+	/**
+	 * writes a column of values, as 4 byte ints or delta encoded
+	 * @param values - array holding the column
+	 * @param count - number of values from the start of the array
+	 * @throws IOException if the file cannot be written
+	 */
+	protected void putColumn(int[] values, int count) throws IOException
+	{
+		if (!delta)
+		{
+			for (int i = 0; i < count; i++)
+			{
+				putInt(values[i]);
+			}
+			return;
+		}
+
+		int previous = 0;
+		for (int i = 0; i < count; i++)
+		{
+			int difference = values[i] - previous;
+			putVarint((difference << 1) ^ (difference >> 31));
+			previous = values[i];
+		}
+	}
+
+	/**
+	 * writes a 4 byte int
+	 * @param value - value to write
+	 * @throws IOException if the file cannot be written
+	 */
+	protected void putInt(int value) throws IOException
+	{
+		ensure(4);
+		buffer.putInt(value);
+	}
+
+	/**
+	 * writes an 8 byte long
+	 * @param value - value to write
+	 * @throws IOException if the file cannot be written
+	 */
+	protected void putLong(long value) throws IOException
+	{
+		ensure(8);
+		buffer.putLong(value);
+	}
+
+	/**
+	 * writes an int as 7 bits per byte, low bits first, with the top bit set on every byte but the last
+	 * @param value - value to write, read as unsigned
+	 * @throws IOException if the file cannot be written
+	 */
+	protected void putVarint(int value) throws IOException
+	{
+		ensure(5);
+		while ((value & ~0x7f) != 0)
+		{
+			buffer.put((byte) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	/**
+	 * writes a string as its UTF-8 byte count and bytes
+	 * @param value - string to write
+	 * @throws IOException if the file cannot be written
+	 */
+	protected void putString(String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putVarint(bytes.length);
+		for (int at = 0; at < bytes.length; )
+		{
+			ensure(1);
+			int length = Math.min(buffer.remaining(), bytes.length - at);
+			buffer.put(bytes, at, length);
+			at += length;
+		}
+	}
+
+	/**
+	 * writes what a reader needs to find the blocks, called once by close
+	 * @throws IOException if the file cannot be written
+	 */
+	protected abstract void writeFooter() throws IOException;
+
+	/**
+	 * writes the footer and the trailer, forces the file to disk and closes it
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (closed)
+			return;
+
+		closed = true;
+		try
+		{
+			long footer = position();
+			writeFooter();
+			putLong(footer);
+			putInt(magic);
+			flush();
+			channel.force(true);
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	private void ensure(int bytes) throws IOException
+	{
+		if (closed && !channel.isOpen())
+			throw new IOException("writer is closed");
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+
+	private void flush() throws IOException
+	{
+		buffer.flip();
+		while (buffer.hasRemaining())
+		{
+			flushed += channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,144 @@
+/**
+ * Connected components of a Graph kept in a union-find structure
+ * Adding a road merges the components of its towns in near constant time.
+ * Removing a road or town can split a component, which union-find cannot undo,
+ * so removals only mark the index stale and it is rebuilt from a snapshot the
+ * next time it is asked. Towns the index has not seen are in components of
+ * their own. The index may report two towns as connected when a removal has
+ * separated them, but never reports towns as separate once a road joins them.
+ * @author - Faith Fru Nchang
+ */
+public class ComponentIndex
+{
+	private int[] parents;
+	private int[] sizes;
+	private volatile boolean stale;
+
+	/**
+	 * creates an index where every town is its own component
+	 */
+	public ComponentIndex()
+	{
+		parents = new int[0];
+		sizes = new int[0];
+		stale = false;
+	}
+
+	/**
+	 * merges the components of two towns
+	 * @param first - id of one town
+	 * @param second - id of the other town
+	 */
+	public synchronized void union(int first, int second)
+	{
+		grow(Math.max(first, second) + 1);
+		int a = find(first);
+		int b = find(second);
+		if (a == b)
+			return;
+
+		// the smaller component goes under the larger, which keeps the trees shallow
+		if (sizes[a] < sizes[b])
+		{
+			int swap = a;
+			a = b;
+			b = swap;
+		}
+		parents[b] = a;
+		sizes[a] += sizes[b];
+	}
+
+	/**
+	 * checks if two towns are in the same component
+	 * @param first - id of one town
+	 * @param second - id of the other town
+	 * @return true if a path may connect them, false if none can
+	 */
+	public synchronized boolean connected(int first, int second)
+	{
+		if (first == second)
+			return true;
+		if (first >= parents.length || second >= parents.length)
+			return false;
+
+		return find(first) == find(second);
+	}
+
+	/**
+	 * gets a representative town of a town's component, the same for every town
+	 * in the component until the index changes
+	 * @param id - town id
+	 * @return id of the representative
+	 */
+	public synchronized int component(int id)
+	{
+		return id < parents.length ? find(id) : id;
+	}
+
+	/**
+	 * marks the index as needing a rebuild, called after a road or town is removed
+	 */
+	public void invalidate()
+	{
+		stale = true;
+	}
+
+	/**
+	 * checks if a removal happened since the last rebuild
+	 * @return true if the index must be rebuilt before it can tell towns apart
+	 */
+	public boolean isStale()
+	{
+		return stale;
+	}
+
+	/**
+	 * recomputes the components from every road of a snapshot
+	 * @param graph - snapshot to read, no other change may be published meanwhile
+	 */
+	public synchronized void rebuild(GraphSnapshot graph)
+	{
+		stale = false;
+		parents = new int[0];
+		sizes = new int[0];
+		grow(graph.getIdCapacity());
+		for (int id = 0; id < graph.getIdCapacity(); id++)
+		{
+			for (Road road : graph.getRoads(id))
+			{
+				union(id, road.getOppositeId(id));
+			}
+		}
+	}
+
+	// finds the root of a town, halving the path on the way
+	private int find(int id)
+	{
+		while (parents[id] != id)
+		{
+			parents[id] = parents[parents[id]];
+			id = parents[id];
+		}
+		return id;
+	}
+
+	// makes room for ids below capacity, each new id in a component of its own
+	private void grow(int capacity)
+	{
+		if (capacity <= parents.length)
+			return;
+
+		int grown = Math.max(capacity, parents.length * 2);
+		int[] newParents = new int[grown];
+		int[] newSizes = new int[grown];
+		System.arraycopy(parents, 0, newParents, 0, parents.length);
+		System.arraycopy(sizes, 0, newSizes, 0, sizes.length);
+		for (int id = parents.length; id < grown; id++)
+		{
+			newParents[id] = id;
+			newSizes[id] = 1;
+		}
+		parents = newParents;
+		sizes = newSizes;
+	}
+}
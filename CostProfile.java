@@ -0,0 +1,181 @@
+/**
+ * Weighs the distance, travel time and toll of a road into the single cost a
+ * route search adds up
+ * The cost of a road is distanceFactor * miles + timeFactor * seconds +
+ * tollFactor * cents, and a profile that avoids tolls does not take roads with
+ * one at all. SHORTEST is the distance alone, which every search used before
+ * roads had times and tolls, FASTEST the travel time and TOLL_FREE the distance
+ * over free roads only, so one graph answers all three.
+ *
+ * Two profiles with the same factors are equal, so landmark tables and other
+ * results computed for one profile can be kept in a map keyed by it.
+ * @author - Faith Fru Nchang
+ */
+public final class CostProfile
+{
+	public static final CostProfile SHORTEST = new CostProfile("shortest", 1, 0, 0, false);
+	public static final CostProfile FASTEST = new CostProfile("fastest", 0, 1, 0, false);
+	public static final CostProfile TOLL_FREE = new CostProfile("toll-free", 1, 0, 0, true);
+
+	private final String name;
+	private final int distanceFactor;
+	private final int timeFactor;
+	private final int tollFactor;
+	private final boolean avoidTolls;
+
+	/**
+	 * creates a profile
+	 * @param name - name the profile is shown and parsed by
+	 * @param distanceFactor - cost of a mile
+	 * @param timeFactor - cost of a second
+	 * @param tollFactor - cost of a cent of toll
+	 * @param avoidTolls - true to never take a road with a toll
+	 * @throws IllegalArgumentException if a factor is negative or all are 0
+	 */
+	public CostProfile(String name, int distanceFactor, int timeFactor, int tollFactor, boolean avoidTolls)
+	{
+		if (name == null)
+			throw new NullPointerException();
+		if (distanceFactor < 0 || timeFactor < 0 || tollFactor < 0)
+			throw new IllegalArgumentException("negative cost factor");
+		if (distanceFactor == 0 && timeFactor == 0 && tollFactor == 0)
+			throw new IllegalArgumentException("every cost factor is 0");
+
+		this.name = name;
+		this.distanceFactor = distanceFactor;
+		this.timeFactor = timeFactor;
+		this.tollFactor = tollFactor;
+		this.avoidTolls = avoidTolls;
+	}
+
+	/**
+	 * finds a built-in profile by name
+	 * @param name - shortest, fastest or toll-free, in any case
+	 * @return the profile, or null if no built-in profile has that name
+	 */
+	public static CostProfile forName(String name)
+	{
+		for (CostProfile profile : new CostProfile[] { SHORTEST, FASTEST, TOLL_FREE })
+		{
+			if (profile.name.equalsIgnoreCase(name))
+				return profile;
+		}
+		return null;
+	}
+
+	/**
+	 * gets the cost of taking a road
+	 * @param road - road to cost
+	 * @return cost, or RouteSearch.UNREACHABLE if the profile does not take the road
+	 */
+	public int cost(Road road)
+	{
+		if (avoidTolls && road.getToll() > 0)
+			return RouteSearch.UNREACHABLE;
+
+		long cost = (long) distanceFactor * road.getWeight() + (long) timeFactor * road.getTime() + (long) tollFactor * road.getToll();
+		return (int) Math.min(cost, RouteSearch.UNREACHABLE - 1);
+	}
+
+	/**
+	 * gets an upper bound on the cost of any road of a snapshot
+	 * @param graph - snapshot
+	 * @return largest cost a road can have, at most RouteSearch.UNREACHABLE - 1
+	 */
+	public int maxCost(GraphSnapshot graph)
+	{
+		long cost = (long) distanceFactor * graph.getMaxWeight() + (long) timeFactor * graph.getMaxTime() + (long) tollFactor * graph.getMaxToll();
+		return (int) Math.min(cost, RouteSearch.UNREACHABLE - 1);
+	}
+
+	/**
+	 * checks if the cost of every road is its distance, which searches can read
+	 * from the cheapest road rows without weighing each road
+	 * @return true for SHORTEST and any profile equal to it
+	 */
+	public boolean isDistanceOnly()
+	{
+		return distanceFactor == 1 && timeFactor == 0 && tollFactor == 0 && !avoidTolls;
+	}
+
+	/**
+	 * gets the name
+	 * @return name
+	 */
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * gets the cost of a mile
+	 * @return distanceFactor
+	 */
+	public int getDistanceFactor()
+	{
+		return distanceFactor;
+	}
+
+	/**
+	 * gets the cost of a second
+	 * @return timeFactor
+	 */
+	public int getTimeFactor()
+	{
+		return timeFactor;
+	}
+
+	/**
+	 * gets the cost of a cent of toll
+	 * @return tollFactor
+	 */
+	public int getTollFactor()
+	{
+		return tollFactor;
+	}
+
+	/**
+	 * checks if roads with a toll are never taken
+	 * @return avoidTolls
+	 */
+	public boolean avoidsTolls()
+	{
+		return avoidTolls;
+	}
+
+	/**
+	 * profiles are equal when they cost every road the same, whatever their names
+	 * @param obj - the other profile
+	 * @return true if the factors and the toll rule match
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof CostProfile))
+			return false;
+
+		CostProfile other = (CostProfile) obj;
+		return distanceFactor == other.distanceFactor && timeFactor == other.timeFactor
+				&& tollFactor == other.tollFactor && avoidTolls == other.avoidTolls;
+	}
+
+	/**
+	 * computes the hashCode from the factors and the toll rule
+	 * @return hashCode
+	 */
+	@Override
+	public int hashCode()
+	{
+		return ((distanceFactor * 31 + timeFactor) * 31 + tollFactor) * 2 + (avoidTolls ? 1 : 0);
+	}
+
+	/**
+	 * returns the name
+	 * @return name
+	 */
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+}
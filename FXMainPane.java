@@ -3,8 +3,8 @@
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 
 import javafx.application.Platform;
@@ -14,6 +14,7 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Alert.AlertType;
@@ -32,13 +33,21 @@ public class FXMainPane extends VBox {
 	ComboBox<String> addSourceTownComboBox, addDestTownComboBox, sourceConnectionComboBox, destConnectionComboBox; 
 	Insets inset, inset2, inset3;
 
+	ProgressBar loadProgressBar;
 	TownGraphManager graph;
+	// runs searches and file loads off the JavaFX application thread
+	AsyncTownGraphManager asyncGraph;
+	private CompletableFuture<ArrayList<String>> pendingPath;
 	private Alert alert = new Alert(AlertType.INFORMATION);
 	
+	// most town names a ComboBox lists at once
+	private static final int SUGGESTION_LIMIT = 50;
+	
 	
 	FXMainPane() {
 		//TownGraphManager object
 		graph = new TownGraphManager();
+		asyncGraph = new AsyncTownGraphManager(graph);
 		//set up margins
 		inset = new Insets(10);
 		
@@ -98,8 +107,8 @@ public class FXMainPane extends VBox {
 		displayRoads = new TextArea();
 
 		//ComboBoxes of all towns
-		addSourceTownComboBox = new ComboBox<String>();
-		addDestTownComboBox = new ComboBox<String>();
+		addSourceTownComboBox = createTownComboBox();
+		addDestTownComboBox = createTownComboBox();
 
 		displayRoadsButton = new Button("Display Roads");
 		addRoadButton = new Button("Add Road");
@@ -160,8 +169,8 @@ public class FXMainPane extends VBox {
 
 	    
 		//find connection area components
-	    sourceConnectionComboBox = new ComboBox<String>();
-	    destConnectionComboBox = new ComboBox<String>();
+	    sourceConnectionComboBox = createTownComboBox();
+	    destConnectionComboBox = createTownComboBox();
 
 	    findConnectionLabel = new Label("Find Connection");
 	    findConnectionLabel.setStyle("-fx-font-size: 14px; -fx-font-weight: bold");
@@ -195,18 +204,21 @@ public class FXMainPane extends VBox {
 	    bottomHBox = new HBox();
 		readFileButton = new Button("Read File");
 		exitButton =new Button("Exit");
+		loadProgressBar = new ProgressBar(0);
+		loadProgressBar.setVisible(false);
 
 		bottomVBox = new VBox();
 		bottomVBox.getChildren().addAll(bottomHBox);
 		bottomVBox.setStyle("-fx-border-color: gray;");
 
-		bottomHBox.getChildren().addAll(readFileButton, exitButton);
+		bottomHBox.getChildren().addAll(readFileButton, loadProgressBar, exitButton);
 		
 		bottomHBox.setAlignment(Pos.CENTER);
 
 		VBox.setMargin(bottomHBox,inset);
 	    HBox.setMargin(readFileButton, inset);
 	    HBox.setMargin(exitButton, inset);
+	    HBox.setMargin(loadProgressBar, inset);
 
 		getChildren().addAll(addTown, addRoad, findConnectionVBox, bottomHBox);
 		
@@ -290,7 +302,6 @@ public class FXMainPane extends VBox {
 		findConnectionButton.setOnAction(event -> {
 			Town town1;
 			Town town2;
-			String result = "";
 			try {
 				town1 = graph.getTown(sourceConnectionComboBox.getValue().toString());
 				town2 = graph.getTown(destConnectionComboBox.getValue().toString());
@@ -298,20 +309,36 @@ public class FXMainPane extends VBox {
 				town1 = town2 = null;
 			}
 			findConnectionTextArea.setText("");
-			ArrayList<String> path = graph.getPath(town1.getName(), town2.getName());
 			if (town1.equals(town2)){
 				findConnectionTextArea.appendText("Select two different towns");
+				return;
 			}
-			else if (path.isEmpty()){
-				findConnectionTextArea.appendText("You can't get there from here");
-			}
-			else {
-				for (String s : path){
-					result+=s+"\n";
-					//findConnectionTextArea.appendText(s);
-					findConnectionTextArea.setText(result);
+			//only the latest search is shown, an older one still running is dropped
+			if (pendingPath != null) pendingPath.cancel(true);
+			findConnectionTextArea.setText("Searching...");
+			CompletableFuture<ArrayList<String>> search = asyncGraph.getPath(town1.getName(), town2.getName());
+			pendingPath = search;
+			search.whenComplete((path, error) -> Platform.runLater(() -> {
+				if (search != pendingPath) return;
+				if (error != null) {
+					Throwable cause = error.getCause() != null ? error.getCause() : error;
+					findConnectionTextArea.setText("");
+					alert.setTitle("Search Error");
+					alert.setHeaderText("Problem finding a connection: " + cause.getMessage());
+					alert.showAndWait();
+					return;
 				}
-			}
+				String result = "";
+				if (path.isEmpty()){
+					result = "You can't get there from here";
+				}
+				else {
+					for (String s : path){
+						result+=s+"\n";
+					}
+				}
+				findConnectionTextArea.setText(result);
+			}));
 		});
 		readFileButton.setOnAction(event -> {
 			try {
@@ -328,40 +355,54 @@ public class FXMainPane extends VBox {
 	}
 	//update the ComboBoxes that contain the town names
 	public void updateComboBoxes() {
-		ArrayList<String> townList = graph.allTowns();
-		for (String town : townList){
-			addDestTownComboBox.getItems().clear();
-			sourceConnectionComboBox.getItems().clear();
-			destConnectionComboBox.getItems().clear();
-			addSourceTownComboBox.getItems().clear();
-		}
-		for (String town : townList){
-			addDestTownComboBox.getItems().addAll(town);
-			sourceConnectionComboBox.getItems().addAll(town);
-			destConnectionComboBox.getItems().addAll(town);
-			addSourceTownComboBox.getItems().addAll(town); 
-		}	
+		suggestTowns(addDestTownComboBox);
+		suggestTowns(sourceConnectionComboBox);
+		suggestTowns(destConnectionComboBox);
+		suggestTowns(addSourceTownComboBox);
+	}
+	
+	//editable ComboBox that lists the towns starting with the typed text
+	private ComboBox<String> createTownComboBox() {
+		ComboBox<String> comboBox = new ComboBox<String>();
+		comboBox.setEditable(true);
+		comboBox.getEditor().textProperty().addListener((observable, oldText, newText) -> {
+			if (comboBox.getEditor().isFocused()) {
+				suggestTowns(comboBox);
+				if (!comboBox.getItems().isEmpty()) comboBox.show();
+			}
+		});
+		return comboBox;
+	}
+	
+	//fill the ComboBox with the first towns matching its typed text
+	private void suggestTowns(ComboBox<String> comboBox) {
+		String prefix = comboBox.getEditor().getText();
+		if (prefix == null) prefix = "";
+		comboBox.getItems().setAll(graph.completeTown(prefix, SUGGESTION_LIMIT));
 	}
 	
 	//Select the file to read the Towns and Roads from
 	public void readFile() {
 		FileChooser chooser = new FileChooser();
-		File selectedFile = null;
-		try {
-			selectedFile = chooser.showOpenDialog(null);
-			if(selectedFile != null) {
-				graph.populateTownGraph(selectedFile);
-				}
-			updateComboBoxes();
-		} catch (FileNotFoundException e) {
-			alert.setTitle("File Error");
-			alert.setHeaderText("File not found");
-			alert.showAndWait();
-		}
-		catch (IOException e) {
-			alert.setTitle("File Error");
-			alert.setHeaderText("Input error");
-			alert.showAndWait();
+		File selectedFile = chooser.showOpenDialog(null);
+		if(selectedFile == null) {
+			return;
 		}
+		//the file is read in the background while the window stays responsive
+		readFileButton.setDisable(true);
+		loadProgressBar.setProgress(0);
+		loadProgressBar.setVisible(true);
+		asyncGraph.populateTownGraph(selectedFile, fraction -> Platform.runLater(() -> loadProgressBar.setProgress(fraction)))
+			.whenComplete((done, error) -> Platform.runLater(() -> {
+				readFileButton.setDisable(false);
+				loadProgressBar.setVisible(false);
+				updateComboBoxes();
+				if (error != null) {
+					Throwable cause = error.getCause() != null ? error.getCause() : error;
+					alert.setTitle("File Error");
+					alert.setHeaderText(cause instanceof FileNotFoundException ? "File not found" : "Input error");
+					alert.showAndWait();
+				}
+			}));
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
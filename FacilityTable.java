@@ -0,0 +1,61 @@
+/**
+ * Nearest facility of every town, found by one search from all facilities at once
+ * The table belongs to the GraphSnapshot it was computed on and does not see
+ * later changes to the graph.
+ * @author - Faith Fru Nchang
+ */
+public class FacilityTable
+{
+	private final GraphSnapshot graph;
+	// nearest facility id and distance by town id, -1 and UNREACHABLE when none is reachable
+	private final int[] facilities;
+	private final int[] distances;
+
+	/**
+	 * creates a table from a finished search started at every facility
+	 * @param graph - snapshot the search ran on
+	 * @param search - multi source search that reached every town it could
+	 */
+	public FacilityTable(GraphSnapshot graph, RouteSearch search)
+	{
+		this.graph = graph;
+		facilities = new int[graph.getIdCapacity()];
+		distances = new int[graph.getIdCapacity()];
+		for (int id = 0; id < facilities.length; id++)
+		{
+			facilities[id] = search.getOrigin(id);
+			distances[id] = search.getDistance(id);
+		}
+	}
+
+	/**
+	 * gets the snapshot the table was computed on
+	 * @return graph
+	 */
+	public GraphSnapshot getSnapshot()
+	{
+		return graph;
+	}
+
+	/**
+	 * gets the facility nearest to a town
+	 * @param town - town to look up
+	 * @return the facility, the town itself if it is one, or null if no facility can be reached
+	 */
+	public Town getNearestFacility(Town town)
+	{
+		int id = town.getId();
+		return id < facilities.length && facilities[id] >= 0 ? graph.getTown(facilities[id]) : null;
+	}
+
+	/**
+	 * gets the distance from a town to its nearest facility
+	 * @param town - town to look up
+	 * @return distance in miles, or RouteSearch.UNREACHABLE if no facility can be reached
+	 */
+	public int getDistance(Town town)
+	{
+		int id = town.getId();
+		return id < distances.length ? distances[id] : RouteSearch.UNREACHABLE;
+	}
+}
@@ -1,37 +1,383 @@
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 
 /**
  * Graph class that implements the GraphInterface given you.  For Graph<V,E>,  V is the vertex type (a Town), E is the edge type (a Road).
+ *
+ * Every change publishes a new immutable GraphSnapshot. Lookups and shortest
+ * paths read the current snapshot without locking. Changes lock the stripes of
+ * the towns they touch, so writers working on different towns run in parallel.
+ *
+ * Roads are two-way unless added as one-way. A town's adjacent towns are the
+ * towns any road joins it to, in either direction, while searches only follow
+ * a one-way road the way it leads.
  * @author Faith Fru Nchang
  */
 public class Graph implements GraphInterface<Town, Road>
 {
-	private HashSet<Town> vertices;
-	HashSet<Road> edges;
-	
+	private static final int STRIPES = 64;
+
+	private Set<Town> vertices;
+	Set<Road> edges;
+
+	// latest published version of the graph, replaced whole on every change
+	private final AtomicReference<GraphSnapshot> snapshot;
+	// a change holds the stripe of every town whose roads or adjacency it changes
+	private final ReentrantLock[] stripes;
+	// priority queue used by the shortest path searches
+	private volatile RouteSearch.QueueType queueType;
+	// lower bounds for point to point searches by cost profile, only used while the snapshot version matches
+	private final Map<CostProfile, LandmarkTable> landmarks;
+	// connected components, joined before a road is published and rebuilt after removals
+	private final ComponentIndex components;
+
 	// Keeps track of the towns and road distance to their neighboring towns
 	private Map<Town, Integer> distances ;
 	private Map<Town, Town> previousVertices;
-	
+
 	public Graph()
 	{
-		vertices = new HashSet<>();
-		edges = new HashSet<>();
+		vertices = ConcurrentHashMap.newKeySet();
+		edges = ConcurrentHashMap.newKeySet();
+		snapshot = new AtomicReference<>(GraphSnapshot.empty());
+		stripes = new ReentrantLock[STRIPES];
+		for (int i = 0; i < STRIPES; i++)
+		{
+			stripes[i] = new ReentrantLock();
+		}
 		distances = new HashMap<Town, Integer>();
 		previousVertices = new HashMap<Town, Town>();
+		queueType = RouteSearch.QueueType.AUTO;
+		landmarks = new ConcurrentHashMap<>();
+		components = new ComponentIndex();
+	}
+
+	/**
+	 * gets the current version of the graph, it never changes once returned
+	 * @return snapshot
+	 */
+	public GraphSnapshot snapshot()
+	{
+		return snapshot.get();
+	}
+
+	/**
+	 * gets the priority queue the shortest path searches use
+	 * @return queueType
+	 */
+	public RouteSearch.QueueType getQueueType()
+	{
+		return queueType;
+	}
+
+	/**
+	 * sets the priority queue the shortest path searches use, AUTO picks buckets
+	 * when every road weight is a small non-negative number of miles
+	 * @param queueType - queue type
+	 */
+	public void setQueueType(RouteSearch.QueueType queueType)
+	{
+		if (queueType == null)
+			throw new NullPointerException();
+		this.queueType = queueType;
+	}
+
+	/**
+	 * picks landmarks and computes their distance tables for the current version,
+	 * shortest paths use them until the graph changes
+	 * @param count - number of landmarks
+	 * @return the table
+	 */
+	public LandmarkTable computeLandmarks(int count)
+	{
+		return computeLandmarks(count, CostProfile.SHORTEST);
+	}
+
+	/**
+	 * picks landmarks and computes their tables in the cost of a profile, shortest
+	 * paths with that profile use them until the graph changes
+	 * @param count - number of landmarks
+	 * @param profile - cost of each road
+	 * @return the table
+	 */
+	public LandmarkTable computeLandmarks(int count, CostProfile profile)
+	{
+		LandmarkTable table = LandmarkTable.compute(snapshot(), count, profile);
+		landmarks.put(profile, table);
+		return table;
+	}
+
+	/**
+	 * gets the landmark table of the distance profile, which may be for an older version
+	 * @return landmarks, or null
+	 */
+	public LandmarkTable getLandmarks()
+	{
+		return getLandmarks(CostProfile.SHORTEST);
+	}
+
+	/**
+	 * gets the landmark table of a profile, which may be for an older version
+	 * @param profile - cost profile
+	 * @return landmarks, or null
+	 */
+	public LandmarkTable getLandmarks(CostProfile profile)
+	{
+		return landmarks.get(profile);
+	}
+
+	/**
+	 * sets the landmark table shortest paths with its profile use while its version is current
+	 * @param landmarks - table, or null to search every profile without landmarks
+	 */
+	public void setLandmarks(LandmarkTable landmarks)
+	{
+		if (landmarks == null)
+			this.landmarks.clear();
+		else
+			this.landmarks.put(landmarks.getProfile(), landmarks);
+	}
+
+	/**
+	 * publishes the next version, building it again if another writer published first
+	 * @param change - change to make to the latest version
+	 */
+	private void publish(Consumer<GraphSnapshot.Builder> change)
+	{
+		GraphSnapshot current;
+		GraphSnapshot.Builder next;
+		do
+		{
+			current = snapshot.get();
+			next = new GraphSnapshot.Builder(current);
+			change.accept(next);
+		}
+		while (!snapshot.compareAndSet(current, next.build()));
+	}
+
+	/**
+	 * locks the stripes of two towns, always lower stripe first so writers cannot deadlock.
+	 * The locks are reentrant, so a caller such as TownGraphManager can hold them
+	 * across several steps of one edit, like logging it and then making it, while
+	 * the graph's own methods for those towns lock them again. A caller holding
+	 * them must not call a method that locks every stripe.
+	 * @param first - id of one town
+	 * @param second - id of the other town, the same id to lock one town
+	 */
+	public void lockTowns(int first, int second)
+	{
+		int a = Math.min(first & (STRIPES - 1), second & (STRIPES - 1));
+		int b = Math.max(first & (STRIPES - 1), second & (STRIPES - 1));
+		stripes[a].lock();
+		if (b != a)
+			stripes[b].lock();
+	}
+
+	/**
+	 * unlocks the stripes locked by lockTowns
+	 * @param first - id of one town
+	 * @param second - id of the other town
+	 */
+	public void unlockTowns(int first, int second)
+	{
+		stripes[first & (STRIPES - 1)].unlock();
+		if ((second & (STRIPES - 1)) != (first & (STRIPES - 1)))
+			stripes[second & (STRIPES - 1)].unlock();
+	}
+
+	/**
+	 * locks the stripes of both towns of every road, lowest first, reentrant like lockTowns
+	 * @param roads - roads whose towns are locked, only their towns' ids are used
+	 * @return the stripes locked, to pass to unlockStripes
+	 */
+	public boolean[] lockRoads(Collection<Road> roads)
+	{
+		boolean[] held = new boolean[STRIPES];
+		for (Road road : roads)
+		{
+			held[road.getSource().getId() & (STRIPES - 1)] = true;
+			held[road.getDestination().getId() & (STRIPES - 1)] = true;
+		}
+		lockStripes(held);
+		return held;
+	}
+
+	/**
+	 * locks the marked stripes, lowest first
+	 * @param held - stripes to lock
+	 */
+	private void lockStripes(boolean[] held)
+	{
+		for (int i = 0; i < STRIPES; i++)
+		{
+			if (held[i])
+				stripes[i].lock();
+		}
+	}
+
+	/**
+	 * unlocks the stripes locked by lockRoads or lockStripes
+	 * @param held - stripes to unlock
+	 */
+	public void unlockStripes(boolean[] held)
+	{
+		for (int i = STRIPES - 1; i >= 0; i--)
+		{
+			if (held[i])
+				stripes[i].unlock();
+		}
+	}
+
+	/**
+	 * locks every stripe, for changes that can touch any town, reentrant like lockTowns
+	 */
+	public void lockAll()
+	{
+		for (ReentrantLock stripe : stripes)
+		{
+			stripe.lock();
+		}
+	}
+
+	/**
+	 * unlocks every stripe
+	 */
+	public void unlockAll()
+	{
+		for (int i = STRIPES - 1; i >= 0; i--)
+		{
+			stripes[i].unlock();
+		}
+	}
+
+	/**
+	 * gets the vertex stored in the graph with the same name as the given town
+	 * @param town - town to look up
+	 * @return the town held by the graph, or null if it is not a vertex
+	 */
+	public Town getVertex(Town town)
+	{
+		if (town == null)
+			return null;
+
+		return snapshot().getTown(town.getId());
+	}
+
+	/**
+	 * gets the vertex stored in the graph with the given name
+	 * @param name - name of the town
+	 * @return the town held by the graph, or null if it is not a vertex
+	 */
+	public Town getVertex(String name)
+	{
+		return snapshot().getTown(Town.idOf(name));
+	}
+
+	/**
+	 * Adds all towns and roads of a batch in one pass. Towns named by a road are
+	 * added if they are not yet in the graph. The adjacency of each touched town
+	 * is rebuilt once at the end instead of once per road, so the cost is linear
+	 * in the size of the batch and the degrees of the towns it touches.
+	 * The batch's removals and new weights are made after the additions, and the
+	 * whole batch is published as a single new version. New weights that a road's
+	 * travel time profile could not keep are skipped, see keepsProfile.
+	 * @param batch - towns and roads to add, and roads to remove or reweight
+	 * @throws NullPointerException if batch is null
+	 * @throws IllegalArgumentException if a road cannot follow its travel time profile,
+	 * the graph is then left unchanged
+	 */
+	public void apply(GraphBatch batch)
+	{
+		// checked before anything is changed, so a refused batch changes nothing
+		checkTravelTimeProfiles(batch);
+		lockAll();
+		try
+		{
+			GraphSnapshot.Builder builder = new GraphSnapshot.Builder(snapshot());
+			for (Town town : batch.getTowns())
+			{
+				addBatchVertex(town, batch, builder);
+			}
+
+			for (Road queued : batch.getRoads())
+			{
+				Town source = addBatchVertex(queued.getSource(), batch, builder);
+				Town destination = addBatchVertex(queued.getDestination(), batch, builder);
+				Road road = queued.withTowns(source, destination);
+
+				if (edges.add(road))
+				{
+					components.union(source.getId(), destination.getId());
+					batch.getAddedRoads().add(road);
+					builder.addRoad(road);
+				}
+			}
+
+			for (Road queued : batch.getRemovals())
+			{
+				Road road = builder.getRoad(queued.getSource().getId(), queued.getDestination().getId(), queued.getName());
+				if (road == null)
+					continue;
+
+				edges.remove(road);
+				builder.removeRoad(road);
+				batch.getRemovedRoads().add(road);
+			}
+
+			for (Road queued : batch.getReweights())
+			{
+				Road old = builder.getRoad(queued.getSource().getId(), queued.getDestination().getId(), queued.getName());
+				if (old == null || !keepsProfile(old, queued.getWeight()))
+					continue;
+
+				Road road = reweighted(old, queued.getWeight());
+				builder.replaceRoad(old, road);
+				batch.getReweightedRoads().add(road);
+			}
+			// every stripe is held, so no other writer can publish in between
+			snapshot.set(builder.build());
+			if (!batch.getRemovedRoads().isEmpty())
+				components.invalidate();
+		}
+		finally
+		{
+			unlockAll();
+		}
+	}
+
+	/**
+	 * gets the graph's town with the given town's name, adding it if it is new
+	 * @param town - town from a batch
+	 * @param batch - batch that records the added towns
+	 * @param builder - next version of the graph
+	 * @return the town held by the graph
+	 */
+	private Town addBatchVertex(Town town, GraphBatch batch, GraphSnapshot.Builder builder)
+	{
+		Town vertex = builder.getTown(town.getId());
+		if (vertex == null)
+		{
+			vertices.add(town);
+			builder.addTown(town);
+			batch.getAddedTowns().add(town);
+			vertex = town;
+		}
+		return vertex;
 	}
-	 
-	
-	
-	
-	
+
 	/**
      * Returns an edge connecting source vertex to target vertex if such
      * vertices and such edge exist in this graph. Otherwise returns
@@ -44,31 +390,46 @@ public class Graph implements GraphInterface<Town, Road>
      * @param sourceVertex source vertex of the edge.
      * @param destinationVertex target vertex of the edge.
      *
+     * When several roads join the vertices the cheapest is returned.
+     *
      * @return an edge connecting source vertex to target vertex.
      */
 	@Override
     public Road getEdge(Town sourceVertex, Town destinationVertex)
     {
 		if(sourceVertex == null || destinationVertex == null) {
-			
+
 			return null;
 		}
-		
-		else {
-			for(Road road : edges) {
-				if (road.contains(sourceVertex) && road.contains(destinationVertex)) {
-					return road;
-				}
-			}	
-		}
-		
-		return null;
+
+		return snapshot().getRoad(sourceVertex.getId(), destinationVertex.getId());
     }
-	
+
+	/**
+	 * gets every road between two towns, the parallel roads of a multigraph
+	 * @param sourceVertex - one town
+	 * @param destinationVertex - the other town
+	 * @return the roads joining the towns, cheapest first, empty if there are none
+	 */
+	public List<Road> getAllEdges(Town sourceVertex, Town destinationVertex)
+	{
+		List<Road> roads = new ArrayList<>();
+		if (sourceVertex == null || destinationVertex == null)
+			return roads;
+
+		for (Road road : snapshot().getRoads(sourceVertex.getId()))
+		{
+			if (road.getOppositeId(sourceVertex.getId()) == destinationVertex.getId())
+				roads.add(road);
+		}
+		roads.sort(null);
+		return roads;
+	}
+
 	/**
      * Creates a new edge in this graph, going from the source vertex to the
-     * target vertex, and returns the created edge. 
-     * 
+     * target vertex, and returns the created edge.
+     *
      * The source and target vertices must already be contained in this
      * graph. If they are not found in graph IllegalArgumentException is
      * thrown.
@@ -79,7 +440,8 @@ public class Graph implements GraphInterface<Town, Road>
      * @param weight weight of the edge
      * @param description description for edge
      *
-     * @return The newly created edge if added to the graph, otherwise null.
+     * @return The newly created edge if added to the graph, otherwise null,
+     * which it is when the towns already have a road with the same description.
      *
      * @throws IllegalArgumentException if source or target vertices are not
      * found in the graph.
@@ -87,40 +449,258 @@ public class Graph implements GraphInterface<Town, Road>
      */
 	@Override
     public Road addEdge(Town sourceVertex, Town destinationVertex, int weight, String description) throws NullPointerException, IllegalArgumentException
+    {
+    	return addEdge(sourceVertex, destinationVertex, weight, description, false);
+    }
+
+	/**
+	 * Creates a new edge like addEdge, that may only lead from the source vertex
+	 * to the target vertex
+	 * @param sourceVertex source vertex of the edge.
+	 * @param destinationVertex target vertex of the edge.
+	 * @param weight weight of the edge
+	 * @param description description for edge
+	 * @param oneWay true if the edge can only be travelled from source to target
+	 * @return The newly created edge if added to the graph, otherwise null.
+	 * @throws IllegalArgumentException if source or target vertices are not
+	 * found in the graph.
+	 * @throws NullPointerException if any of the specified vertices is null.
+	 */
+    public Road addEdge(Town sourceVertex, Town destinationVertex, int weight, String description, boolean oneWay) throws NullPointerException, IllegalArgumentException
+    {
+    	return addEdge(sourceVertex, destinationVertex, weight, description, oneWay, -1, 0);
+    }
+
+	/**
+	 * Creates a new edge like addEdge, with its travel time and toll
+	 * @param sourceVertex source vertex of the edge.
+	 * @param destinationVertex target vertex of the edge.
+	 * @param weight weight of the edge, in miles
+	 * @param description description for edge
+	 * @param oneWay true if the edge can only be travelled from source to target
+	 * @param seconds travel time, or -1 for the time at Road.DEFAULT_SPEED
+	 * @param toll toll in cents
+	 * @return The newly created edge if added to the graph, otherwise null.
+	 * @throws IllegalArgumentException if source or target vertices are not
+	 * found in the graph, or the toll is negative.
+	 * @throws NullPointerException if any of the specified vertices is null.
+	 */
+    public Road addEdge(Town sourceVertex, Town destinationVertex, int weight, String description, boolean oneWay, int seconds, int toll) throws NullPointerException, IllegalArgumentException
     {
     	if (sourceVertex == null || destinationVertex == null)
     	{
     		throw new NullPointerException();
     	}
-    	
-    	//  checks if either the source or destination vertex is not in the graph
-    	if (!(containsVertex(sourceVertex) || containsVertex(destinationVertex)))
+    	if (toll < 0)
+    		throw new IllegalArgumentException("negative toll");
+
+    	lockTowns(sourceVertex.getId(), destinationVertex.getId());
+    	try
     	{
-    		throw new IllegalArgumentException();
-        	
-    	}
-    		
-    	Road road1 = new Road(sourceVertex, destinationVertex, weight, description);
+	    	// road endpoints always refer to the towns held by the graph
+	    	Town source = getVertex(sourceVertex);
+	    	Town destination = getVertex(destinationVertex);
 
-    	edges.add(road1);
-    	
-    	for (Town town: vertices)
+	    	//  checks if either the source or destination vertex is not in the graph
+	    	if (source == null || destination == null)
+	    	{
+	    		throw new IllegalArgumentException();
+
+	    	}
+
+	    	Road road1 = new Road(source, destination, weight, description, oneWay, seconds, toll);
+
+	    	if (!edges.add(road1))
+	    		return null;
+
+	    	// joined before publishing, so no reader sees the road while the index keeps the towns apart
+	    	components.union(source.getId(), destination.getId());
+	    	publish(next -> next.addRoad(road1));
+
+	    	return road1;
+    	}
+    	finally
     	{
-    		if (town.equals(sourceVertex))
-    		{
-    			town.addAjacentTown(destinationVertex);
-    		}
-    		else if (town.equals(destinationVertex))
-    		{
-    			town.addAjacentTown(sourceVertex);
-    		}
+    		unlockTowns(sourceVertex.getId(), destinationVertex.getId());
     	}
-    	
-    	
-
-    	return road1;
     }
-	
+
+	/**
+	 * Gives a road a new weight. The road is replaced by one with the new weight
+	 * in the rows of its two towns only, adjacency and components are unchanged,
+	 * and searches already running keep the old weight.
+	 * @param sourceVertex - one town of the road
+	 * @param destinationVertex - the other town of the road
+	 * @param description - road name
+	 * @param weight - new weight
+	 * @return the road with the new weight, or null if there is no such road or the weight is negative
+	 * @throws IllegalArgumentException if the road follows a travel time profile that would
+	 * fall faster than the clock on it at the time of the new weight
+	 */
+	public Road reweightEdge(Town sourceVertex, Town destinationVertex, String description, int weight)
+	{
+		if (sourceVertex == null || destinationVertex == null || description == null || weight < 0)
+			return null;
+
+		lockTowns(sourceVertex.getId(), destinationVertex.getId());
+		try
+		{
+			Road old = snapshot().getRoad(sourceVertex.getId(), destinationVertex.getId(), description);
+			if (old == null)
+				return null;
+			// a road at the default speed changes time with its weight
+			checkTravelTimeProfile(old.withWeight(weight), old.getTravelTimeProfile());
+
+			Road road = reweighted(old, weight);
+			publish(next -> next.replaceRoad(old, road));
+			return road;
+		}
+		finally
+		{
+			unlockTowns(sourceVertex.getId(), destinationVertex.getId());
+		}
+	}
+
+	/**
+	 * Makes a road's travel time follow a profile over the day, replacing the road
+	 * in the rows of its two towns like reweightEdge
+	 * @param sourceVertex - one town of the road
+	 * @param destinationVertex - the other town of the road
+	 * @param description - road name
+	 * @param profile - id in TravelTimeProfiles.SHARED, or -1 for the same time all day
+	 * @return the road with the profile, or null if there is no such road
+	 * @throws IllegalArgumentException if the profile is not stored, or could make the
+	 * road quicker to arrive over by entering it later
+	 */
+	public Road setTravelTimeProfile(Town sourceVertex, Town destinationVertex, String description, int profile)
+	{
+		if (sourceVertex == null || destinationVertex == null || description == null)
+			return null;
+		if (profile >= TravelTimeProfiles.SHARED.size())
+			throw new IllegalArgumentException("no travel time profile " + profile);
+
+		lockTowns(sourceVertex.getId(), destinationVertex.getId());
+		try
+		{
+			Road old = snapshot().getRoad(sourceVertex.getId(), destinationVertex.getId(), description);
+			if (old == null)
+				return null;
+			checkTravelTimeProfile(old, profile);
+
+			Road road = old.withTravelTimeProfile(profile);
+			edges.remove(old);
+			edges.add(road);
+			publish(next -> next.replaceRoad(old, road));
+			return road;
+		}
+		finally
+		{
+			unlockTowns(sourceVertex.getId(), destinationVertex.getId());
+		}
+	}
+
+	/**
+	 * Checks that a road can follow a travel time profile, which it cannot if the
+	 * profile would make it quicker to arrive over the road by entering it later
+	 * @param road - road with the time the profile scales
+	 * @param profile - id in TravelTimeProfiles.SHARED, or -1 for the same time all day
+	 * @throws IllegalArgumentException if the profile is not stored or falls faster than the clock on the road
+	 */
+	public static void checkTravelTimeProfile(Road road, int profile)
+	{
+		if (profile >= TravelTimeProfiles.SHARED.size())
+			throw new IllegalArgumentException("no travel time profile " + profile);
+		if (profile >= 0 && !TravelTimeProfiles.SHARED.isFifo(profile, road.getTime()))
+			throw new IllegalArgumentException("profile " + profile + " falls faster than the clock on " + road.getName());
+	}
+
+	/**
+	 * Checks the travel time profile of every road a batch adds like checkTravelTimeProfile
+	 * @param batch - batch whose roads are checked
+	 * @throws IllegalArgumentException if a road cannot follow its profile
+	 */
+	public static void checkTravelTimeProfiles(GraphBatch batch)
+	{
+		for (Road road : batch.getRoads())
+		{
+			checkTravelTimeProfile(road, road.getTravelTimeProfile());
+		}
+	}
+
+	/**
+	 * checks if a road can keep its travel time profile at a new weight
+	 * @param old - road in the graph
+	 * @param weight - new weight
+	 * @return false if the profile would fall faster than the clock at the new weight's time
+	 */
+	public static boolean keepsProfile(Road old, int weight)
+	{
+		int profile = old.getTravelTimeProfile();
+		return profile < 0 || TravelTimeProfiles.SHARED.isFifo(profile, old.withWeight(weight).getTime());
+	}
+
+	/**
+	 * Gives the roads of a batch's reweights their new weights, published as one
+	 * version. Only the stripes of the towns involved are locked, so other writers
+	 * keep going. When a road is reweighted more than once the last weight is kept.
+	 * A road is left alone if its travel time profile would fall faster than the
+	 * clock at the new weight, see keepsProfile.
+	 * @param batch - batch whose reweights are made, its towns and other changes are ignored
+	 * @return number of roads reweighted, they are also in the batch's reweighted roads
+	 */
+	public int reweightEdges(GraphBatch batch)
+	{
+		boolean[] held = lockRoads(batch.getReweights());
+		try
+		{
+			// rows of the locked towns cannot change, so the old roads stay in place while publishing retries
+			GraphSnapshot current = snapshot();
+			Map<Road, Integer> weights = new IdentityHashMap<>();
+			for (Road queued : batch.getReweights())
+			{
+				Road old = current.getRoad(queued.getSource().getId(), queued.getDestination().getId(), queued.getName());
+				if (old != null && queued.getWeight() >= 0 && keepsProfile(old, queued.getWeight()))
+					weights.put(old, queued.getWeight());
+			}
+			if (weights.isEmpty())
+				return 0;
+
+			Map<Road, Road> replaced = new IdentityHashMap<>();
+			for (Map.Entry<Road, Integer> entry : weights.entrySet())
+			{
+				Road road = reweighted(entry.getKey(), entry.getValue());
+				replaced.put(entry.getKey(), road);
+				batch.getReweightedRoads().add(road);
+			}
+			publish(next -> {
+				for (Map.Entry<Road, Road> entry : replaced.entrySet())
+				{
+					next.replaceRoad(entry.getKey(), entry.getValue());
+				}
+			});
+			return replaced.size();
+		}
+		finally
+		{
+			unlockStripes(held);
+		}
+	}
+
+	/**
+	 * makes the road that replaces one given a new weight
+	 * @param old - road in the graph
+	 * @param weight - new weight
+	 * @return the replacement, already in the edge set
+	 */
+	private Road reweighted(Road old, int weight)
+	{
+		// a new road rather than a changed weight, older snapshots keep the old one
+		Road road = old.withWeight(weight);
+		edges.remove(old);
+		edges.add(road);
+		return road;
+	}
+
 	/**
      * Returns true if and only if this graph contains an edge going
      * from the source vertex to the target vertex. In undirected graphs the
@@ -135,22 +715,9 @@ public class Graph implements GraphInterface<Town, Road>
      */
     public boolean containsEdge(Town sourceVertex, Town destinationVertex)
     {
-    	if(sourceVertex == null || destinationVertex == null) {
-    		return false;
-    	}
-    	
-    	if (!(vertices.contains(sourceVertex) || vertices.contains(destinationVertex))) {
-    		return false;
-    	}
-		
-		for(Road road : edges) {
-			if (road.contains(sourceVertex) && road.contains(destinationVertex)) {
-				return true;
-			}
-		}
-		return false;
+    	return getEdge(sourceVertex, destinationVertex) != null;
     }
-    
+
     /**
      * Returns true if this graph contains the specified vertex. More
      * formally, returns true if and only if this graph contains a
@@ -163,19 +730,10 @@ public class Graph implements GraphInterface<Town, Road>
      */
     public boolean containsVertex(Town v)
     {
-    	if (v== null)
-    		return false;
-    	
-    	
-    	for (Town town: vertices)
-    	{
-    		if (town.equals(v))
-    			return true;
-    	}
-    	return false;
+    	return getVertex(v) != null;
     }
-    
-    
+
+
     /**
      * Returns a set of the edges contained in this graph. The set is backed by
      * the graph, so changes to the graph are reflected in the set. If the graph
@@ -189,10 +747,10 @@ public class Graph implements GraphInterface<Town, Road>
     {
     	if (edges == null)
     		return null;
-    	
+
     	return edges;
     }
-    
+
     /**
      * Returns a set of all edges touching the specified vertex (also
      * referred to as adjacent vertices). If no edges are
@@ -213,29 +771,40 @@ public class Graph implements GraphInterface<Town, Road>
     	{
     		throw new NullPointerException();
     	}
-    	if (!containsVertex(vertex))
+
+    	GraphSnapshot current = snapshot();
+    	if (current.getTown(vertex.getId()) == null)
     	{
     		throw new IllegalArgumentException();
     	}
-    	
-    	for (Road r: edges)
+
+    	for (Road r: current.getRoads(vertex.getId()))
     	{
-    		if (r.contains(vertex))
-    		{
-    			neighbors.add(r);
-    		}
+    		neighbors.add(r);
     	}
-    	
+
     	return neighbors;
     }
-    
+
+    /**
+     * Returns the towns joined to a town by a road in the current version, in
+     * either direction. Towns are shared by every version, so adjacency is read
+     * from the version's own roads rather than kept on the town.
+     * @param vertex the town whose neighbours are returned
+     * @return each neighbouring town once, empty if the town is not in the graph
+     */
+    public ArrayList<Town> adjacentTowns(Town vertex)
+    {
+    	return snapshot().getAdjacentTowns(vertex.getId());
+    }
+
     /**
      * Removes an edge going from source vertex to target vertex, if such
-     * vertices and such edge exist in this graph. 
-     * 
+     * vertices and such edge exist in this graph.
+     *
      * If weight >- 1 it must be checked
-     * If description != null, it must be checked 
-     * 
+     * If description != null, it must be checked
+     *
      * Returns the edge if removed
      * or null otherwise.
      *
@@ -244,6 +813,9 @@ public class Graph implements GraphInterface<Town, Road>
      * @param weight weight of the edge
      * @param description description of the edge
      *
+     * When several roads join the towns, the first one matching the weight and
+     * description that are checked is removed.
+     *
      * @return The removed edge, or null if no edge removed.
      */
     public Road removeEdge(Town sourceVertex, Town destinationVertex, int weight, String description)
@@ -252,41 +824,38 @@ public class Graph implements GraphInterface<Town, Road>
     	{
     		return null;
     	}
-    	
-    	Road road = new Road(sourceVertex, destinationVertex, weight, description);
-    	if (!this.containsEdge(sourceVertex, destinationVertex) || weight<0 || description == null)
-    		return null;
-    	
-    	for (Town town: vertices)
+
+    	lockTowns(sourceVertex.getId(), destinationVertex.getId());
+    	try
     	{
-    		if (town.containsTown(sourceVertex))
-    		{
-    			town.removeAdjacentTown(destinationVertex);    			
-    		}
-    		else if (town.containsTown(destinationVertex))
-    		{
-    			town.removeAdjacentTown(sourceVertex);
-    		}
+	    	Road road = null;
+	    	for (Road r: snapshot().getRoads(sourceVertex.getId()))
+	    	{
+	    		if (r.getOppositeId(sourceVertex.getId()) != destinationVertex.getId())
+	    			continue;
+
+	    		if (road == null && (weight < 0 || r.getWeight() == weight) && (description == null || description.equals(r.getName())))
+	    			road = r;
+	    	}
+	    	if (road == null)
+	    		return null;
+
+	    	edges.remove(road);
+	    	Road removed = road;
+	    	publish(next -> next.removeRoad(removed));
+	    	components.invalidate();
+
+	    	return road;
     	}
-    	
-    	for (Road r: edges)
+    	finally
     	{
-    		if (road.equals(r))
-    		{
-    			edges.remove(r);
-    			
-    			
-    			return r;
-    		}
+    		unlockTowns(sourceVertex.getId(), destinationVertex.getId());
     	}
-    	
-    	return null;
-    	
     }
-    
+
     /**
      * Removes the specified vertex from this graph including all its touching
-     * edges if present. More formally, if the graph contains a vertex 
+     * edges if present. More formally, if the graph contains a vertex
      * u such that u.equals(v), the call removes all edges
      * that touch u and then removes u itself. If no
      * such u is found, the call leaves the graph unchanged.
@@ -302,34 +871,32 @@ public class Graph implements GraphInterface<Town, Road>
      */
     public boolean removeVertex(Town v)
     {
-    	if (v==null)
+    	lockAll();
+    	try
     	{
-    		return false;
+	    	Town town = getVertex(v);
+	    	if (town == null)
+	    	{
+	    		return false;
+	    	}
+
+	    	for (Road road: snapshot().getRoads(town.getId()))
+	    	{
+	    		edges.remove(road);
+	    	}
+
+	    	vertices.remove(town);
+	    	publish(next -> next.removeTown(town));
+	    	components.invalidate();
+
+	    	return true;
     	}
-    	
-    	
-    	for (Town t: vertices)
+    	finally
     	{
-    		if (t.containsTown(v))
-    		{
-    			t.removeAdjacentTown(v);
-    		}
-    		
-    		if (t.equals(v))
-    		{
-    			vertices.remove(t);
-    			
-    			return true;
-    		}
-    		
-    		
+    		unlockAll();
     	}
-    	
-    
-    	
-    	return false;
     }
-    
+
     /**
      * Returns a set of the vertices contained in this graph. The set is backed
      * by the graph, so changes to the graph are reflected in the set. If the
@@ -343,8 +910,8 @@ public class Graph implements GraphInterface<Town, Road>
     {
     	return vertices;
     }
-    
-    
+
+
     /**
      * Find the shortest path from the sourceVertex to the destinationVertex
      * call the dijkstraShortestPath with the sourceVertex
@@ -358,143 +925,398 @@ public class Graph implements GraphInterface<Town, Road>
 	 * Vertex_1 via Edge_2 to Vertex_3 4 (first string in ArrayList)
 	 * Vertex_3 via Edge_5 to Vertex_8 2 (second string in ArrayList)
 	 * Vertex_8 via Edge_9 to Vertex_10 2 (third string in ArrayList)
-     */   
+     */
     public ArrayList<String> shortestPath(Town sourceVertex, Town destinationVertex)
     {
-    	
-    	ArrayList<String> path = new ArrayList<String>();
-		boolean containsDestination = false;
-		
-		for (Road road : edges) {
-			if (road.contains(destinationVertex)) {
-				containsDestination = true;
-			}
-		}
-		// checks if the destination is reachable
-		if(!containsDestination) {
-			return path;
-		}
-		// computes the shortest path to all vertices
-		dijkstraShortestPath(sourceVertex);
-		
-		
-		// Loop until the current destination vertex is equal to the sourceVertex
-		while (!sourceVertex.equals(destinationVertex))
-		{
-		    // Iterate through each road in the roadSet
-		    for (Road road : edges)
-		    {
-		        // Check if the road connects the current destination vertex and its previous vertex
-		        if (road.contains(destinationVertex) && road.contains(previousVertices.get(destinationVertex))) {
-		            
-		        	String name = previousVertices.get(destinationVertex).getName();
-		        	String roadN = road.getName();
-		        	String dest = destinationVertex.getName();
-		        	int distance = road.getWeight() ;
-		        	
-		            // Add the corresponding path information to the shortest path list
-		            path.add(0, name + " via " + roadN + " to " + dest + " " + distance + " mi");  
-		        }
-		    }
-		 	destinationVertex = previousVertices.get(destinationVertex);
-		}
-		return path;
+    	return shortestPath(sourceVertex, destinationVertex, CostProfile.SHORTEST);
+    }
+
+    /**
+     * Finds the cheapest path from the sourceVertex to the destinationVertex with
+     * the roads costed by a profile, using the profile's landmark table if it has
+     * a current one. Each road is described as in shortestPath, with its miles.
+     * @param sourceVertex starting vertex
+     * @param destinationVertex ending vertex
+     * @param profile cost of each road, such as CostProfile.FASTEST
+     * @return descriptions of the roads of the path, empty if there is none
+     */
+    public ArrayList<String> shortestPath(Town sourceVertex, Town destinationVertex, CostProfile profile)
+    {
+    	return describePath(sourceVertex, shortestRoads(sourceVertex, destinationVertex, profile));
+    }
+
+    /**
+     * Finds the roads of the path shortestPath describes
+     * @param sourceVertex starting vertex
+     * @param destinationVertex ending vertex
+     * @param profile cost of each road, such as CostProfile.FASTEST
+     * @return roads of the path in travel order, empty if there is none
+     */
+    public ArrayList<Road> shortestRoads(Town sourceVertex, Town destinationVertex, CostProfile profile)
+    {
+    	if (sourceVertex == null || destinationVertex == null || !isConnected(sourceVertex, destinationVertex))
+    		return new ArrayList<Road>();
 
+    	// the search only stops at the destination, so the rest of the graph is not visited
+    	GraphSnapshot current = snapshot();
+    	LandmarkTable table = landmarks.get(profile);
+    	try (RouteSearch search = new RouteSearch(current, queueType, profile))
+    	{
+	    	if (table != null && table.isValidFor(current))
+	    		search.run(sourceVertex.getId(), destinationVertex.getId(), table);
+	    	else
+	    		search.run(sourceVertex.getId(), destinationVertex.getId());
 
+	    	return search.getPath(destinationVertex.getId());
+    	}
    }
-    
+
+    /**
+     * Finds the quickest path from the sourceVertex to the destinationVertex when
+     * leaving at a time of day, with each road taking the time its travel time
+     * profile gives for the moment it is entered
+     * @param sourceVertex starting vertex
+     * @param destinationVertex ending vertex
+     * @param departure second of the day the source is left
+     * @return descriptions of the roads of the path in the format of shortestPath,
+     * empty if there is none
+     */
+    public ArrayList<String> quickestPath(Town sourceVertex, Town destinationVertex, int departure)
+    {
+    	return describePath(sourceVertex, quickestRoads(sourceVertex, destinationVertex, departure));
+    }
+
+    /**
+     * Finds the roads of the path quickestPath describes
+     * @param sourceVertex starting vertex
+     * @param destinationVertex ending vertex
+     * @param departure second of the day the source is left
+     * @return roads of the path in travel order, empty if there is none
+     */
+    public ArrayList<Road> quickestRoads(Town sourceVertex, Town destinationVertex, int departure)
+    {
+    	if (sourceVertex == null || destinationVertex == null || !isConnected(sourceVertex, destinationVertex))
+    		return new ArrayList<Road>();
+
+    	try (RouteSearch search = new RouteSearch(snapshot(), queueType))
+    	{
+    		search.runDeparting(sourceVertex.getId(), destinationVertex.getId(), departure);
+    		return search.getPath(destinationVertex.getId());
+    	}
+    }
+
+    /**
+     * Finds the travel time from one town to each of several others when leaving
+     * at a time of day, with a single search
+     * @param source starting town
+     * @param targets towns to measure to, null for a town not in the graph
+     * @param departure second of the day the source is left
+     * @return seconds to each target in order, RouteSearch.UNREACHABLE for towns
+     * that cannot be reached or are not in the graph
+     */
+    public int[] travelTimes(Town source, List<Town> targets, int departure)
+    {
+    	int[] times = new int[targets.size()];
+    	GraphSnapshot current = snapshot();
+    	try (RouteSearch search = new RouteSearch(current, queueType))
+    	{
+    		search.runDeparting(source.getId(), -1, departure);
+    		for (int i = 0; i < times.length; i++)
+    		{
+    			int id = idOf(targets.get(i));
+    			times[i] = id >= 0 && id < current.getIdCapacity() ? search.getDistance(id) : RouteSearch.UNREACHABLE;
+    		}
+    	}
+    	return times;
+    }
+
+    /**
+     * Checks if any path connects two towns, without searching. The component
+     * index is rebuilt first if a road or town was removed since it was last built.
+     * @param first one town
+     * @param second the other town
+     * @return true if the towns are in the same connected component
+     */
+    public boolean isConnected(Town first, Town second)
+    {
+    	if (components.isStale())
+    	{
+    		// holding every stripe keeps writers from publishing while the index is rebuilt
+    		lockAll();
+    		try
+    		{
+    			if (components.isStale())
+    				components.rebuild(snapshot());
+    		}
+    		finally
+    		{
+    			unlockAll();
+    		}
+    	}
+    	return components.connected(first.getId(), second.getId());
+    }
+
+    /**
+     * Finds the shortest distance from one town to each of several others with a single search
+     * @param source starting town
+     * @param targets towns to measure to, null for a town not in the graph
+     * @return distance to each target in order, RouteSearch.UNREACHABLE for towns
+     * that cannot be reached or are not in the graph
+     */
+    public int[] distances(Town source, List<Town> targets)
+    {
+    	return distances(source, targets, false);
+    }
+
+    /**
+     * Finds the cost of the cheapest path from every source to every target. One
+     * search is run per town on the smaller side, forwards from each source or
+     * backwards from each target, and each stops once it has settled every town
+     * of the other side, so the table costs min(S, T) partial searches rather
+     * than S * T point to point ones.
+     * @param sources towns to measure from, null for a town not in the graph
+     * @param targets towns to measure to, null for a town not in the graph
+     * @param profile cost of each road
+     * @return table[s][t] for the s-th source and t-th target, RouteSearch.UNREACHABLE
+     * where there is no path or either town is not in the graph
+     */
+    public int[][] distanceTable(List<Town> sources, List<Town> targets, CostProfile profile)
+    {
+    	int[][] table = new int[sources.size()][targets.size()];
+    	// searching backwards from the targets when there are fewer of them fills the table by columns
+    	boolean reverse = sources.size() > targets.size();
+    	int[] searched = { 0 };
+    	distanceVectors(sources, targets, profile, reverse, vector -> {
+    		int i = searched[0]++;
+    		for (int j = 0; j < vector.length; j++)
+    		{
+    			if (reverse)
+    				table[j][i] = vector[j];
+    			else
+    				table[i][j] = vector[j];
+    		}
+    	});
+    	return table;
+    }
+
+    /**
+     * Finds the same costs as distanceTable but hands them over one search at a
+     * time instead of keeping the table, so tables too large for the heap can be
+     * written out as they are found
+     * @param sources towns to measure from, null for a town not in the graph
+     * @param targets towns to measure to, null for a town not in the graph
+     * @param profile cost of each road
+     * @param reverse false to search from each source and hand over rows, true to
+     * search backwards from each target and hand over columns
+     * @param vectors called once per searched town in order with the cost to or from
+     * each town of the other side, RouteSearch.UNREACHABLE where there is no path;
+     * the array is reused by the next call
+     */
+    public void distanceVectors(List<Town> sources, List<Town> targets, CostProfile profile, boolean reverse, Consumer<int[]> vectors)
+    {
+    	List<Town> searched = reverse ? targets : sources;
+    	int[] others = ids(reverse ? sources : targets);
+    	int[] vector = new int[others.length];
+
+    	GraphSnapshot current = snapshot();
+    	try (RouteSearch search = new RouteSearch(current, queueType, profile))
+    	{
+    		search.setReverse(reverse);
+    		for (Town town : searched)
+    		{
+    			search.run(idOf(town), others);
+    			for (int j = 0; j < others.length; j++)
+    			{
+    				vector[j] = others[j] >= 0 && others[j] < current.getIdCapacity() ? search.getDistance(others[j]) : RouteSearch.UNREACHABLE;
+    			}
+    			vectors.accept(vector);
+    		}
+    	}
+    }
+
+    /**
+     * Finds the cheapest path from one town to each of several others with a
+     * single search that stops once every target is settled
+     * @param source starting town, null finds no paths
+     * @param targets towns to find paths to, null for a town not in the graph
+     * @param profile cost of each road
+     * @return roads of each target's path in travel order, empty for the source
+     * itself and null for towns that cannot be reached or are not in the graph
+     */
+    public ArrayList<ArrayList<Road>> paths(Town source, List<Town> targets, CostProfile profile)
+    {
+    	ArrayList<ArrayList<Road>> paths = new ArrayList<ArrayList<Road>>();
+    	int[] ids = ids(targets);
+    	GraphSnapshot current = snapshot();
+    	try (RouteSearch search = new RouteSearch(current, queueType, profile))
+    	{
+    		search.run(idOf(source), ids);
+    		for (int id : ids)
+    		{
+    			boolean reached = id >= 0 && id < current.getIdCapacity() && search.getDistance(id) != RouteSearch.UNREACHABLE;
+    			paths.add(reached ? search.getPath(id) : null);
+    		}
+    	}
+    	return paths;
+    }
+
+    /**
+     * Finds a minimum spanning tree of the roads by miles, one tree per connected
+     * component. Large graphs are spread over every core with Boruvka's algorithm
+     * when there is more than one, smaller ones use Kruskal's.
+     * @return the roads of the tree and their total miles
+     */
+    public SpanningTree minimumSpanningTree()
+    {
+    	GraphSnapshot current = snapshot();
+    	if (current.getEdgeCount() >= SpanningTree.PARALLEL_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1)
+    		return SpanningTree.boruvka(current, ForkJoinPool.commonPool());
+    	return SpanningTree.kruskal(current);
+    }
+
+    /**
+     * Finds the shortest distance from each of several towns to one town with a
+     * single search that follows the roads backwards
+     * @param target town to measure to
+     * @param sources towns to measure from, null for a town not in the graph
+     * @return distance from each source in order, RouteSearch.UNREACHABLE for towns
+     * that cannot reach the target or are not in the graph
+     */
+    public int[] distancesTo(Town target, List<Town> sources)
+    {
+    	return distances(target, sources, true);
+    }
+
+    private int[] distances(Town source, List<Town> targets, boolean reverse)
+    {
+    	int[] distances = new int[targets.size()];
+    	GraphSnapshot current = snapshot();
+    	try (RouteSearch search = new RouteSearch(current, queueType))
+    	{
+    		search.setReverse(reverse);
+    		search.run(source.getId(), -1);
+    		for (int i = 0; i < distances.length; i++)
+    		{
+    			int id = idOf(targets.get(i));
+    			distances[i] = id >= 0 && id < current.getIdCapacity() ? search.getDistance(id) : RouteSearch.UNREACHABLE;
+    		}
+    	}
+    	return distances;
+    }
+
+    /**
+     * Finds the nearest facility of every town with one search started from all
+     * the facilities at once, following the roads backwards so one-way roads
+     * count the way the towns would drive to the facility
+     * @param facilities towns holding a facility, towns not in the graph are ignored
+     * @return nearest facility and its distance for every town
+     */
+    public FacilityTable nearestFacilities(Collection<Town> facilities)
+    {
+    	GraphSnapshot current = snapshot();
+    	try (RouteSearch search = new RouteSearch(current, queueType))
+    	{
+    		search.setReverse(true);
+    		search.run(ids(facilities), -1);
+    		return new FacilityTable(current, search);
+    	}
+    }
+
+    /**
+     * Finds the path from a town to its nearest facility, the search starts from
+     * all the facilities at once and stops when it reaches the town
+     * @param town starting town
+     * @param facilities towns holding a facility, towns not in the graph are ignored
+     * @return path to the nearest facility in the format of shortestPath, empty if
+     * no facility can be reached or the town is one
+     */
+    public ArrayList<String> pathToNearestFacility(Town town, Collection<Town> facilities)
+    {
+    	if (town == null)
+    		return new ArrayList<String>();
+
+    	try (RouteSearch search = new RouteSearch(snapshot(), queueType))
+    	{
+    		search.setReverse(true);
+    		search.run(ids(facilities), town.getId());
+
+    		// the search ran backwards from the facility, so its path is walked from the end
+    		ArrayList<Road> roads = search.getPath(town.getId());
+    		Collections.reverse(roads);
+    		return describePath(town, roads);
+    	}
+    }
+
+    /**
+     * Describes each road of a path as "town via road to town miles mi", the
+     * format of shortestPath
+     * @param source town the path starts at
+     * @param roads roads of the path in travel order
+     * @return one description per road
+     */
+    public static ArrayList<String> describePath(Town source, List<Road> roads)
+    {
+    	ArrayList<String> path = new ArrayList<String>();
+    	Town town = source;
+    	for (Road road : roads)
+    	{
+    		int nextId = road.getOppositeId(town.getId());
+    		Town next = road.getSource().getId() == nextId ? road.getSource() : road.getDestination();
+
+    		// Add the corresponding path information to the shortest path list
+    		path.add(town.getName() + " via " + road.getName() + " to " + next.getName() + " " + road.getWeight() + " mi");
+    		town = next;
+    	}
+    	return path;
+    }
+
+    private static int[] ids(Collection<Town> towns)
+    {
+    	int[] ids = new int[towns.size()];
+    	int i = 0;
+    	for (Town town : towns)
+    	{
+    		ids[i++] = idOf(town);
+    	}
+    	return ids;
+    }
+
+    // id of a town, or -1 for null, which no search ever reaches
+    private static int idOf(Town town)
+    {
+    	return town == null ? -1 : town.getId();
+    }
+
     /**
      * Dijkstra's Shortest Path Method.  Internal structures are built which
      * hold the ability to retrieve the path, shortest distance from the
      * sourceVertex to all the other vertices in the graph, etc.
      * @param sourceVertex the vertex to find shortest path from
-     * 
+     *
      */
-    public void dijkstraShortestPath(Town sourceVertex)
+    public synchronized void dijkstraShortestPath(Town sourceVertex)
     {
-    	Set<Town > closestPath = new HashSet<Town>();
-    	
-    	// initializes each vertex to infinity
-   		for(Town town : vertices) {
-   			distances.put(town, Integer.MAX_VALUE);
-    	}
-		
-    	// adds all the vertices to the closestPath
-		for(Town town: vertices) {
-			closestPath.add(town);
-		}
-		
-		
-		// loops to process each town
-		while(!closestPath.isEmpty()) {
-			
-			int minimum = 100000;
-			
-			for (Map.Entry<Town, Integer> entry : distances.entrySet()) {
-			    Town town = entry.getKey();
-			    int distance = entry.getValue();
-			    if (closestPath.contains(town)&& minimum > distance ) {
-			        minimum = distance;
-			        sourceVertex = town;
-			    }
-			}
-
-			// Update the weights for neighboring towns through sourceVertex
-			for (Road road : edges) {
-			    
-			    Town destination = road.getDestination();
-			    if (destination.equals(sourceVertex) || !closestPath.contains(destination)) 
-			    {
-			        continue;
-			    }
-			    if (!road.contains(sourceVertex)) {
-			        continue;
-			    }
-			    
-			    
-			    int sourceWeight = distances.get(sourceVertex);
-			    int destinationWeight = distances.get(destination);
-			    int newWeight = sourceWeight + road.getWeight();
-			    
-			    if (newWeight < destinationWeight) {
-			        previousVertices.put(destination, sourceVertex);
-			        distances.put(destination, newWeight);
-			    }
-			}
+    	GraphSnapshot current = snapshot();
+    	try (RouteSearch search = new RouteSearch(current, queueType))
+    	{
+	    	search.run(sourceVertex.getId(), -1);
 
-			// Remove the sourceVertex from closestPath as it is processed
-			for (Road road : edges) {
-			    
-			    Town source = road.getSource();
-			    if (source.equals(sourceVertex) || !closestPath.contains(source)) {
-			        continue;
-			    }
-			    if (!road.contains(sourceVertex)) {
-			        continue;
-			    }
-			    
-			    
-			    int sourceWeight = distances.get(sourceVertex);
-			    int sourceToRoadWeight = road.getWeight();
-			    int currentRoadWeight = distances.get(source);
-			    int newWeight = sourceWeight + sourceToRoadWeight;
-			    
-			    if (newWeight < currentRoadWeight) {
-			        previousVertices.put(source, sourceVertex);
-			        distances.put(source, newWeight);
-			    }
-			}
-			// removes the currentVertex from the closest path after processing
-			closestPath.remove(sourceVertex);
+	    	distances.clear();
+	    	previousVertices.clear();
+	    	for (int id = 0; id < current.getIdCapacity(); id++)
+	    	{
+	    		Town town = current.getTown(id);
+	    		if (town == null)
+	    			continue;
 
-		}
+	    		distances.put(town, search.getDistance(id));
+	    		Road road = search.getPreviousRoad(id);
+	    		if (road != null)
+	    			previousVertices.put(town, current.getTown(road.getOppositeId(id)));
+	    	}
+    	}
 	}
-   
-    
-    
-    
-    
-    
+
     /**
      * Adds the specified vertex to this graph if not already present. More
      * formally, adds the specified vertex, v, to this graph if
@@ -515,14 +1337,23 @@ public class Graph implements GraphInterface<Town, Road>
     {
     	if (v == null)
     		throw new NullPointerException();
-    	
-    	if (containsVertex(v))
-    		return false;
-    	vertices.add(v);
-    	
-    	return true;
+
+    	lockTowns(v.getId(), v.getId());
+    	try
+    	{
+	    	if (containsVertex(v))
+	    		return false;
+
+	    	vertices.add(v);
+	    	publish(next -> next.addTown(v));
+
+	    	return true;
+    	}
+    	finally
+    	{
+    		unlockTowns(v.getId(), v.getId());
+    	}
     }
-    
-    
+
+
 }
-   
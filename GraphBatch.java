@@ -0,0 +1,288 @@
+import java.util.ArrayList;
+
+/**
+ * Collects towns and roads to be added to a Graph in one step, and roads to be
+ * removed or given a new weight
+ * Towns named by a road are added along with it, so a batch can be filled
+ * straight from a road file. A batch is applied as additions first, then
+ * removals, then new weights, and is published as one version. After the batch
+ * is applied it holds the towns and roads that were actually new to the graph
+ * and the roads that were removed or replaced.
+ * @author - Faith Fru Nchang
+ */
+public class GraphBatch
+{
+	private ArrayList<Town> towns;
+	private ArrayList<Road> roads;
+	private ArrayList<Town> addedTowns;
+	private ArrayList<Road> addedRoads;
+	// queued by name, so names no town or road has are never interned
+	private ArrayList<Change> queuedRemovals;
+	private ArrayList<Change> queuedReweights;
+	// the queued ones whose names are known, built when first asked for
+	private ArrayList<Road> removals;
+	private ArrayList<Road> reweights;
+	private ArrayList<Road> removedRoads;
+	private ArrayList<Road> reweightedRoads;
+
+	public GraphBatch()
+	{
+		towns = new ArrayList<>();
+		roads = new ArrayList<>();
+		addedTowns = new ArrayList<>();
+		addedRoads = new ArrayList<>();
+		queuedRemovals = new ArrayList<>();
+		queuedReweights = new ArrayList<>();
+		removedRoads = new ArrayList<>();
+		reweightedRoads = new ArrayList<>();
+	}
+
+	/**
+	 * queues a town
+	 * @param name - town name
+	 * @return this batch
+	 */
+	public GraphBatch addTown(String name)
+	{
+		if (name == null)
+			throw new NullPointerException();
+
+		towns.add(new Town(name));
+		return this;
+	}
+
+	/**
+	 * queues a road, and the two towns it connects
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param weight - road distance
+	 * @param roadName - road name
+	 * @return this batch
+	 */
+	public GraphBatch addRoad(String town1, String town2, int weight, String roadName)
+	{
+		if (town1 == null || town2 == null)
+			throw new NullPointerException();
+
+		roads.add(new Road(new Town(town1), new Town(town2), weight, roadName));
+		return this;
+	}
+
+	/**
+	 * queues a road that only leads from town 1 to town 2, and the two towns it connects
+	 * @param town1 - name of the town the road leads from
+	 * @param town2 - name of the town the road leads to
+	 * @param weight - road distance
+	 * @param roadName - road name
+	 * @return this batch
+	 */
+	public GraphBatch addOneWayRoad(String town1, String town2, int weight, String roadName)
+	{
+		if (town1 == null || town2 == null)
+			throw new NullPointerException();
+
+		roads.add(new Road(new Town(town1), new Town(town2), weight, roadName, true));
+		return this;
+	}
+
+	/**
+	 * queues a road with its travel time and toll, and the two towns it connects
+	 * @param town1 - name of town 1, the town the road leads from if it is one-way
+	 * @param town2 - name of town 2
+	 * @param weight - road distance
+	 * @param roadName - road name
+	 * @param oneWay - true if the road only leads from town 1 to town 2
+	 * @param seconds - travel time, or -1 for the time at Road.DEFAULT_SPEED
+	 * @param toll - toll in cents
+	 * @return this batch
+	 * @throws IllegalArgumentException if the toll is negative
+	 */
+	public GraphBatch addRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll)
+	{
+		return addRoad(town1, town2, weight, roadName, oneWay, seconds, toll, -1);
+	}
+
+	/**
+	 * queues a road like addRoad with its time and toll, whose time also follows a profile over the day
+	 * @param town1 - name of town 1, the town the road leads from if it is one-way
+	 * @param town2 - name of town 2
+	 * @param weight - road distance
+	 * @param roadName - road name
+	 * @param oneWay - true if the road only leads from town 1 to town 2
+	 * @param seconds - travel time, or -1 for the time at Road.DEFAULT_SPEED
+	 * @param toll - toll in cents
+	 * @param travelTimeProfile - id in TravelTimeProfiles.SHARED, or -1 for the same time all day
+	 * @return this batch
+	 * @throws IllegalArgumentException if the toll is negative, the profile is not stored
+	 * or it falls faster than the clock on the road
+	 */
+	public GraphBatch addRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll, int travelTimeProfile)
+	{
+		if (town1 == null || town2 == null)
+			throw new NullPointerException();
+		if (toll < 0)
+			throw new IllegalArgumentException("negative toll " + toll);
+
+		Road road = new Road(new Town(town1), new Town(town2), weight, roadName, oneWay, seconds, toll, travelTimeProfile);
+		Graph.checkTravelTimeProfile(road, travelTimeProfile);
+		roads.add(road);
+		return this;
+	}
+
+	/**
+	 * queues the removal of a road, removing nothing if the graph has no road
+	 * with that name between the towns
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param roadName - road name
+	 * @return this batch
+	 */
+	public GraphBatch removeRoad(String town1, String town2, String roadName)
+	{
+		if (town1 == null || town2 == null || roadName == null)
+			throw new NullPointerException();
+
+		queuedRemovals.add(new Change(town1, town2, roadName, 0));
+		removals = null;
+		return this;
+	}
+
+	/**
+	 * queues a new weight for a road, changing nothing if the graph has no road
+	 * with that name between the towns
+	 * @param town1 - name of town 1
+	 * @param town2 - name of town 2
+	 * @param roadName - road name
+	 * @param weight - new road distance
+	 * @return this batch
+	 * @throws IllegalArgumentException if the weight is negative
+	 */
+	public GraphBatch reweightRoad(String town1, String town2, String roadName, int weight)
+	{
+		if (town1 == null || town2 == null || roadName == null)
+			throw new NullPointerException();
+		if (weight < 0)
+			throw new IllegalArgumentException("negative weight " + weight);
+
+		queuedReweights.add(new Change(town1, town2, roadName, weight));
+		reweights = null;
+		return this;
+	}
+
+	/**
+	 * gets the queued towns
+	 * @return towns
+	 */
+	public ArrayList<Town> getTowns()
+	{
+		return towns;
+	}
+
+	/**
+	 * gets the queued roads, their endpoints are not yet the graph's towns
+	 * @return roads
+	 */
+	public ArrayList<Road> getRoads()
+	{
+		return roads;
+	}
+
+	/**
+	 * gets the queued removals, their endpoints are not the graph's towns,
+	 * leaving out those naming a town or road that was never created
+	 * @return removals
+	 */
+	public ArrayList<Road> getRemovals()
+	{
+		if (removals == null)
+			removals = roads(queuedRemovals);
+		return removals;
+	}
+
+	/**
+	 * gets the queued new weights, their endpoints are not the graph's towns,
+	 * leaving out those naming a town or road that was never created
+	 * @return reweights
+	 */
+	public ArrayList<Road> getReweights()
+	{
+		if (reweights == null)
+			reweights = roads(queuedReweights);
+		return reweights;
+	}
+
+	// roads for the changes whose names are all interned already, the others can match no road
+	private static ArrayList<Road> roads(ArrayList<Change> changes)
+	{
+		ArrayList<Road> roads = new ArrayList<>();
+		for (Change change : changes)
+		{
+			if (Town.idOf(change.town1) >= 0 && Town.idOf(change.town2) >= 0 && Road.idOf(change.roadName) >= 0)
+				roads.add(new Road(new Town(change.town1), new Town(change.town2), change.weight, change.roadName));
+		}
+		return roads;
+	}
+
+	/**
+	 * gets the towns that were new to the graph when the batch was applied
+	 * @return added towns
+	 */
+	public ArrayList<Town> getAddedTowns()
+	{
+		return addedTowns;
+	}
+
+	/**
+	 * gets the roads that were new to the graph when the batch was applied
+	 * @return added roads
+	 */
+	public ArrayList<Road> getAddedRoads()
+	{
+		return addedRoads;
+	}
+
+	/**
+	 * gets the roads that were removed from the graph when the batch was applied
+	 * @return removed roads
+	 */
+	public ArrayList<Road> getRemovedRoads()
+	{
+		return removedRoads;
+	}
+
+	/**
+	 * gets the roads that were given a new weight when the batch was applied,
+	 * as they are in the graph afterwards
+	 * @return reweighted roads
+	 */
+	public ArrayList<Road> getReweightedRoads()
+	{
+		return reweightedRoads;
+	}
+
+	/**
+	 * gets the number of queued towns, roads, removals and new weights
+	 * @return size of the batch
+	 */
+	public int size()
+	{
+		return towns.size() + roads.size() + queuedRemovals.size() + queuedReweights.size();
+	}
+
+	// a removal or new weight as it was queued
+	private static class Change
+	{
+		private final String town1;
+		private final String town2;
+		private final String roadName;
+		private final int weight;
+
+		private Change(String town1, String town2, String roadName, int weight)
+		{
+			this.town1 = town1;
+			this.town2 = town2;
+			this.roadName = roadName;
+			this.weight = weight;
+		}
+	}
+}
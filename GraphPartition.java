@@ -0,0 +1,292 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Split of the towns of a GraphSnapshot into balanced regions
+ * Towns have no coordinates, so road distances stand in for them: two towns
+ * far apart in the set being split are found, every town is placed on the axis
+ * between them by the difference of its distances to the two, and the set is
+ * cut at the median. Each half is cut again the same way until there are
+ * enough regions, and every cut is then improved by moving towns across it
+ * while that lowers the number of roads it crosses and keeps both sides within
+ * a few percent of their target size. The same snapshot always gives the same
+ * regions.
+ * @author - Faith Fru Nchang
+ */
+public class GraphPartition
+{
+	// how far a side may grow past its target size while a cut is refined
+	private static final double IMBALANCE = 0.03;
+	private static final int REFINE_PASSES = 4;
+
+	private final GraphSnapshot graph;
+	// region of each town id, -1 for ids with no town
+	private final int[] regions;
+	private final int regionCount;
+
+	private GraphPartition(GraphSnapshot graph, int[] regions, int regionCount)
+	{
+		this.graph = graph;
+		this.regions = regions;
+		this.regionCount = regionCount;
+	}
+
+	/**
+	 * splits the towns of a snapshot into regions
+	 * @param graph - snapshot to split
+	 * @param count - number of regions, at least 1
+	 * @return the partition
+	 */
+	public static GraphPartition compute(GraphSnapshot graph, int count)
+	{
+		if (count < 1)
+			throw new IllegalArgumentException("need at least one region");
+
+		int[] regions = new int[graph.getIdCapacity()];
+		List<Integer> towns = new ArrayList<>();
+		for (int id = 0; id < regions.length; id++)
+		{
+			regions[id] = graph.getTown(id) == null ? -1 : 0;
+			if (regions[id] == 0)
+				towns.add(id);
+		}
+		bisect(graph, regions, toArray(towns), 0, count);
+		return new GraphPartition(graph, regions, count);
+	}
+
+	/**
+	 * gets the snapshot the partition was computed for
+	 * @return graph
+	 */
+	public GraphSnapshot getSnapshot()
+	{
+		return graph;
+	}
+
+	/**
+	 * gets the number of regions
+	 * @return regionCount
+	 */
+	public int getRegionCount()
+	{
+		return regionCount;
+	}
+
+	/**
+	 * gets the region of a town
+	 * @param id - town id
+	 * @return region, or -1 if the town is not in the snapshot
+	 */
+	public int getRegion(int id)
+	{
+		return id >= 0 && id < regions.length ? regions[id] : -1;
+	}
+
+	/**
+	 * gets the number of roads whose towns are in different regions
+	 * @return cut size
+	 */
+	public int getCutSize()
+	{
+		int cut = 0;
+		for (int id = 0; id < regions.length; id++)
+		{
+			for (Road road : graph.getRoads(id))
+			{
+				if (road.getSource().getId() == id && regions[road.getDestination().getId()] != regions[id])
+					cut++;
+			}
+		}
+		return cut;
+	}
+
+	/**
+	 * writes one road file per region with its towns and the roads inside it, a road file of
+	 * the roads between regions, and a list of every town with its region, the
+	 * files a ShardCoordinator and its region servers are started from
+	 * @param directory - directory to write region-N.txt, overlay.txt and towns.txt to
+	 * @throws IOException if a file cannot be written
+	 */
+	public void write(File directory) throws IOException
+	{
+		PrintWriter[] regionFiles = new PrintWriter[regionCount];
+		try (PrintWriter overlay = new PrintWriter(new File(directory, "overlay.txt"));
+				PrintWriter towns = new PrintWriter(new File(directory, "towns.txt")))
+		{
+			for (int r = 0; r < regionCount; r++)
+			{
+				regionFiles[r] = new PrintWriter(new File(directory, "region-" + r + ".txt"));
+			}
+			for (int id = 0; id < regions.length; id++)
+			{
+				if (regions[id] < 0)
+					continue;
+
+				towns.println(graph.getTown(id).getName() + ";" + regions[id]);
+				// a town whose roads all leave its region has no road line in its own file
+				regionFiles[regions[id]].println(graph.getTown(id).getName());
+				for (Road road : graph.getRoads(id))
+				{
+					// each road is in two rows, written from its source only
+					if (road.getSource().getId() != id)
+						continue;
+
+					int other = regions[road.getDestination().getId()];
+					PrintWriter out = other == regions[id] ? regionFiles[other] : overlay;
+					String costs = road.getWeight() + (road.hasDefaultTime() && road.getToll() == 0 ? "" : "," + road.getTime() + "," + road.getToll());
+					out.println(road.getName() + "," + costs + ";" + road.getSource().getName() + ";" + road.getDestination().getName() + (road.isOneWay() ? ";oneway" : ""));
+				}
+			}
+		}
+		finally
+		{
+			for (PrintWriter out : regionFiles)
+			{
+				if (out != null)
+					out.close();
+			}
+		}
+	}
+
+	/**
+	 * splits a set of towns into count regions numbered from first
+	 * @param graph - snapshot
+	 * @param regions - region of each town, updated in place
+	 * @param towns - ids of the towns to split, all in region first
+	 * @param first - number of the first region
+	 * @param count - number of regions to make
+	 */
+	private static void bisect(GraphSnapshot graph, int[] regions, int[] towns, int first, int count)
+	{
+		if (count == 1 || towns.length == 0)
+			return;
+
+		int leftCount = count / 2;
+		int leftSize = (int) ((long) towns.length * leftCount / count);
+		int right = first + leftCount;
+
+		// order the towns along the axis between two towns far apart in the set
+		Integer[] order = axisOrder(graph, towns);
+		for (int i = leftSize; i < order.length; i++)
+		{
+			regions[order[i]] = right;
+		}
+		refine(graph, regions, towns, first, right, leftSize, towns.length - leftSize);
+
+		List<Integer> left = new ArrayList<>();
+		List<Integer> rest = new ArrayList<>();
+		for (int id : towns)
+		{
+			(regions[id] == first ? left : rest).add(id);
+		}
+		bisect(graph, regions, toArray(left), first, leftCount);
+		bisect(graph, regions, toArray(rest), right, count - leftCount);
+	}
+
+	/**
+	 * sorts towns by the difference of their road distances to two towns far
+	 * apart in the set, towns reached from neither end go last in id order
+	 */
+	private static Integer[] axisOrder(GraphSnapshot graph, int[] towns)
+	{
+		long[] keys = new long[graph.getIdCapacity()];
+		try (RouteSearch search = new RouteSearch(graph))
+		{
+			int near = farthest(search, towns, towns[0]);
+			// the search is now from near
+			int far = farthest(search, towns, near);
+			int[] toNear = new int[towns.length];
+			for (int i = 0; i < towns.length; i++)
+			{
+				toNear[i] = search.getDistance(towns[i]);
+			}
+			search.run(far, -1);
+			for (int i = 0; i < towns.length; i++)
+			{
+				int toFar = search.getDistance(towns[i]);
+				if (toNear[i] == RouteSearch.UNREACHABLE || toFar == RouteSearch.UNREACHABLE)
+					keys[towns[i]] = Long.MAX_VALUE;
+				else
+					keys[towns[i]] = (long) toNear[i] - toFar;
+			}
+		}
+
+		Integer[] order = new Integer[towns.length];
+		for (int i = 0; i < towns.length; i++)
+		{
+			order[i] = towns[i];
+		}
+		Arrays.sort(order, (a, b) -> keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Integer.compare(a, b));
+		return order;
+	}
+
+	// searches from a town and returns the town of the set farthest from it, leaving the search's distances in place
+	private static int farthest(RouteSearch search, int[] towns, int start)
+	{
+		search.run(start, -1);
+		int farthest = start;
+		for (int id : towns)
+		{
+			int distance = search.getDistance(id);
+			if (distance != RouteSearch.UNREACHABLE && distance > search.getDistance(farthest))
+				farthest = id;
+		}
+		return farthest;
+	}
+
+	/**
+	 * moves towns between two regions while that removes more crossing roads than
+	 * it adds and both regions stay near their target sizes
+	 */
+	private static void refine(GraphSnapshot graph, int[] regions, int[] towns, int left, int right, int leftTarget, int rightTarget)
+	{
+		int leftSize = leftTarget;
+		int rightSize = rightTarget;
+		int leftLimit = leftTarget + (int) Math.ceil(leftTarget * IMBALANCE);
+		int rightLimit = rightTarget + (int) Math.ceil(rightTarget * IMBALANCE);
+
+		for (int pass = 0; pass < REFINE_PASSES; pass++)
+		{
+			boolean moved = false;
+			for (int id : towns)
+			{
+				int own = regions[id];
+				int other = own == left ? right : left;
+				int gain = 0;
+				for (Road road : graph.getRoads(id))
+				{
+					int region = regions[road.getOppositeId(id)];
+					if (region == other)
+						gain++;
+					else if (region == own)
+						gain--;
+				}
+				if (gain <= 0)
+					continue;
+				if (other == left ? leftSize + 1 > leftLimit : rightSize + 1 > rightLimit)
+					continue;
+
+				regions[id] = other;
+				leftSize += other == left ? 1 : -1;
+				rightSize += other == right ? 1 : -1;
+				moved = true;
+			}
+			if (!moved)
+				break;
+		}
+	}
+
+	private static int[] toArray(List<Integer> ids)
+	{
+		int[] array = new int[ids.size()];
+		for (int i = 0; i < array.length; i++)
+		{
+			array[i] = ids.get(i);
+		}
+		return array;
+	}
+}
@@ -0,0 +1,667 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Immutable, versioned view of a Graph
+ * Towns and their incident roads are indexed by town id and stored in fixed
+ * size chunks. A new version copies the chunk index, the chunks it changes and
+ * the rows of the towns it changes, everything else is shared with the version
+ * it was built from. Readers may use a snapshot from any thread without locking.
+ *
+ * Two towns may be joined by several roads with different names, and a road
+ * may be one-way. Besides the row of every road touching a town, each town has
+ * an outgoing row with the cheapest road it can be left by to each neighbour,
+ * which searches relax and getRoad reads, and an incoming row with the cheapest
+ * road arriving from each neighbour, which searches run backwards relax. Both
+ * share the full row when the town has no parallel or one-way roads.
+ * @author - Faith Fru Nchang
+ */
+public class GraphSnapshot
+{
+	private static final int CHUNK_BITS = 8;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final Road[] NO_ROADS = new Road[0];
+	// rows up to this long are checked for parallel roads without a map
+	private static final int SHORT_ROW = 16;
+	private static final GraphSnapshot EMPTY = new GraphSnapshot(0, new Town[0][], new Road[0][][], new Road[0][][], new Road[0][][], 0, 0, 0, 0, 0, 0, 0);
+
+	private final long version;
+	private final Town[][] towns;
+	private final Road[][][] roads;
+	// cheapest road to and from each neighbour, the same array as in roads for towns without parallel or one-way roads
+	private final Road[][][] outgoing;
+	private final Road[][][] incoming;
+	private final int vertexCount;
+	private final int edgeCount;
+	private final int minWeight;
+	private final int maxWeight;
+	private final int maxTime;
+	private final int maxToll;
+	private final int oneWayCount;
+
+	private GraphSnapshot(long version, Town[][] towns, Road[][][] roads, Road[][][] outgoing, Road[][][] incoming, int vertexCount, int edgeCount, int minWeight, int maxWeight, int maxTime, int maxToll, int oneWayCount)
+	{
+		this.version = version;
+		this.towns = towns;
+		this.roads = roads;
+		this.outgoing = outgoing;
+		this.incoming = incoming;
+		this.vertexCount = vertexCount;
+		this.edgeCount = edgeCount;
+		this.minWeight = minWeight;
+		this.maxWeight = maxWeight;
+		this.maxTime = maxTime;
+		this.maxToll = maxToll;
+		this.oneWayCount = oneWayCount;
+	}
+
+	/**
+	 * gets the snapshot of a graph with no towns
+	 * @return empty snapshot, version 0
+	 */
+	public static GraphSnapshot empty()
+	{
+		return EMPTY;
+	}
+
+	/**
+	 * gets the version, each published change increases it
+	 * @return version
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * gets the number of towns
+	 * @return vertexCount
+	 */
+	public int getVertexCount()
+	{
+		return vertexCount;
+	}
+
+	/**
+	 * gets the number of roads
+	 * @return edgeCount
+	 */
+	public int getEdgeCount()
+	{
+		return edgeCount;
+	}
+
+	/**
+	 * gets a lower bound on the road weights, it is not raised when the lightest road is removed
+	 * @return minWeight, 0 for a graph that never had roads
+	 */
+	public int getMinWeight()
+	{
+		return minWeight;
+	}
+
+	/**
+	 * gets an upper bound on the road weights, it is not lowered when the heaviest road is removed
+	 * @return maxWeight, 0 for a graph that never had roads
+	 */
+	public int getMaxWeight()
+	{
+		return maxWeight;
+	}
+
+	/**
+	 * gets an upper bound on the road travel times, it is not lowered when the slowest road is removed
+	 * @return maxTime in seconds, 0 for a graph that never had roads
+	 */
+	public int getMaxTime()
+	{
+		return maxTime;
+	}
+
+	/**
+	 * gets an upper bound on the road tolls, it is not lowered when the dearest road is removed
+	 * @return maxToll in cents, 0 for a graph that never had roads
+	 */
+	public int getMaxToll()
+	{
+		return maxToll;
+	}
+
+	/**
+	 * checks if any road is one-way, without them every distance is the same both ways
+	 * @return true if the snapshot has a one-way road
+	 */
+	public boolean hasOneWayRoads()
+	{
+		return oneWayCount > 0;
+	}
+
+	/**
+	 * gets one past the largest town id the snapshot can hold, the size to use
+	 * for arrays indexed by town id
+	 * @return id capacity
+	 */
+	public int getIdCapacity()
+	{
+		return towns.length << CHUNK_BITS;
+	}
+
+	/**
+	 * gets the town with the given id
+	 * @param id - town id
+	 * @return the town, or null if no town with that id is in the graph
+	 */
+	public Town getTown(int id)
+	{
+		if (id < 0 || (id >> CHUNK_BITS) >= towns.length)
+			return null;
+
+		Town[] chunk = towns[id >> CHUNK_BITS];
+		return chunk == null ? null : chunk[id & CHUNK_MASK];
+	}
+
+	/**
+	 * gets the roads touching the town with the given id, the array is shared
+	 * and must not be modified
+	 * @param id - town id
+	 * @return incident roads, empty if the town is not in the graph
+	 */
+	public Road[] getRoads(int id)
+	{
+		if (id < 0 || (id >> CHUNK_BITS) >= roads.length)
+			return NO_ROADS;
+
+		Road[][] chunk = roads[id >> CHUNK_BITS];
+		Road[] row = chunk == null ? null : chunk[id & CHUNK_MASK];
+		return row == null ? NO_ROADS : row;
+	}
+
+	/**
+	 * gets the towns joined to a town by a road of this version, in either direction
+	 * @param id - town id
+	 * @return each neighbouring town once, empty if the town is not in the graph
+	 */
+	public ArrayList<Town> getAdjacentTowns(int id)
+	{
+		ArrayList<Town> adjacent = new ArrayList<>();
+		// parallel roads lead to the same town, which is listed once
+		HashSet<Integer> listed = new HashSet<>();
+		for (Road road : getRoads(id))
+		{
+			int other = road.getOppositeId(id);
+			if (listed.add(other))
+				adjacent.add(getTown(other));
+		}
+		return adjacent;
+	}
+
+	/**
+	 * gets the cheapest road leading from a town to each neighbour it can be left
+	 * for, the array is shared and must not be modified
+	 * @param id - town id
+	 * @return one road per neighbouring town, empty if the town is not in the graph
+	 */
+	public Road[] getOutgoingRoads(int id)
+	{
+		return row(outgoing, id);
+	}
+
+	/**
+	 * gets the cheapest road arriving at a town from each neighbour it can be
+	 * reached from, the array is shared and must not be modified
+	 * @param id - town id
+	 * @return one road per neighbouring town, empty if the town is not in the graph
+	 */
+	public Road[] getIncomingRoads(int id)
+	{
+		return row(incoming, id);
+	}
+
+	private static Road[] row(Road[][][] rows, int id)
+	{
+		if (id < 0 || (id >> CHUNK_BITS) >= rows.length)
+			return NO_ROADS;
+
+		Road[][] chunk = rows[id >> CHUNK_BITS];
+		Road[] row = chunk == null ? null : chunk[id & CHUNK_MASK];
+		return row == null ? NO_ROADS : row;
+	}
+
+	/**
+	 * gets the cheapest road leading from one town to another
+	 * @param sourceId - id of the town to leave
+	 * @param destinationId - id of the town to arrive at
+	 * @return the cheapest road from source to destination, or null if there is none
+	 */
+	public Road getRoad(int sourceId, int destinationId)
+	{
+		for (Road road : getOutgoingRoads(sourceId))
+		{
+			if (road.getOppositeId(sourceId) == destinationId)
+				return road;
+		}
+		return null;
+	}
+
+	/**
+	 * gets the road with a given name between two towns, preferring one that
+	 * leads from the first town when one-way roads of that name go both ways
+	 * @param sourceId - id of one town
+	 * @param destinationId - id of the other town
+	 * @param name - road name
+	 * @return the road, or null if the towns have no road with that name
+	 */
+	public Road getRoad(int sourceId, int destinationId, String name)
+	{
+		Road[] row = getRoads(sourceId);
+		return named(row, row.length, sourceId, destinationId, name);
+	}
+
+	// finds a road between two towns, with the given name unless it is null, preferring one leading from the source
+	private static Road named(Road[] roads, int size, int sourceId, int destinationId, String name)
+	{
+		Road against = null;
+		for (int i = 0; i < size; i++)
+		{
+			Road road = roads[i];
+			if (road.getOppositeId(sourceId) != destinationId || (name != null && !name.equals(road.getName())))
+				continue;
+			if (road.leaves(sourceId))
+				return road;
+			if (against == null)
+				against = road;
+		}
+		return against;
+	}
+
+	/**
+	 * Builds the next version of a snapshot. Chunks and rows are copied the
+	 * first time the builder changes them, so a small change to a large graph
+	 * costs the size of the chunk index plus the rows it touches. A builder
+	 * makes one version, it must not be used after build.
+	 */
+	public static class Builder
+	{
+		private final GraphSnapshot base;
+		private Town[][] towns;
+		private Road[][][] roads;
+		private Road[][][] outgoing;
+		private Road[][][] incoming;
+		private boolean[] copiedChunks;
+		// rows changed by this builder, with room to grow
+		private final Map<Integer, Row> rows;
+		private int vertexCount;
+		private int edgeCount;
+		private int minWeight;
+		private int maxWeight;
+		private int maxTime;
+		private int maxToll;
+		private int oneWayCount;
+
+		/**
+		 * starts a new version from an existing snapshot
+		 * @param base - snapshot to build on
+		 */
+		public Builder(GraphSnapshot base)
+		{
+			this.base = base;
+			towns = base.towns.clone();
+			roads = base.roads.clone();
+			outgoing = base.outgoing.clone();
+			incoming = base.incoming.clone();
+			copiedChunks = new boolean[towns.length];
+			rows = new HashMap<>();
+			vertexCount = base.vertexCount;
+			edgeCount = base.edgeCount;
+			minWeight = base.minWeight;
+			maxWeight = base.maxWeight;
+			maxTime = base.maxTime;
+			maxToll = base.maxToll;
+			oneWayCount = base.oneWayCount;
+		}
+
+		/**
+		 * gets a town added so far
+		 * @param id - town id
+		 * @return the town, or null
+		 */
+		public Town getTown(int id)
+		{
+			if (id < 0 || (id >> CHUNK_BITS) >= towns.length || towns[id >> CHUNK_BITS] == null)
+				return null;
+
+			return towns[id >> CHUNK_BITS][id & CHUNK_MASK];
+		}
+
+		/**
+		 * adds a town with no roads
+		 * @param town - town to add
+		 * @return this builder
+		 */
+		public Builder addTown(Town town)
+		{
+			int id = town.getId();
+			if (getTown(id) == null)
+			{
+				ownChunk(id);
+				towns[id >> CHUNK_BITS][id & CHUNK_MASK] = town;
+				roads[id >> CHUNK_BITS][id & CHUNK_MASK] = NO_ROADS;
+				outgoing[id >> CHUNK_BITS][id & CHUNK_MASK] = NO_ROADS;
+				incoming[id >> CHUNK_BITS][id & CHUNK_MASK] = NO_ROADS;
+				vertexCount++;
+			}
+			return this;
+		}
+
+		/**
+		 * removes a town and every road touching it
+		 * @param town - town to remove
+		 * @return this builder
+		 */
+		public Builder removeTown(Town town)
+		{
+			int id = town.getId();
+			if (getTown(id) == null)
+				return this;
+
+			Row row = row(id);
+			while (row.size > 0)
+			{
+				removeRoad(row.roads[row.size - 1]);
+			}
+			rows.remove(id);
+			ownChunk(id);
+			towns[id >> CHUNK_BITS][id & CHUNK_MASK] = null;
+			roads[id >> CHUNK_BITS][id & CHUNK_MASK] = null;
+			outgoing[id >> CHUNK_BITS][id & CHUNK_MASK] = null;
+			incoming[id >> CHUNK_BITS][id & CHUNK_MASK] = null;
+			vertexCount--;
+			return this;
+		}
+
+		/**
+		 * adds a road to the rows of both of its towns
+		 * @param road - road whose towns are already in the builder
+		 * @return this builder
+		 */
+		public Builder addRoad(Road road)
+		{
+			int source = road.getSource().getId();
+			int destination = road.getDestination().getId();
+			row(source).add(road);
+			if (destination != source)
+				row(destination).add(road);
+			edgeCount++;
+			if (road.isOneWay())
+				oneWayCount++;
+			bound(road);
+			return this;
+		}
+
+		/**
+		 * removes a road from the rows of both of its towns
+		 * @param road - road to remove, compared by identity
+		 * @return this builder
+		 */
+		public Builder removeRoad(Road road)
+		{
+			int source = road.getSource().getId();
+			int destination = road.getDestination().getId();
+			if (getTown(source) != null && row(source).remove(road))
+			{
+				if (destination != source && getTown(destination) != null)
+					row(destination).remove(road);
+				edgeCount--;
+				if (road.isOneWay())
+					oneWayCount--;
+			}
+			return this;
+		}
+
+		/**
+		 * finds a road with a given name between two towns
+		 * @param sourceId - id of one town
+		 * @param destinationId - id of the other town
+		 * @param name - road name
+		 * @return the road, or null if the towns have no road with that name
+		 */
+		public Road getRoad(int sourceId, int destinationId, String name)
+		{
+			return find(sourceId, destinationId, name);
+		}
+
+		/**
+		 * checks if two towns have any road between them
+		 * @param sourceId - id of one town
+		 * @param destinationId - id of the other town
+		 * @return true if a road connects them
+		 */
+		public boolean hasRoad(int sourceId, int destinationId)
+		{
+			return find(sourceId, destinationId, null) != null;
+		}
+
+		/**
+		 * puts a road in the place of another between the same towns, leaving the
+		 * rows of every other town alone
+		 * @param old - road to replace, compared by identity
+		 * @param road - road with the same towns
+		 * @return this builder
+		 */
+		public Builder replaceRoad(Road old, Road road)
+		{
+			int source = old.getSource().getId();
+			int destination = old.getDestination().getId();
+			if (getTown(source) != null && row(source).replace(old, road))
+			{
+				if (destination != source)
+					row(destination).replace(old, road);
+				bound(road);
+			}
+			return this;
+		}
+
+		/**
+		 * finishes the new version, sharing every chunk and row that was not changed
+		 * @return the snapshot, one version after the base
+		 */
+		public GraphSnapshot build()
+		{
+			for (Map.Entry<Integer, Row> entry : rows.entrySet())
+			{
+				int id = entry.getKey();
+				ownChunk(id);
+				Road[] row = entry.getValue().toArray();
+				roads[id >> CHUNK_BITS][id & CHUNK_MASK] = row;
+				outgoing[id >> CHUNK_BITS][id & CHUNK_MASK] = cheapestOf(id, row, true);
+				incoming[id >> CHUNK_BITS][id & CHUNK_MASK] = cheapestOf(id, row, false);
+			}
+			return new GraphSnapshot(base.version + 1, towns, roads, outgoing, incoming, vertexCount, edgeCount, minWeight, maxWeight, maxTime, maxToll, oneWayCount);
+		}
+
+		/**
+		 * keeps the cheapest road to or from each neighbour of a town
+		 * @param id - town id
+		 * @param row - every road touching the town
+		 * @param leaving - true to keep roads that leave the town, false for roads that enter it
+		 * @return the row itself if every road can be taken that way and no two lead to the same town
+		 */
+		private static Road[] cheapestOf(int id, Road[] row, boolean leaving)
+		{
+			if (row.length == 0 || (row.length == 1 && !row[0].isOneWay()))
+				return row;
+
+			// position in the result of the road kept for each neighbour, only mapped for long rows
+			Map<Integer, Integer> kept = row.length > SHORT_ROW ? new HashMap<>() : null;
+			Road[] result = new Road[row.length];
+			int size = 0;
+			for (Road road : row)
+			{
+				if (leaving ? !road.leaves(id) : !road.enters(id))
+					continue;
+
+				int neighbour = road.getOppositeId(id);
+				int at = -1;
+				if (kept != null)
+				{
+					Integer found = kept.putIfAbsent(neighbour, size);
+					at = found == null ? -1 : found;
+				}
+				else
+				{
+					for (int i = 0; i < size && at < 0; i++)
+					{
+						if (result[i].getOppositeId(id) == neighbour)
+							at = i;
+					}
+				}
+				if (at < 0)
+					result[size++] = road;
+				else if (road.getWeight() < result[at].getWeight())
+					result[at] = road;
+			}
+			if (size == row.length)
+				return row;
+
+			Road[] trimmed = new Road[size];
+			System.arraycopy(result, 0, trimmed, 0, size);
+			return trimmed;
+		}
+
+		// widens the bounds on the costs of the roads to cover a new one
+		private void bound(Road road)
+		{
+			minWeight = Math.min(minWeight, road.getWeight());
+			maxWeight = Math.max(maxWeight, road.getWeight());
+			maxTime = Math.max(maxTime, road.getTime());
+			maxToll = Math.max(maxToll, road.getToll());
+		}
+
+		// finds a road between two towns without copying the row
+		private Road find(int sourceId, int destinationId, String name)
+		{
+			if (getTown(sourceId) == null)
+				return null;
+
+			Row row = rows.get(sourceId);
+			if (row != null)
+				return named(row.roads, row.size, sourceId, destinationId, name);
+
+			Road[] current = roads[sourceId >> CHUNK_BITS][sourceId & CHUNK_MASK];
+			return named(current, current.length, sourceId, destinationId, name);
+		}
+
+		private Row row(int id)
+		{
+			Row row = rows.get(id);
+			if (row == null)
+			{
+				Road[][] chunk = (id >> CHUNK_BITS) < roads.length ? roads[id >> CHUNK_BITS] : null;
+				Road[] current = chunk == null || chunk[id & CHUNK_MASK] == null ? NO_ROADS : chunk[id & CHUNK_MASK];
+				row = new Row(current);
+				rows.put(id, row);
+			}
+			return row;
+		}
+
+		// makes the chunk holding the id private to this builder
+		private void ownChunk(int id)
+		{
+			int index = id >> CHUNK_BITS;
+			if (index >= towns.length)
+			{
+				int grown = Math.max(index + 1, towns.length * 2);
+				Town[][] newTowns = new Town[grown][];
+				Road[][][] newRoads = new Road[grown][][];
+				Road[][][] newOutgoing = new Road[grown][][];
+				Road[][][] newIncoming = new Road[grown][][];
+				boolean[] newCopied = new boolean[grown];
+				System.arraycopy(towns, 0, newTowns, 0, towns.length);
+				System.arraycopy(roads, 0, newRoads, 0, roads.length);
+				System.arraycopy(outgoing, 0, newOutgoing, 0, outgoing.length);
+				System.arraycopy(incoming, 0, newIncoming, 0, incoming.length);
+				System.arraycopy(copiedChunks, 0, newCopied, 0, copiedChunks.length);
+				towns = newTowns;
+				roads = newRoads;
+				outgoing = newOutgoing;
+				incoming = newIncoming;
+				copiedChunks = newCopied;
+			}
+			if (!copiedChunks[index])
+			{
+				towns[index] = towns[index] == null ? new Town[CHUNK_SIZE] : towns[index].clone();
+				roads[index] = roads[index] == null ? new Road[CHUNK_SIZE][] : roads[index].clone();
+				outgoing[index] = outgoing[index] == null ? new Road[CHUNK_SIZE][] : outgoing[index].clone();
+				incoming[index] = incoming[index] == null ? new Road[CHUNK_SIZE][] : incoming[index].clone();
+				copiedChunks[index] = true;
+			}
+		}
+	}
+
+	/**
+	 * Row of roads being changed by a builder, copied from the shared row on first use
+	 */
+	private static class Row
+	{
+		private Road[] roads;
+		private int size;
+
+		private Row(Road[] shared)
+		{
+			roads = new Road[Math.max(4, shared.length * 2)];
+			System.arraycopy(shared, 0, roads, 0, shared.length);
+			size = shared.length;
+		}
+
+		private void add(Road road)
+		{
+			if (size == roads.length)
+			{
+				Road[] grown = new Road[size * 2];
+				System.arraycopy(roads, 0, grown, 0, size);
+				roads = grown;
+			}
+			roads[size++] = road;
+		}
+
+		private boolean remove(Road road)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (roads[i] == road)
+				{
+					roads[i] = roads[--size];
+					roads[size] = null;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private boolean replace(Road old, Road road)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (roads[i] == old)
+				{
+					roads[i] = road;
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private Road[] toArray()
+		{
+			if (size == 0)
+				return NO_ROADS;
+
+			Road[] row = new Road[size];
+			System.arraycopy(roads, 0, row, 0, size);
+			return row;
+		}
+	}
+}
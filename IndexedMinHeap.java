@@ -0,0 +1,137 @@
+/**
+ * Binary min heap of town ids ordered by a key array owned by the caller
+ * Each id is in the heap at most once and its key can be lowered in place,
+ * so a search never adds duplicate entries. All storage is plain int arrays
+ * that are reused from one search to the next.
+ * @author - Faith Fru Nchang
+ */
+public class IndexedMinHeap implements VertexQueue
+{
+	private int[] heap;
+	private int[] positions;
+	private int[] keys;
+	private int size;
+
+	/**
+	 * creates a heap for ids below the length of the key array
+	 * @param keys - key of each id, read whenever the heap compares two ids
+	 */
+	public IndexedMinHeap(int[] keys)
+	{
+		this.keys = keys;
+		heap = new int[keys.length];
+		positions = new int[keys.length];
+		size = 0;
+	}
+
+	/**
+	 * empties the heap and switches to a new key array, growing the heap to match
+	 * @param keys - key of each id
+	 */
+	@Override
+	public void reset(int[] keys)
+	{
+		if (keys.length > heap.length)
+		{
+			heap = new int[keys.length];
+			positions = new int[keys.length];
+		}
+		this.keys = keys;
+		size = 0;
+	}
+
+	/**
+	 * marks an id as never inserted, must be called before the first insert of the
+	 * id after a reset since positions are not cleared between searches
+	 * @param id - town id
+	 */
+	@Override
+	public void forget(int id)
+	{
+		positions[id] = -1;
+	}
+
+	/**
+	 * checks if the heap is empty
+	 * @return true if there are no ids in the heap
+	 */
+	@Override
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * adds an id, or moves it up if it is already in the heap and its key was lowered
+	 * @param id - town id whose key was set or lowered
+	 */
+	@Override
+	public void insertOrDecrease(int id)
+	{
+		int position = positions[id];
+		if (position < 0)
+		{
+			position = size++;
+			heap[position] = id;
+			positions[id] = position;
+		}
+		siftUp(position);
+	}
+
+	/**
+	 * removes the id with the smallest key
+	 * @return the id
+	 */
+	@Override
+	public int pollMin()
+	{
+		int min = heap[0];
+		positions[min] = -1;
+		size--;
+		if (size > 0)
+		{
+			heap[0] = heap[size];
+			positions[heap[0]] = 0;
+			siftDown(0);
+		}
+		return min;
+	}
+
+	private void siftUp(int position)
+	{
+		int id = heap[position];
+		int key = keys[id];
+		while (position > 0)
+		{
+			int parent = (position - 1) >>> 1;
+			if (keys[heap[parent]] <= key)
+				break;
+			heap[position] = heap[parent];
+			positions[heap[position]] = position;
+			position = parent;
+		}
+		heap[position] = id;
+		positions[id] = position;
+	}
+
+	private void siftDown(int position)
+	{
+		int id = heap[position];
+		int key = keys[id];
+		while (true)
+		{
+			int child = 2 * position + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+				child++;
+			if (key <= keys[heap[child]])
+				break;
+			heap[position] = heap[child];
+			positions[heap[position]] = position;
+			position = child;
+		}
+		heap[position] = id;
+		positions[id] = position;
+	}
+}
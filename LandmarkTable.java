@@ -0,0 +1,407 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Distances from a few landmark towns to every town, for ALT searches
+ * By the triangle inequality the distance between two towns is at least the
+ * difference of their distances to any landmark, so the largest difference over
+ * the landmarks is a lower bound that guides a point to point search toward its
+ * target without coordinates. Landmarks are picked farthest first: each new one
+ * is the town farthest from the landmarks already picked, which spreads them to
+ * the edges of the graph where the bounds are tightest.
+ *
+ * With one-way roads the distance from a town is not the distance to it, so the
+ * table also holds the distances from every town to each landmark, found by
+ * searching backwards, and a bound only uses differences that hold one way.
+ *
+ * Distances are in the cost of one CostProfile, so a table only guides searches
+ * with that profile and a graph keeps one table per profile.
+ *
+ * A table belongs to one GraphSnapshot version, since any change to the roads
+ * can make its bounds too large. It can be saved with the road file and loaded
+ * again as long as the roads have not changed.
+ * @author - Faith Fru Nchang
+ */
+public class LandmarkTable
+{
+	private static final int MAGIC = 0x414c5431;
+
+	private final long version;
+	private final CostProfile profile;
+	private final int[] landmarks;
+	// distances[l][id] is the distance from landmark l to town id
+	private final int[][] distances;
+	// reverseDistances[l][id] is the distance from town id to landmark l, null without one-way roads
+	private final int[][] reverseDistances;
+
+	private LandmarkTable(long version, CostProfile profile, int[] landmarks, int[][] distances, int[][] reverseDistances)
+	{
+		this.version = version;
+		this.profile = profile;
+		this.landmarks = landmarks;
+		this.distances = distances;
+		this.reverseDistances = reverseDistances;
+	}
+
+	/**
+	 * picks landmarks farthest first and computes their distance tables, one full
+	 * search each, two with one-way roads
+	 * @param graph - snapshot to compute the table for
+	 * @param count - number of landmarks, fewer are picked if the graph has fewer towns
+	 * @return table for the snapshot
+	 * @throws java.util.concurrent.CancellationException if the thread is interrupted
+	 */
+	public static LandmarkTable compute(GraphSnapshot graph, int count)
+	{
+		return compute(graph, count, CostProfile.SHORTEST);
+	}
+
+	/**
+	 * picks landmarks and computes their tables in the cost of a profile
+	 * @param graph - snapshot to compute the table for
+	 * @param count - number of landmarks, fewer are picked if the graph has fewer towns
+	 * @param profile - cost of each road
+	 * @return table for the snapshot and profile
+	 * @throws java.util.concurrent.CancellationException if the thread is interrupted
+	 */
+	public static LandmarkTable compute(GraphSnapshot graph, int count, CostProfile profile)
+	{
+		int capacity = graph.getIdCapacity();
+		int first = -1;
+		for (int id = 0; id < capacity && first < 0; id++)
+		{
+			if (graph.getTown(id) != null)
+				first = id;
+		}
+		count = Math.min(count, graph.getVertexCount());
+		int[] landmarks = new int[count];
+		int[][] distances = new int[count][];
+		// distance from each town to the nearest landmark picked so far
+		int[] nearest = new int[capacity];
+		Arrays.fill(nearest, RouteSearch.UNREACHABLE);
+
+		try (RouteSearch search = new RouteSearch(graph, RouteSearch.QueueType.AUTO, profile))
+		{
+			// the first landmark is the town farthest from an arbitrary start
+			int next = farthest(graph, search, first, nearest, null);
+			for (int l = 0; l < count; l++)
+			{
+				landmarks[l] = next;
+				distances[l] = new int[capacity];
+				next = farthest(graph, search, landmarks[l], nearest, distances[l]);
+			}
+		}
+		return new LandmarkTable(graph.getVersion(), profile, landmarks, distances, graph.hasOneWayRoads() ? reverse(graph, landmarks, profile) : null);
+	}
+
+	// distances from every town to each landmark
+	private static int[][] reverse(GraphSnapshot graph, int[] landmarks, CostProfile profile)
+	{
+		int[][] rows = new int[landmarks.length][graph.getIdCapacity()];
+		try (RouteSearch search = new RouteSearch(graph, RouteSearch.QueueType.AUTO, profile))
+		{
+			search.setReverse(true);
+			for (int l = 0; l < landmarks.length; l++)
+			{
+				search.run(landmarks[l], -1);
+				for (int id = 0; id < rows[l].length; id++)
+				{
+					rows[l][id] = search.getDistance(id);
+				}
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * searches from one town, records the distances and finds the town farthest
+	 * from every landmark, preferring towns no landmark reaches at all
+	 */
+	private static int farthest(GraphSnapshot graph, RouteSearch search, int sourceId, int[] nearest, int[] row)
+	{
+		search.run(sourceId, -1);
+		int farthest = sourceId;
+		long farthestDistance = -1;
+		for (int id = 0; id < nearest.length; id++)
+		{
+			if (graph.getTown(id) == null)
+				continue;
+
+			int distance = search.getDistance(id);
+			if (row != null)
+			{
+				row[id] = distance;
+				nearest[id] = Math.min(nearest[id], distance);
+			}
+			// an unreachable town is in another part of the graph, so it gets a landmark first
+			long score = row == null ? distance : nearest[id];
+			if (score == RouteSearch.UNREACHABLE)
+				score = Long.MAX_VALUE;
+			if (score > farthestDistance)
+			{
+				farthest = id;
+				farthestDistance = score;
+			}
+		}
+		return farthest;
+	}
+
+	/**
+	 * gets the snapshot version the table was computed for
+	 * @return version
+	 */
+	public long getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * gets the profile the distances are in
+	 * @return profile
+	 */
+	public CostProfile getProfile()
+	{
+		return profile;
+	}
+
+	/**
+	 * checks if the bounds of the table hold for a snapshot
+	 * @param graph - snapshot to check
+	 * @return true if the table was computed or loaded for that version
+	 */
+	public boolean isValidFor(GraphSnapshot graph)
+	{
+		return graph.getVersion() == version;
+	}
+
+	/**
+	 * gets the number of landmarks
+	 * @return landmark count
+	 */
+	public int size()
+	{
+		return landmarks.length;
+	}
+
+	/**
+	 * gets the town id of a landmark
+	 * @param index - landmark index
+	 * @return town id
+	 */
+	public int getLandmark(int index)
+	{
+		return landmarks[index];
+	}
+
+	/**
+	 * gets a lower bound on the distance between two towns
+	 * @param id - town id
+	 * @param targetId - id of the other town
+	 * @return lower bound, or RouteSearch.UNREACHABLE if a landmark proves the towns are not connected
+	 */
+	public int lowerBound(int id, int targetId)
+	{
+		if (reverseDistances != null)
+			return directedBound(id, targetId);
+
+		int bound = 0;
+		for (int l = 0; l < distances.length; l++)
+		{
+			int[] row = distances[l];
+			int from = row[id];
+			int to = row[targetId];
+			if (from == RouteSearch.UNREACHABLE || to == RouteSearch.UNREACHABLE)
+			{
+				if (from != to)
+					return RouteSearch.UNREACHABLE;
+				continue;
+			}
+			bound = Math.max(bound, Math.abs(from - to));
+		}
+		return bound;
+	}
+
+	/**
+	 * bounds the distance from one town to another when roads may be one-way,
+	 * from d(l, target) - d(l, id) and d(id, l) - d(target, l) for each landmark l
+	 */
+	private int directedBound(int id, int targetId)
+	{
+		int bound = 0;
+		for (int l = 0; l < distances.length; l++)
+		{
+			int fromLandmark = distances[l][id];
+			int targetFromLandmark = distances[l][targetId];
+			if (fromLandmark != RouteSearch.UNREACHABLE)
+			{
+				// the landmark reaches the town but not the target, so the town cannot reach it either
+				if (targetFromLandmark == RouteSearch.UNREACHABLE)
+					return RouteSearch.UNREACHABLE;
+				bound = Math.max(bound, targetFromLandmark - fromLandmark);
+			}
+
+			int toLandmark = reverseDistances[l][id];
+			int targetToLandmark = reverseDistances[l][targetId];
+			if (targetToLandmark != RouteSearch.UNREACHABLE)
+			{
+				// the target reaches the landmark but the town does not, so the town cannot reach the target
+				if (toLandmark == RouteSearch.UNREACHABLE)
+					return RouteSearch.UNREACHABLE;
+				bound = Math.max(bound, toLandmark - targetToLandmark);
+			}
+		}
+		return bound;
+	}
+
+	/**
+	 * writes the table, keyed by town name so it can be loaded into a graph
+	 * read again from the same road file
+	 * @param file - file to write
+	 * @param graph - snapshot the table was computed for
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(File file, GraphSnapshot graph) throws IOException
+	{
+		if (!isValidFor(graph))
+			throw new IllegalArgumentException("landmark table is for version " + version + ", not " + graph.getVersion());
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			out.writeInt(MAGIC);
+			out.writeUTF(profile.getName());
+			out.writeInt(profile.getDistanceFactor());
+			out.writeInt(profile.getTimeFactor());
+			out.writeInt(profile.getTollFactor());
+			out.writeBoolean(profile.avoidsTolls());
+			out.writeLong(fingerprint(graph));
+			out.writeInt(landmarks.length);
+			for (int landmark : landmarks)
+			{
+				out.writeUTF(graph.getTown(landmark).getName());
+			}
+			out.writeInt(graph.getVertexCount());
+			for (int id = 0; id < graph.getIdCapacity(); id++)
+			{
+				Town town = graph.getTown(id);
+				if (town == null)
+					continue;
+
+				out.writeUTF(town.getName());
+				for (int[] row : distances)
+				{
+					out.writeInt(row[id]);
+				}
+				if (reverseDistances != null)
+				{
+					for (int[] row : reverseDistances)
+					{
+						out.writeInt(row[id]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * reads a table saved by save and attaches it to a snapshot
+	 * @param file - file to read
+	 * @param graph - snapshot to use the table with
+	 * @return the table, or null if it was saved for different roads
+	 * @throws IOException if the file cannot be read or is not a landmark table
+	 */
+	public static LandmarkTable load(File file, GraphSnapshot graph) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a landmark table");
+
+			CostProfile profile;
+			try
+			{
+				profile = new CostProfile(in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readBoolean());
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IOException(file + " has an invalid cost profile", e);
+			}
+			if (in.readLong() != fingerprint(graph))
+				return null;
+
+			int count = in.readInt();
+			int[] landmarks = new int[count];
+			for (int l = 0; l < count; l++)
+			{
+				landmarks[l] = Town.idOf(in.readUTF());
+			}
+			int[][] distances = new int[count][graph.getIdCapacity()];
+			// the fingerprint covers one-way roads, so the file has reverse tables exactly when the graph needs them
+			int[][] reverseDistances = graph.hasOneWayRoads() ? new int[count][graph.getIdCapacity()] : null;
+			int towns = in.readInt();
+			for (int t = 0; t < towns; t++)
+			{
+				int id = Town.idOf(in.readUTF());
+				if (graph.getTown(id) == null)
+					throw new IOException(file + " names a town missing from the graph");
+
+				for (int l = 0; l < count; l++)
+				{
+					distances[l][id] = in.readInt();
+				}
+				for (int l = 0; reverseDistances != null && l < count; l++)
+				{
+					reverseDistances[l][id] = in.readInt();
+				}
+			}
+			return new LandmarkTable(graph.getVersion(), profile, landmarks, distances, reverseDistances);
+		}
+	}
+
+	/**
+	 * hashes the towns and roads of a snapshot by name, independent of town ids
+	 * and of the order they were added in
+	 * @param graph - snapshot to hash
+	 * @return fingerprint
+	 */
+	public static long fingerprint(GraphSnapshot graph)
+	{
+		long hash = 31L * graph.getVertexCount() + graph.getEdgeCount();
+		for (int id = 0; id < graph.getIdCapacity(); id++)
+		{
+			Town town = graph.getTown(id);
+			if (town == null)
+				continue;
+
+			hash += mix(town.getName().hashCode());
+			for (Road road : graph.getRoads(id))
+			{
+				// each road is in two rows, count it from its source only
+				if (road.getSource().getId() != id)
+					continue;
+
+				int a = road.getSource().getName().hashCode();
+				int b = road.getDestination().getName().hashCode();
+				long key = ((long) (a + b) << 32) ^ (a ^ b) ^ (31L * road.getWeight() + String.valueOf(road.getName()).hashCode());
+				// a one-way road also hashes the town it leaves
+				key = ((key * 31 + (road.isOneWay() ? a : 0)) * 31 + road.getTime()) * 31 + road.getToll();
+				hash += mix(key);
+			}
+		}
+		return hash;
+	}
+
+	private static long mix(long value)
+	{
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		return value;
+	}
+}
@@ -0,0 +1,140 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Sorted index of names kept up to date as names are added and removed
+ * A name may be added more than once, it stays in the index until it has been
+ * removed as many times as it was added
+ * @author - Faith Fru Nchang
+ */
+public class NameIndex
+{
+	// name -> number of times the name was added
+	private final ConcurrentSkipListMap<String, Integer> names;
+
+	public NameIndex()
+	{
+		names = new ConcurrentSkipListMap<>();
+	}
+
+	/**
+	 * adds one occurrence of the name
+	 * @param name - name to add
+	 */
+	public void add(String name)
+	{
+		if (name != null)
+			names.merge(name, 1, Integer::sum);
+	}
+
+	/**
+	 * removes one occurrence of the name
+	 * @param name - name to remove
+	 */
+	public void remove(String name)
+	{
+		if (name != null)
+			names.computeIfPresent(name, (key, count) -> count == 1 ? null : count - 1);
+	}
+
+	/**
+	 * checks if the name is in the index
+	 * @param name - name to look for
+	 * @return true if the name was added and not yet removed
+	 */
+	public boolean contains(String name)
+	{
+		return name != null && names.containsKey(name);
+	}
+
+	/**
+	 * removes every name from the index
+	 */
+	public void clear()
+	{
+		names.clear();
+	}
+
+	/**
+	 * finds the first names in alphabetical order that start with the prefix,
+	 * the cost is one O(log n) seek plus one step per name returned
+	 * @param prefix - start of the name, an empty prefix matches every name
+	 * @param limit - most names to return
+	 * @return up to limit distinct names starting with prefix, in sorted order
+	 */
+	public ArrayList<String> complete(String prefix, int limit)
+	{
+		ArrayList<String> matches = new ArrayList<>();
+		if (prefix == null || limit <= 0)
+			return matches;
+
+		for (String name : names.tailMap(prefix, true).keySet())
+		{
+			if (!name.startsWith(prefix) || matches.size() == limit)
+				break;
+			matches.add(name);
+		}
+		return matches;
+	}
+
+	/**
+	 * lists every name in sorted order, a name added twice is listed twice
+	 * @return all names in sorted order
+	 */
+	public ArrayList<String> list()
+	{
+		ArrayList<String> all = new ArrayList<>();
+		for (Map.Entry<String, Integer> entry : names.entrySet())
+		{
+			for (int i = 0; i < entry.getValue(); i++)
+			{
+				all.add(entry.getKey());
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * gets the next page of names after a cursor, listing a name added twice
+	 * twice like list, the cost is one O(log n) seek plus one step per name returned
+	 * Every copy of a name is on the same page so the last name of a page is
+	 * enough to continue from: a page stops early rather than split a name's
+	 * copies, and a name with more copies than limit gets a page of its own.
+	 * Reading every page in turn gives the same names as list.
+	 * @param after - last name of the previous page, or null for the first page
+	 * @param limit - most names to return, unless one name alone has more copies
+	 * @return the copies of the names that sort after the cursor, in sorted order
+	 */
+	public ArrayList<String> page(String after, int limit)
+	{
+		ArrayList<String> page = new ArrayList<>();
+		if (limit <= 0)
+			return page;
+
+		Map<String, Integer> rest = after == null ? names : names.tailMap(after, false);
+		for (Map.Entry<String, Integer> entry : rest.entrySet())
+		{
+			int copies = entry.getValue();
+			if (!page.isEmpty() && page.size() + copies > limit)
+				break;
+			page.addAll(Collections.nCopies(copies, entry.getKey()));
+			if (page.size() >= limit)
+				break;
+		}
+		return page;
+	}
+
+	/**
+	 * streams every name in sorted order without copying the index,
+	 * a name added twice appears twice
+	 * @return sorted stream of names
+	 */
+	public Stream<String> stream()
+	{
+		return names.entrySet().stream()
+				.flatMap(entry -> Collections.nCopies(entry.getValue(), entry.getKey()).stream());
+	}
+}
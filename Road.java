@@ -1,13 +1,31 @@
 /**
  * represent the edges of a Graph of Towns
+ * A road can be travelled both ways unless it is one-way, when it only leads
+ * from its source to its destination. Besides its distance in miles a road has
+ * a travel time in seconds, which is the time at DEFAULT_SPEED unless it is
+ * given, and a toll in cents, so a CostProfile can weigh them against each other.
+ * A road may also follow one of the TravelTimeProfiles, which scales its time
+ * by the time of day it is entered.
  * @author - Faith Fru Nchang
  */
 public class Road implements Comparable<Road>
 {
+	// shared by every road so repeated road names are stored once
+	private static final SymbolTable NAMES = new SymbolTable();
+	// miles per hour of a road whose travel time is not given
+	public static final int DEFAULT_SPEED = 60;
+	
 	private Town source;
 	private Town destination;
 	private int roadDistance;
 	private String roadName;
+	private int nameId;
+	private final boolean oneWay;
+	// seconds to travel the road, or -1 to travel it at DEFAULT_SPEED
+	private final int seconds;
+	private final int toll;
+	// id in TravelTimeProfiles.SHARED, or -1 if the time is the same all day
+	private final int travelTimeProfile;
 	private final int DEFAULT_DISTANCE = 1;
 	
 	
@@ -20,11 +38,59 @@ public class Road implements Comparable<Road>
 	 * @param name - roadName
 	 */
 	public Road(Town source, Town destination, int distance, String name)
+	{
+		this(source, destination, distance, name, false);
+	}
+	
+	/**
+	 * creates a Road object that may be one-way
+	 * @param source - beginning path
+	 * @param destination - ending path
+	 * @param distance - distance between townnA and townB
+	 * @param name - roadName
+	 * @param oneWay - true if the road only leads from source to destination
+	 */
+	public Road(Town source, Town destination, int distance, String name, boolean oneWay)
+	{
+		this(source, destination, distance, name, oneWay, -1, 0);
+	}
+	
+	/**
+	 * creates a Road object with its travel time and toll
+	 * @param source - beginning path
+	 * @param destination - ending path
+	 * @param distance - distance between townnA and townB
+	 * @param name - roadName
+	 * @param oneWay - true if the road only leads from source to destination
+	 * @param seconds - travel time in seconds, or -1 for the time at DEFAULT_SPEED
+	 * @param toll - toll in cents
+	 */
+	public Road(Town source, Town destination, int distance, String name, boolean oneWay, int seconds, int toll)
+	{
+		this(source, destination, distance, name, oneWay, seconds, toll, -1);
+	}
+	
+	/**
+	 * creates a Road object whose travel time follows a profile over the day
+	 * @param source - beginning path
+	 * @param destination - ending path
+	 * @param distance - distance between townnA and townB
+	 * @param name - roadName
+	 * @param oneWay - true if the road only leads from source to destination
+	 * @param seconds - travel time in seconds, or -1 for the time at DEFAULT_SPEED
+	 * @param toll - toll in cents
+	 * @param travelTimeProfile - id in TravelTimeProfiles.SHARED, or -1 for the same time all day
+	 */
+	public Road(Town source, Town destination, int distance, String name, boolean oneWay, int seconds, int toll, int travelTimeProfile)
 	{
 		this.source = source;
 		this.destination = destination;
 		this.roadDistance = distance;
-		this.roadName = name;
+		this.oneWay = oneWay;
+		this.seconds = seconds < 0 ? -1 : seconds;
+		this.toll = toll;
+		this.travelTimeProfile = travelTimeProfile < 0 ? -1 : travelTimeProfile;
+		setName(name);
 	}
 	
 	/**
@@ -38,7 +104,11 @@ public class Road implements Comparable<Road>
 		this.source = source;
 		this.destination = destination;
 		this.roadDistance = DEFAULT_DISTANCE;
-		this.roadName = name;
+		this.oneWay = false;
+		this.seconds = -1;
+		this.toll = 0;
+		this.travelTimeProfile = -1;
+		setName(name);
 	}
 	
 	/**
@@ -85,6 +155,115 @@ public class Road implements Comparable<Road>
 		return this.roadDistance;
 	}
 	
+	/**
+	 * gets the time to travel the road
+	 * @return seconds, at DEFAULT_SPEED unless the road's time was given
+	 */
+	public int getTime()
+	{
+		return seconds >= 0 ? seconds : roadDistance * 3600 / DEFAULT_SPEED;
+	}
+	
+	/**
+	 * gets the time to travel the road when entering it at a time of day
+	 * @param timeOfDay - second of the day, 0 to TravelTimeProfiles.SECONDS_PER_DAY - 1
+	 * @return seconds, the same as getTime for a road without a travel time profile
+	 */
+	public int getTime(int timeOfDay)
+	{
+		if (travelTimeProfile < 0)
+			return getTime();
+		return TravelTimeProfiles.SHARED.travelTime(travelTimeProfile, getTime(), timeOfDay);
+	}
+	
+	/**
+	 * gets the profile the travel time follows over the day
+	 * @return id in TravelTimeProfiles.SHARED, or -1 if the time is the same all day
+	 */
+	public int getTravelTimeProfile()
+	{
+		return travelTimeProfile;
+	}
+	
+	/**
+	 * checks if the travel time follows the distance at DEFAULT_SPEED
+	 * @return true if the road's time was not given
+	 */
+	public boolean hasDefaultTime()
+	{
+		return seconds < 0;
+	}
+	
+	/**
+	 * gets the toll for taking the road
+	 * @return toll in cents, 0 for a free road
+	 */
+	public int getToll()
+	{
+		return toll;
+	}
+	
+	/**
+	 * makes a copy of the road with another distance, keeping its towns, name,
+	 * direction, toll, time profile and, unless it follows the distance, its time
+	 * @param distance - new distance
+	 * @return the copy
+	 */
+	public Road withWeight(int distance)
+	{
+		return new Road(source, destination, distance, roadName, oneWay, seconds, toll, travelTimeProfile);
+	}
+	
+	/**
+	 * makes a copy of the road between other towns
+	 * @param source - new source
+	 * @param destination - new destination
+	 * @return the copy
+	 */
+	public Road withTowns(Town source, Town destination)
+	{
+		return new Road(source, destination, roadDistance, roadName, oneWay, seconds, toll, travelTimeProfile);
+	}
+	
+	/**
+	 * makes a copy of the road whose time follows another profile over the day
+	 * @param profile - id in TravelTimeProfiles.SHARED, or -1 for the same time all day
+	 * @return the copy
+	 */
+	public Road withTravelTimeProfile(int profile)
+	{
+		return new Road(source, destination, roadDistance, roadName, oneWay, seconds, toll, profile);
+	}
+	
+	/**
+	 * checks if the road only leads from its source to its destination
+	 * @return oneWay
+	 */
+	public boolean isOneWay()
+	{
+		return this.oneWay;
+	}
+	
+	/**
+	 * checks if the road can be taken away from a town
+	 * @param townId - id of one of the road's towns
+	 * @return true if the road is two-way or the town is its source
+	 */
+	public boolean leaves(int townId)
+	{
+		return !oneWay || source.getId() == townId;
+	}
+	
+	/**
+	 * checks if the road can be taken to arrive at a town
+	 * @param townId - id of one of the road's towns
+	 * @return true if the road is two-way or the town is its destination
+	 */
+	public boolean enters(int townId)
+	{
+		return !oneWay || destination.getId() == townId;
+	}
+	
 	/**
 	 * gets the road name
 	 * @return road name
@@ -94,13 +273,41 @@ public class Road implements Comparable<Road>
 		return this.roadName;
 	}
 	
+	/**
+	 * looks up the id of a road name without interning it
+	 * @param name - road name
+	 * @return id of the name, or -1 if no road was ever created with that name
+	 */
+	public static int idOf(String name)
+	{
+		return NAMES.find(name);
+	}
+	
+	/**
+	 * gets the interned id of the road name
+	 * @return id of the road name, or -1 if the road has no name
+	 */
+	public int getNameId()
+	{
+		return this.nameId;
+	}
+	
 	/**
 	 * updates the road name
 	 * @param name - road name
 	 */
 	public void setName(String name)
 	{
-		roadName = name;
+		if (name == null)
+		{
+			nameId = -1;
+			roadName = null;
+		}
+		else
+		{
+			nameId = NAMES.intern(name);
+			roadName = NAMES.name(nameId);
+		}
 	}
 
 	/**
@@ -126,6 +333,16 @@ public class Road implements Comparable<Road>
 		return (source.equals(town) || destination.equals(town));
 	}
 	
+	/**
+	 * gets the id of the town at the other end of the road
+	 * @param townId - id of one of the road's towns
+	 * @return id of the other town
+	 */
+	public int getOppositeId(int townId)
+	{
+		return source.getId() == townId ? destination.getId() : source.getId();
+	}
+	
 	/**
 	 * returns the roads attributes
 	 * @return road's attributes
@@ -136,32 +353,34 @@ public class Road implements Comparable<Road>
 	}
 	
 	/**
-	 *  checks if one Road is equal to another
+	 *  checks if one Road is equal to another, roads are the same if they join
+	 *  the same towns in either direction and have the same name, one-way roads
+	 *  only if they also lead the same way
 	 * @param road - road to be compared with
 	 * @return true if the roads are the same, false other wise
 	 */
 	@Override
 	public boolean equals(Object obj)
 	{
-		Road road=  (Road) obj;
+		if (!(obj instanceof Road))
+			return false;
 		
-		if ((this.source.equals(road.source) && (this.destination.equals(road.destination))) || (this.source.equals(road.destination) && this.destination.equals(road.source)))
-		{
-			return true;
-		}
-		else
-		{
+		Road road = (Road) obj;
+		if (this.nameId != road.nameId || this.oneWay != road.oneWay)
 			return false;
-		}
+		if (oneWay)
+			return this.source.equals(road.source) && this.destination.equals(road.destination);
+		
+		return (this.source.equals(road.source) && this.destination.equals(road.destination)) || (this.source.equals(road.destination) && this.destination.equals(road.source));
 	}
 	
 	/**
-	 * computers the hashCode
+	 * computers the hashCode from the towns, in either order, and the name
 	 * @return hashCode
 	 */
 	@Override
 	public int hashCode()
 	{
-		return roadName.hashCode();
+		return 31 * (source.hashCode() ^ destination.hashCode()) + nameId;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,320 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies a stream of road changes to a TownGraphManager in small batches
+ * Each line of the stream is one change, written like a line of a road file
+ * with a sign in front:
+ *   +road-name,miles;town-name;town-name   adds a road, and its towns if new,
+ *                                          the miles may be followed by ,seconds,toll
+ *   -road-name;town-name;town-name         removes a road
+ *   =road-name,miles;town-name;town-name   gives a road a new weight
+ * A line with no sign adds a road, so a road file can be streamed as it is, and
+ * an added road ending in ;oneway only leads from the first town to the second.
+ * Blank lines and lines starting with # are skipped.
+ *
+ * Changes are collected into a GraphBatch that is applied as one version as
+ * soon as it is full or the input has nothing more ready, so a busy stream is
+ * applied in large batches and a quiet one with little delay. A batch applies
+ * its additions before its removals, so a change to a pair of towns already
+ * changed in the batch applies the batch first and the stream's order is kept.
+ * Routing reads snapshots and never waits for a batch.
+ * @author - Faith Fru Nchang
+ */
+public class RoadDeltaIngestor
+{
+	public static final int DEFAULT_BATCH_SIZE = 1024;
+
+	private final TownGraphManager manager;
+	private final int batchSize;
+	private final AtomicLong applied;
+	private final AtomicLong batches;
+	private final AtomicLong rejected;
+	// time from reading the first change of a batch to publishing it
+	private volatile long lastLag;
+	private volatile long maxLag;
+	private volatile long started;
+	private volatile long finished;
+
+	/**
+	 * creates an ingestor that applies batches of up to DEFAULT_BATCH_SIZE changes
+	 * @param manager - manager to apply the changes to
+	 */
+	public RoadDeltaIngestor(TownGraphManager manager)
+	{
+		this(manager, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * creates an ingestor
+	 * @param manager - manager to apply the changes to
+	 * @param batchSize - most changes applied as one version
+	 */
+	public RoadDeltaIngestor(TownGraphManager manager, int batchSize)
+	{
+		if (batchSize < 1)
+			throw new IllegalArgumentException("batch size must be at least 1");
+
+		this.manager = manager;
+		this.batchSize = batchSize;
+		this.applied = new AtomicLong();
+		this.batches = new AtomicLong();
+		this.rejected = new AtomicLong();
+	}
+
+	/**
+	 * applies every change in a file, which may be a named pipe
+	 * @param file - file of changes
+	 * @throws IOException if the file cannot be read
+	 */
+	public void ingest(File file) throws IOException
+	{
+		try (InputStream in = new FileInputStream(file))
+		{
+			ingest(in);
+		}
+	}
+
+	/**
+	 * applies every change read from a stream until it ends
+	 * @param in - stream of changes in UTF-8
+	 * @throws IOException if the stream cannot be read
+	 */
+	public void ingest(InputStream in) throws IOException
+	{
+		ingest(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * applies every change read until the reader ends
+	 * @param reader - changes, one per line
+	 * @throws IOException if the reader fails
+	 */
+	public void ingest(Reader reader) throws IOException
+	{
+		BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+		started = System.nanoTime();
+		finished = 0;
+
+		GraphBatch batch = new GraphBatch();
+		// pairs of towns changed by the batch, a second change to one applies the batch first
+		Set<String> pairs = new HashSet<>();
+		long first = 0;
+		try
+		{
+			for (String line = in.readLine(); line != null; line = in.readLine())
+			{
+				line = line.strip();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+
+				String[] fields = parse(line);
+				if (fields == null)
+				{
+					rejected.incrementAndGet();
+					continue;
+				}
+
+				if (!pairs.add(pair(fields[2], fields[3])))
+				{
+					apply(batch, first);
+					batch = new GraphBatch();
+					pairs.clear();
+					pairs.add(pair(fields[2], fields[3]));
+				}
+				if (batch.size() == 0)
+					first = System.nanoTime();
+				queue(batch, fields);
+
+				// apply before the next read could block, so changes never wait for more input
+				if (batch.size() >= batchSize || !in.ready())
+				{
+					apply(batch, first);
+					batch = new GraphBatch();
+					pairs.clear();
+				}
+			}
+			apply(batch, first);
+		}
+		finally
+		{
+			finished = System.nanoTime();
+		}
+	}
+
+	/**
+	 * gets the number of changes applied
+	 * @return applied changes
+	 */
+	public long getAppliedCount()
+	{
+		return applied.get();
+	}
+
+	/**
+	 * gets the number of batches applied
+	 * @return batches
+	 */
+	public long getBatchCount()
+	{
+		return batches.get();
+	}
+
+	/**
+	 * gets the number of lines that were not a valid change
+	 * @return rejected lines
+	 */
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * gets how long the changes of the last batch waited between being read and being routable
+	 * @return lag of the last batch in milliseconds
+	 */
+	public double getLastLagMillis()
+	{
+		return lastLag / 1e6;
+	}
+
+	/**
+	 * gets the longest wait of any batch between being read and being routable
+	 * @return largest lag in milliseconds
+	 */
+	public double getMaxLagMillis()
+	{
+		return maxLag / 1e6;
+	}
+
+	/**
+	 * gets the changes applied per second since ingest started, up to when it returned
+	 * @return throughput, 0 before ingest is called
+	 */
+	public double getThroughput()
+	{
+		long start = started;
+		if (start == 0)
+			return 0;
+
+		long end = finished != 0 ? finished : System.nanoTime();
+		return end > start ? applied.get() * 1e9 / (end - start) : 0;
+	}
+
+	private void apply(GraphBatch batch, long first)
+	{
+		if (batch.size() == 0)
+			return;
+
+		// a batch of new weights only locks the towns it touches
+		if (batch.getTowns().isEmpty() && batch.getRoads().isEmpty() && batch.getRemovals().isEmpty())
+			manager.reweightRoads(batch);
+		else
+			manager.apply(batch);
+		long lag = System.nanoTime() - first;
+		lastLag = lag;
+		if (lag > maxLag)
+			maxLag = lag;
+		applied.addAndGet(batch.size());
+		batches.incrementAndGet();
+	}
+
+	/**
+	 * splits a change into its sign, road name, towns and costs
+	 * @return sign, > for a one-way addition, road name, the two town names,
+	 * miles, seconds and toll, or null if the line is not a change
+	 */
+	private static String[] parse(String line)
+	{
+		char sign = line.charAt(0);
+		if (sign == '+' || sign == '-' || sign == '=')
+			line = line.substring(1);
+		else
+			sign = '+';
+
+		String[] fields = line.split(";");
+		boolean oneWay = sign == '+' && fields.length == 4 && fields[3].equals("oneway");
+		if ((fields.length != 3 && !oneWay) || fields[1].isEmpty() || fields[2].isEmpty())
+			return null;
+
+		// road-name[,miles[,seconds[,toll]]], only additions carry a time and toll
+		String[] road = fields[0].split(",", -1);
+		int costs = sign == '-' ? 1 : sign == '=' ? 1 : 3;
+		if (road[0].isEmpty() || road.length > costs + 1 || (sign != '-' && road.length < 2))
+			return null;
+
+		String[] change = new String[] { oneWay ? ">" : String.valueOf(sign), road[0], fields[1], fields[2], null, "-1", "0" };
+		for (int i = 1; i < road.length; i++)
+		{
+			try
+			{
+				if (Integer.parseInt(road[i]) < 0)
+					return null;
+			}
+			catch (NumberFormatException e)
+			{
+				return null;
+			}
+			change[3 + i] = road[i];
+		}
+		return change;
+	}
+
+	private static void queue(GraphBatch batch, String[] fields)
+	{
+		switch (fields[0])
+		{
+			case "+":
+			case ">":
+				batch.addRoad(fields[2], fields[3], Integer.parseInt(fields[4]), fields[1], fields[0].equals(">"),
+						Integer.parseInt(fields[5]), Integer.parseInt(fields[6]));
+				break;
+			case "-":
+				batch.removeRoad(fields[2], fields[3], fields[1]);
+				break;
+			default:
+				batch.reweightRoad(fields[2], fields[3], fields[1], Integer.parseInt(fields[4]));
+				break;
+		}
+	}
+
+	private static String pair(String town1, String town2)
+	{
+		return town1.compareTo(town2) < 0 ? town1 + ";" + town2 : town2 + ";" + town1;
+	}
+
+	/**
+	 * Loads a road file, then applies changes from a file or standard input and reports the rates
+	 * @param args road-file [change-file], standard input is read if no change file is given
+	 * @throws IOException if a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1 || args.length > 2)
+		{
+			System.err.println("usage: java RoadDeltaIngestor <road-file> [change-file]");
+			System.exit(2);
+		}
+
+		TownGraphManager manager = new TownGraphManager();
+		manager.populateTownGraph(new File(args[0]));
+		RoadDeltaIngestor ingestor = new RoadDeltaIngestor(manager);
+		if (args.length == 2)
+			ingestor.ingest(new File(args[1]));
+		else
+			ingestor.ingest(System.in);
+
+		System.out.printf("%d changes in %d batches, %d rejected, %.0f changes/s, lag %.2f ms last, %.2f ms max%n",
+				ingestor.getAppliedCount(), ingestor.getBatchCount(), ingestor.getRejectedCount(),
+				ingestor.getThroughput(), ingestor.getLastLagMillis(), ingestor.getMaxLagMillis());
+	}
+}
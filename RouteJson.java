@@ -0,0 +1,344 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the JSON bodies RouteServer answers with and reads them back, so a
+ * client such as ShardCoordinator parses replies with the same code that
+ * wrote them instead of searching the text for the fields it wants
+ *
+ * The reader accepts any JSON document. Objects become a LinkedHashMap in
+ * field order, arrays an ArrayList, numbers a Long, or a Double when they have
+ * a fraction or exponent, and true, false and null their Java values.
+ * @author - Faith Fru Nchang
+ */
+public class RouteJson
+{
+	private final String text;
+	private int at;
+
+	private RouteJson(String text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * writes the reply of /distances
+	 * @param from - name of the town measured from, or to when reversed
+	 * @param distances - miles to or from each town, -1 where there is no path
+	 * @return {"from":..,"distances":[..]}
+	 */
+	public static String distances(String from, int[] distances)
+	{
+		StringBuilder json = new StringBuilder("{\"from\":").append(quote(from)).append(",\"distances\":[");
+		for (int i = 0; i < distances.length; i++)
+		{
+			if (i > 0)
+				json.append(',');
+			json.append(distances[i]);
+		}
+		return json.append("]}").toString();
+	}
+
+	/**
+	 * reads the distances of a reply written by distances
+	 * @param json - reply body
+	 * @return miles to or from each town, -1 where there is no path
+	 * @throws IllegalArgumentException if the body is not such a reply
+	 */
+	public static int[] readDistances(String json)
+	{
+		List<?> values = list(object(json).get("distances"), "distances");
+		int[] distances = new int[values.size()];
+		for (int i = 0; i < distances.length; i++)
+		{
+			if (!(values.get(i) instanceof Long))
+				throw new IllegalArgumentException("distance " + i + " is not a whole number");
+			distances[i] = Math.toIntExact((Long) values.get(i));
+		}
+		return distances;
+	}
+
+	/**
+	 * writes the reply of /path, also one element of the reply of /batch
+	 * @param from - name of the starting town
+	 * @param to - name of the destination town
+	 * @param profile - name of the cost profile the path was chosen by
+	 * @param found - whether there is a path
+	 * @param miles - length of the path, written as -1 if none was found
+	 * @param steps - description of each road of the path
+	 * @return {"from":..,"to":..,"profile":..,"found":..,"miles":..,"steps":[..]}
+	 */
+	public static String path(String from, String to, String profile, boolean found, int miles, List<String> steps)
+	{
+		return "{\"from\":" + quote(from) + ",\"to\":" + quote(to) + ",\"profile\":" + quote(profile) + ",\"found\":" + found
+				+ ",\"miles\":" + (found ? miles : -1) + ",\"steps\":" + array(steps) + "}";
+	}
+
+	/**
+	 * reads the steps of a reply written by path
+	 * @param json - reply body
+	 * @return description of each road of the path, empty if none was found
+	 * @throws IllegalArgumentException if the body is not such a reply
+	 */
+	public static ArrayList<String> readSteps(String json)
+	{
+		ArrayList<String> steps = new ArrayList<>();
+		for (Object step : list(object(json).get("steps"), "steps"))
+		{
+			if (!(step instanceof String))
+				throw new IllegalArgumentException("step " + steps.size() + " is not a string");
+			steps.add((String) step);
+		}
+		return steps;
+	}
+
+	/**
+	 * writes the reply sent for a request that failed
+	 * @param message - what went wrong
+	 * @return {"error":..}
+	 */
+	public static String error(String message)
+	{
+		return "{\"error\":" + quote(message) + "}";
+	}
+
+	/**
+	 * writes strings as a JSON array
+	 * @param values - strings to write
+	 * @return [..]
+	 */
+	public static String array(List<String> values)
+	{
+		StringBuilder json = new StringBuilder("[");
+		for (String value : values)
+		{
+			if (json.length() > 1)
+				json.append(',');
+			json.append(quote(value));
+		}
+		return json.append(']').toString();
+	}
+
+	/**
+	 * writes a string as a JSON string, escaping quotes, backslashes and control characters
+	 * @param text - string to write
+	 * @return the quoted string
+	 */
+	public static String quote(String text)
+	{
+		StringBuilder json = new StringBuilder("\"");
+		for (int i = 0; i < text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * reads a JSON document
+	 * @param json - the document
+	 * @return its value as described in the class comment
+	 * @throws IllegalArgumentException if the document is not valid JSON
+	 */
+	public static Object parse(String json)
+	{
+		RouteJson reader = new RouteJson(json);
+		Object value = reader.value();
+		reader.skipSpace();
+		if (reader.at < json.length())
+			throw reader.malformed("unexpected text after the value");
+		return value;
+	}
+
+	// the fields of a document that must be an object
+	private static Map<?, ?> object(String json)
+	{
+		Object value = parse(json);
+		if (!(value instanceof Map))
+			throw new IllegalArgumentException("expected a JSON object");
+		return (Map<?, ?>) value;
+	}
+
+	private static List<?> list(Object value, String field)
+	{
+		if (!(value instanceof List))
+			throw new IllegalArgumentException("expected an array in field " + field);
+		return (List<?>) value;
+	}
+
+	private Object value()
+	{
+		skipSpace();
+		if (at >= text.length())
+			throw malformed("unexpected end of document");
+
+		char c = text.charAt(at);
+		if (c == '{')
+			return objectValue();
+		if (c == '[')
+			return arrayValue();
+		if (c == '"')
+			return stringValue();
+		if (c == '-' || (c >= '0' && c <= '9'))
+			return numberValue();
+		if (text.startsWith("true", at))
+			return word("true", Boolean.TRUE);
+		if (text.startsWith("false", at))
+			return word("false", Boolean.FALSE);
+		if (text.startsWith("null", at))
+			return word("null", null);
+		throw malformed("unexpected character " + c);
+	}
+
+	private Map<String, Object> objectValue()
+	{
+		Map<String, Object> fields = new LinkedHashMap<>();
+		at++;
+		skipSpace();
+		if (take('}'))
+			return fields;
+
+		do
+		{
+			skipSpace();
+			if (at >= text.length() || text.charAt(at) != '"')
+				throw malformed("expected a field name");
+			String name = stringValue();
+			skipSpace();
+			expect(':');
+			fields.put(name, value());
+			skipSpace();
+		}
+		while (take(','));
+		expect('}');
+		return fields;
+	}
+
+	private List<Object> arrayValue()
+	{
+		List<Object> values = new ArrayList<>();
+		at++;
+		skipSpace();
+		if (take(']'))
+			return values;
+
+		do
+		{
+			values.add(value());
+			skipSpace();
+		}
+		while (take(','));
+		expect(']');
+		return values;
+	}
+
+	private String stringValue()
+	{
+		StringBuilder value = new StringBuilder();
+		at++;
+		while (true)
+		{
+			if (at >= text.length())
+				throw malformed("unterminated string");
+
+			char c = text.charAt(at++);
+			if (c == '"')
+				return value.toString();
+			if (c != '\\')
+			{
+				value.append(c);
+				continue;
+			}
+
+			if (at >= text.length())
+				throw malformed("unterminated string");
+			c = text.charAt(at++);
+			switch (c)
+			{
+				case 'b': value.append('\b'); break;
+				case 'f': value.append('\f'); break;
+				case 'n': value.append('\n'); break;
+				case 'r': value.append('\r'); break;
+				case 't': value.append('\t'); break;
+				case 'u':
+					if (at + 4 > text.length())
+						throw malformed("short unicode escape");
+					try
+					{
+						value.append((char) Integer.parseInt(text.substring(at, at + 4), 16));
+					}
+					catch (NumberFormatException e)
+					{
+						throw malformed("bad unicode escape");
+					}
+					at += 4;
+					break;
+				default: value.append(c);
+			}
+		}
+	}
+
+	private Object numberValue()
+	{
+		int start = at;
+		boolean whole = true;
+		while (at < text.length() && "+-0123456789.eE".indexOf(text.charAt(at)) >= 0)
+		{
+			if (".eE".indexOf(text.charAt(at)) >= 0)
+				whole = false;
+			at++;
+		}
+		String number = text.substring(start, at);
+		try
+		{
+			return whole ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+		}
+		catch (NumberFormatException e)
+		{
+			throw malformed("bad number " + number);
+		}
+	}
+
+	private Object word(String word, Object value)
+	{
+		at += word.length();
+		return value;
+	}
+
+	private boolean take(char c)
+	{
+		if (at < text.length() && text.charAt(at) == c)
+		{
+			at++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(char c)
+	{
+		if (!take(c))
+			throw malformed("expected " + c);
+	}
+
+	private void skipSpace()
+	{
+		while (at < text.length() && Character.isWhitespace(text.charAt(at)))
+		{
+			at++;
+		}
+	}
+
+	private IllegalArgumentException malformed(String message)
+	{
+		return new IllegalArgumentException(message + " at offset " + at + " of the document");
+	}
+}
@@ -0,0 +1,103 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streams a table of route costs between towns to a columnar binary file, one
+ * search's costs at a time, so the table is never held whole
+ * Each block is the costs of one searched town: a row of the costs from a
+ * source to every target, or with columns set a column of the costs from every
+ * source to a target, written as a column with -1 where there is no path. The
+ * footer holds the flags (1 delta, 2 columns), the source and target counts and
+ * names, then the block count and the offset of each block, so a reader can
+ * seek straight to any row or column.
+ * @author - Faith Fru Nchang
+ */
+public class RouteMatrixWriter extends ColumnarWriter
+{
+	// "RMX1"
+	public static final int MAGIC = 0x524d5831;
+	public static final int FLAG_DELTA = 1;
+	public static final int FLAG_COLUMNS = 2;
+
+	private final List<String> sources;
+	private final List<String> targets;
+	private final boolean columns;
+	private final int[] values;
+	private long[] offsets;
+	private int blocks;
+
+	/**
+	 * creates the file
+	 * @param file - file to write
+	 * @param sources - names of the towns measured from
+	 * @param targets - names of the towns measured to
+	 * @param columns - true if each block is a target's column, false for a source's row
+	 * @param delta - true to delta encode the blocks
+	 * @throws IOException if the file cannot be created
+	 */
+	public RouteMatrixWriter(File file, List<String> sources, List<String> targets, boolean columns, boolean delta) throws IOException
+	{
+		super(file, MAGIC, delta);
+		this.sources = sources;
+		this.targets = targets;
+		this.columns = columns;
+		values = new int[columns ? sources.size() : targets.size()];
+		offsets = new long[16];
+		blocks = 0;
+	}
+
+	/**
+	 * checks if each block is a column
+	 * @return columns
+	 */
+	public boolean isColumns()
+	{
+		return columns;
+	}
+
+	/**
+	 * writes the next row or column
+	 * @param costs - cost to or from each town of the other side, -1 or RouteSearch.UNREACHABLE where there is no path
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if the block has the wrong length or the table is full
+	 */
+	public void writeVector(int[] costs) throws IOException
+	{
+		if (costs.length != values.length)
+			throw new IllegalArgumentException("expected " + values.length + " costs, not " + costs.length);
+		if (blocks == (columns ? targets.size() : sources.size()))
+			throw new IllegalArgumentException("every " + (columns ? "column" : "row") + " is already written");
+
+		for (int i = 0; i < costs.length; i++)
+		{
+			values[i] = costs[i] == RouteSearch.UNREACHABLE ? -1 : costs[i];
+		}
+		if (blocks == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		offsets[blocks++] = position();
+		putColumn(values, values.length);
+	}
+
+	@Override
+	protected void writeFooter() throws IOException
+	{
+		putInt((isDelta() ? FLAG_DELTA : 0) | (columns ? FLAG_COLUMNS : 0));
+		putInt(sources.size());
+		putInt(targets.size());
+		for (String name : sources)
+		{
+			putString(name);
+		}
+		for (String name : targets)
+		{
+			putString(name);
+		}
+		putInt(blocks);
+		for (int i = 0; i < blocks; i++)
+		{
+			putLong(offsets[i]);
+		}
+	}
+}
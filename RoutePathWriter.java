@@ -0,0 +1,163 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Streams route results to a columnar binary file in groups of up to GROUP_SIZE
+ * paths, so only the current group is held
+ * Towns and roads are written as ids into two dictionaries kept for the footer.
+ * A group is its path count, then the columns of the source, target, cost (-1
+ * when there is no path) and road count of each path, then the total number of
+ * roads and two columns with the road taken and the town reached at every step
+ * of every path in turn. A road without a name is -1. The footer holds the
+ * flags (1 delta), the town and road dictionaries as a count and names, then
+ * the group count and the offset of each group.
+ * @author - Faith Fru Nchang
+ */
+public class RoutePathWriter extends ColumnarWriter
+{
+	// "RPX1"
+	public static final int MAGIC = 0x52505831;
+	public static final int FLAG_DELTA = 1;
+	public static final int GROUP_SIZE = 4096;
+
+	private final HashMap<String, Integer> townIds;
+	private final ArrayList<String> towns;
+	private final HashMap<String, Integer> roadIds;
+	private final ArrayList<String> roads;
+
+	private final int[] sources;
+	private final int[] targets;
+	private final int[] costs;
+	private final int[] roadCounts;
+	private int[] steps;
+	private int[] reached;
+	private int paths;
+	private int stepCount;
+
+	private long[] offsets;
+	private int groups;
+
+	/**
+	 * creates the file
+	 * @param file - file to write
+	 * @param delta - true to delta encode the columns
+	 * @throws IOException if the file cannot be created
+	 */
+	public RoutePathWriter(File file, boolean delta) throws IOException
+	{
+		super(file, MAGIC, delta);
+		townIds = new HashMap<>();
+		towns = new ArrayList<>();
+		roadIds = new HashMap<>();
+		roads = new ArrayList<>();
+		sources = new int[GROUP_SIZE];
+		targets = new int[GROUP_SIZE];
+		costs = new int[GROUP_SIZE];
+		roadCounts = new int[GROUP_SIZE];
+		steps = new int[GROUP_SIZE];
+		reached = new int[GROUP_SIZE];
+		offsets = new long[16];
+	}
+
+	/**
+	 * adds a path to the current group, writing the group once it is full
+	 * @param source - name of the town the path starts at
+	 * @param target - name of the town the path ends at
+	 * @param cost - cost of the path, -1 or RouteSearch.UNREACHABLE if there is none
+	 * @param path - roads in travel order, empty or null if there is no path
+	 * @throws IOException if the file cannot be written
+	 */
+	public void writePath(String source, String target, int cost, List<Road> path) throws IOException
+	{
+		int count = path == null ? 0 : path.size();
+		if (stepCount + count > steps.length)
+		{
+			steps = Arrays.copyOf(steps, Math.max(steps.length * 2, stepCount + count));
+			reached = Arrays.copyOf(reached, steps.length);
+		}
+
+		// a town with a path was interned when it was added to the graph
+		int town = Town.idOf(source);
+		for (int i = 0; i < count; i++)
+		{
+			Road road = path.get(i);
+			town = road.getOppositeId(town);
+			steps[stepCount] = road.getName() == null ? -1 : id(road.getName(), roadIds, roads);
+			reached[stepCount++] = id((road.getSource().getId() == town ? road.getSource() : road.getDestination()).getName(), townIds, towns);
+		}
+
+		sources[paths] = id(source, townIds, towns);
+		targets[paths] = id(target, townIds, towns);
+		costs[paths] = cost == RouteSearch.UNREACHABLE ? -1 : cost;
+		roadCounts[paths++] = count;
+		if (paths == GROUP_SIZE)
+			writeGroup();
+	}
+
+	/**
+	 * writes the last group if it is not empty, then the footer
+	 * @throws IOException if the file cannot be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (paths > 0)
+			writeGroup();
+		super.close();
+	}
+
+	@Override
+	protected void writeFooter() throws IOException
+	{
+		putInt(isDelta() ? FLAG_DELTA : 0);
+		putInt(towns.size());
+		for (String name : towns)
+		{
+			putString(name);
+		}
+		putInt(roads.size());
+		for (String name : roads)
+		{
+			putString(name);
+		}
+		putInt(groups);
+		for (int i = 0; i < groups; i++)
+		{
+			putLong(offsets[i]);
+		}
+	}
+
+	private void writeGroup() throws IOException
+	{
+		if (groups == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		offsets[groups++] = position();
+
+		putInt(paths);
+		putColumn(sources, paths);
+		putColumn(targets, paths);
+		putColumn(costs, paths);
+		putColumn(roadCounts, paths);
+		putInt(stepCount);
+		putColumn(steps, stepCount);
+		putColumn(reached, stepCount);
+		paths = 0;
+		stepCount = 0;
+	}
+
+	private static int id(String name, HashMap<String, Integer> ids, ArrayList<String> names)
+	{
+		Integer id = ids.get(name);
+		if (id == null)
+		{
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+}
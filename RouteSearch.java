@@ -0,0 +1,445 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Dijkstra's shortest path search over one GraphSnapshot
+ * The distances live in a pooled SearchWorkspace, so a search allocates
+ * nothing once the pool is warm and any number of searches can run at the same
+ * time against the same snapshot. Close the search to give the workspace back.
+ * Towns wait in a BucketQueue when every road weight is a small non-negative
+ * number of miles, and in a binary heap otherwise. One-way roads are only
+ * followed the way they lead, or only against it once the search is reversed.
+ * A search adds up the cost its CostProfile gives each road, the distance unless
+ * another profile is chosen, and every distance it reports is in that cost.
+ * runDeparting instead adds up the time of each road as of when it is entered.
+ * @author - Faith Fru Nchang
+ */
+public class RouteSearch implements AutoCloseable
+{
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+	// heaviest road for which buckets are used, past it scanning empty buckets costs more
+	// than the heap and the ring of buckets grows with the heaviest road
+	public static final int MAX_BUCKET_WEIGHT = 4096;
+	// towns settled between checks for an interrupted thread
+	private static final int CANCEL_CHECK_INTERVAL = 1024;
+
+	/**
+	 * Priority queue a search orders towns with
+	 */
+	public enum QueueType
+	{
+		// buckets when the weights allow it, else the binary heap
+		AUTO,
+		BINARY_HEAP,
+		// Dial's buckets, falls back to the binary heap like AUTO for negative weights
+		// and for roads heavier than MAX_BUCKET_WEIGHT, whose ring of buckets would be too large
+		BUCKETS
+	}
+
+	private final GraphSnapshot graph;
+	private final QueueType queueType;
+	private final CostProfile profile;
+	// the cost of a road is its distance, so the cheapest road rows can be relaxed as they are
+	private final boolean distanceOnly;
+	// follow roads against their direction, so distances are to the sources rather than from them
+	private boolean reverse;
+	private SearchWorkspace workspace;
+	// towns a search with several targets still has to settle, marked by id
+	private boolean[] stops;
+	private int stopsLeft;
+
+	/**
+	 * creates a search over the given snapshot, choosing the queue from its weights
+	 * @param graph - snapshot to search
+	 */
+	public RouteSearch(GraphSnapshot graph)
+	{
+		this(graph, QueueType.AUTO);
+	}
+
+	/**
+	 * creates a search over the given snapshot
+	 * @param graph - snapshot to search
+	 * @param queueType - priority queue to order towns with
+	 */
+	public RouteSearch(GraphSnapshot graph, QueueType queueType)
+	{
+		this(graph, queueType, CostProfile.SHORTEST);
+	}
+
+	/**
+	 * creates a search over the given snapshot that costs roads with a profile
+	 * @param graph - snapshot to search
+	 * @param queueType - priority queue to order towns with
+	 * @param profile - cost of each road
+	 */
+	public RouteSearch(GraphSnapshot graph, QueueType queueType, CostProfile profile)
+	{
+		if (profile == null)
+			throw new NullPointerException();
+
+		this.graph = graph;
+		this.queueType = queueType;
+		this.profile = profile;
+		this.distanceOnly = profile.isDistanceOnly();
+		workspace = SearchWorkspace.acquire(graph.getIdCapacity());
+	}
+
+	/**
+	 * makes later searches follow roads against their direction, so each distance
+	 * is from the town to the nearest source and each path is walked backwards;
+	 * searches with a landmark table always go forwards
+	 * @param reverse - true to search backwards
+	 */
+	public void setReverse(boolean reverse)
+	{
+		this.reverse = reverse;
+	}
+
+	/**
+	 * checks if searches follow roads against their direction
+	 * @return reverse
+	 */
+	public boolean isReverse()
+	{
+		return reverse;
+	}
+
+	/**
+	 * gets the profile roads are costed with
+	 * @return profile
+	 */
+	public CostProfile getProfile()
+	{
+		return profile;
+	}
+
+	/**
+	 * finds the shortest distances from the source, stopping once the target is settled
+	 * @param sourceId - id of the starting town
+	 * @param targetId - id of the town to stop at, or -1 to reach every town
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public void run(int sourceId, int targetId)
+	{
+		workspace.reset(graph.getIdCapacity(), bucketWeight(1));
+		if (graph.getTown(sourceId) != null)
+			workspace.reach(sourceId, 0, null, sourceId);
+		search(targetId);
+	}
+
+	/**
+	 * finds the shortest distances from the source, stopping once every target is
+	 * settled, so a search toward a few towns does not visit the whole graph
+	 * @param sourceId - id of the starting town
+	 * @param targetIds - ids of the towns to stop after, ids not in the graph are skipped
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public void run(int sourceId, int[] targetIds)
+	{
+		int capacity = graph.getIdCapacity();
+		if (stops == null || stops.length < capacity)
+			stops = new boolean[capacity];
+		stopsLeft = 0;
+		for (int id : targetIds)
+		{
+			if (graph.getTown(id) != null && !stops[id])
+			{
+				stops[id] = true;
+				stopsLeft++;
+			}
+		}
+
+		try
+		{
+			workspace.reset(capacity, bucketWeight(1));
+			if (graph.getTown(sourceId) != null && stopsLeft > 0)
+				workspace.reach(sourceId, 0, null, sourceId);
+			search(-1);
+		}
+		finally
+		{
+			for (int id : targetIds)
+			{
+				if (id >= 0 && id < stops.length)
+					stops[id] = false;
+			}
+			stopsLeft = 0;
+		}
+	}
+
+	/**
+	 * finds the shortest path to the target with A*, using a landmark table for
+	 * lower bounds on the distance left, so fewer towns are settled than by run
+	 * @param sourceId - id of the starting town
+	 * @param targetId - id of the destination town
+	 * @param landmarks - table valid for the snapshot being searched, computed for the search's profile
+	 * @throws CancellationException if the thread is interrupted during the search
+	 * @throws IllegalArgumentException if the table was computed for another profile
+	 */
+	public void run(int sourceId, int targetId, LandmarkTable landmarks)
+	{
+		if (!landmarks.getProfile().equals(profile))
+			throw new IllegalArgumentException("landmark table is for the " + landmarks.getProfile() + " profile, not " + profile);
+
+		// a consistent bound raises the priority by at most twice a road's weight, with
+		// one-way roads the bound can rise by far more than the road, past any bucket ring
+		workspace.reset(graph.getIdCapacity(), graph.hasOneWayRoads() ? -1 : bucketWeight(2), true);
+		if (graph.getTown(sourceId) == null || graph.getTown(targetId) == null)
+			return;
+
+		int bound = landmarks.lowerBound(sourceId, targetId);
+		if (bound == UNREACHABLE)
+			return;
+
+		SearchWorkspace reached = workspace;
+		VertexQueue queue = reached.getQueue();
+		reached.reach(sourceId, 0, bound, null, sourceId);
+		int settled = 0;
+
+		while (!queue.isEmpty())
+		{
+			if (++settled % CANCEL_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted())
+				throw new CancellationException("route search cancelled");
+
+			int town = queue.pollMin();
+			if (town == targetId)
+				return;
+
+			int distance = reached.getDistance(town);
+			Road[] roads = distanceOnly ? graph.getOutgoingRoads(town) : graph.getRoads(town);
+			for (int i = 0; i < roads.length; i++)
+			{
+				Road road = roads[i];
+				int cost = distanceOnly ? road.getWeight() : cost(road, town, false);
+				if (cost == UNREACHABLE)
+					continue;
+
+				int next = road.getOppositeId(town);
+				// summed as longs so roads near Integer.MAX_VALUE cannot wrap a distance negative
+				long newDistance = (long) distance + cost;
+				if (newDistance < reached.getDistance(next))
+				{
+					bound = landmarks.lowerBound(next, targetId);
+					if (bound != UNREACHABLE)
+						reached.reach(next, (int) newDistance, (int) Math.min(newDistance + bound, UNREACHABLE - 1), road, sourceId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * finds the quickest travel times from the source when leaving at a time of
+	 * day, entering each road at the time the search reaches it so roads with a
+	 * TravelTimeProfiles profile cost what they do at that hour, stopping once the
+	 * target is settled. Distances are seconds since the departure; the profile's
+	 * factors are not used, though roads with a toll are still avoided if it says so.
+	 * @param sourceId - id of the starting town
+	 * @param targetId - id of the town to stop at, or -1 to reach every town
+	 * @param departure - second of the day the source is left
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public void runDeparting(int sourceId, int targetId, int departure)
+	{
+		// a road's time depends on the hour, so no width bounds the bucket ring
+		workspace.reset(graph.getIdCapacity(), -1);
+		if (graph.getTown(sourceId) == null)
+			return;
+
+		SearchWorkspace reached = workspace;
+		VertexQueue queue = reached.getQueue();
+		reached.reach(sourceId, 0, null, sourceId);
+		int start = Math.floorMod(departure, TravelTimeProfiles.SECONDS_PER_DAY);
+		boolean avoidTolls = profile.avoidsTolls();
+		int settled = 0;
+
+		while (!queue.isEmpty())
+		{
+			if (++settled % CANCEL_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted())
+				throw new CancellationException("route search cancelled");
+
+			int town = queue.pollMin();
+			if (town == targetId)
+				return;
+
+			int elapsed = reached.getDistance(town);
+			int clock = (int) ((start + (long) elapsed) % TravelTimeProfiles.SECONDS_PER_DAY);
+			// parallel roads can be quickest at different hours, so the full row is relaxed
+			Road[] roads = graph.getRoads(town);
+			for (int i = 0; i < roads.length; i++)
+			{
+				Road road = roads[i];
+				if (!road.leaves(town) || (avoidTolls && road.getToll() > 0))
+					continue;
+
+				int next = road.getOppositeId(town);
+				long arrival = (long) elapsed + road.getTime(clock);
+				if (arrival < reached.getDistance(next))
+					reached.reach(next, (int) arrival, road, sourceId);
+			}
+		}
+	}
+
+	/**
+	 * finds the shortest distances from the nearest of several sources in one
+	 * search, stopping once the target is settled
+	 * @param sourceIds - ids of the starting towns, ids not in the graph are skipped
+	 * @param targetId - id of the town to stop at, or -1 to reach every town
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public void run(int[] sourceIds, int targetId)
+	{
+		run(sourceIds, null, targetId);
+	}
+
+	/**
+	 * finds the shortest distances from several sources that each start with a
+	 * distance already travelled, stopping once the target is settled
+	 * @param sourceIds - ids of the starting towns, ids not in the graph are skipped
+	 * @param sourceDistances - starting distance of each source, or null for all 0
+	 * @param targetId - id of the town to stop at, or -1 to reach every town
+	 * @throws CancellationException if the thread is interrupted during the search
+	 */
+	public void run(int[] sourceIds, int[] sourceDistances, int targetId)
+	{
+		// starting distances can be further apart than the bucket ring is wide
+		workspace.reset(graph.getIdCapacity(), sourceDistances == null ? bucketWeight(1) : -1);
+		for (int i = 0; i < sourceIds.length; i++)
+		{
+			int id = sourceIds[i];
+			int distance = sourceDistances == null ? 0 : sourceDistances[i];
+			if (graph.getTown(id) != null && distance < workspace.getDistance(id))
+				workspace.reach(id, distance, null, id);
+		}
+		search(targetId);
+	}
+
+	// settles towns in order of distance from the sources already queued
+	private void search(int targetId)
+	{
+		SearchWorkspace reached = workspace;
+		VertexQueue queue = reached.getQueue();
+		int settled = 0;
+
+		while (!queue.isEmpty())
+		{
+			if (++settled % CANCEL_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted())
+				throw new CancellationException("route search cancelled");
+
+			int town = queue.pollMin();
+			if (town == targetId || (stopsLeft > 0 && stops[town] && --stopsLeft == 0))
+				return;
+
+			int distance = reached.getDistance(town);
+			int origin = reached.getOrigin(town);
+			Road[] roads = !distanceOnly ? graph.getRoads(town) : reverse ? graph.getIncomingRoads(town) : graph.getOutgoingRoads(town);
+			for (int i = 0; i < roads.length; i++)
+			{
+				Road road = roads[i];
+				int cost = distanceOnly ? road.getWeight() : cost(road, town, reverse);
+				if (cost == UNREACHABLE)
+					continue;
+
+				int next = road.getOppositeId(town);
+				long newDistance = (long) distance + cost;
+				if (newDistance < reached.getDistance(next))
+					reached.reach(next, (int) newDistance, road, origin);
+			}
+		}
+	}
+
+	/**
+	 * costs a road from the full row of a town, which holds parallel roads the
+	 * profile may rank differently and one-way roads leading either way
+	 * @return the profile's cost, or UNREACHABLE if the road cannot be taken that way
+	 */
+	private int cost(Road road, int town, boolean backwards)
+	{
+		if (backwards ? !road.enters(town) : !road.leaves(town))
+			return UNREACHABLE;
+		return profile.cost(road);
+	}
+
+	/**
+	 * gets the shortest distance found to a town
+	 * @param id - town id
+	 * @return distance, or UNREACHABLE
+	 */
+	public int getDistance(int id)
+	{
+		return workspace.getDistance(id);
+	}
+
+	/**
+	 * gets the source a town was reached from
+	 * @param id - town id
+	 * @return id of the nearest source, or -1 for unreached towns
+	 */
+	public int getOrigin(int id)
+	{
+		return workspace.getOrigin(id);
+	}
+
+	/**
+	 * gets the last road on the shortest path to a town
+	 * @param id - town id
+	 * @return previous road, or null for the source and unreached towns
+	 */
+	public Road getPreviousRoad(int id)
+	{
+		return workspace.getPreviousRoad(id);
+	}
+
+	/**
+	 * gets the roads of the shortest path from the nearest source to a town
+	 * @param targetId - town id
+	 * @return roads in travel order, which a reversed search travels from the town
+	 * to the source, so its path is read from the end; empty if the town was not
+	 * reached or is a source
+	 */
+	public ArrayList<Road> getPath(int targetId)
+	{
+		ArrayList<Road> path = new ArrayList<>();
+		if (targetId < 0 || targetId >= graph.getIdCapacity() || !workspace.isReached(targetId))
+			return path;
+
+		int town = targetId;
+		for (Road road = workspace.getPreviousRoad(town); road != null; road = workspace.getPreviousRoad(town))
+		{
+			path.add(road);
+			town = road.getOppositeId(town);
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * picks the queue for the snapshot's weights
+	 * @param span - most a road can raise a town's priority, in multiples of its weight
+	 * @return largest priority increase for a bucket queue, or -1 for the binary heap
+	 */
+	private int bucketWeight(int span)
+	{
+		if (queueType == QueueType.BINARY_HEAP || graph.getMinWeight() < 0)
+			return -1;
+
+		int maxCost = distanceOnly ? graph.getMaxWeight() : profile.maxCost(graph);
+		if (maxCost > MAX_BUCKET_WEIGHT / span)
+			return -1;
+		return maxCost * span;
+	}
+
+	/**
+	 * gives the workspace back to the pool, the results must not be read afterwards
+	 */
+	@Override
+	public void close()
+	{
+		if (workspace != null)
+		{
+			workspace.release();
+			workspace = null;
+		}
+	}
+}
@@ -0,0 +1,404 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves a shared TownGraphManager over HTTP with JSON responses
+ *
+ * GET  /path?from=A&to=B          shortest path between two towns
+ * GET  /town?name=A               whether a town exists and its neighbours
+ * GET  /towns?prefix=A&limit=20   town names starting with a prefix
+ * POST /batch                     one "from;to" pair per line, a path for each
+ * GET  /distances?from=A&to=B,C   miles from one town to each of several, -1 if unreachable
+ * POST /distances?from=A          the same with the towns one per line in the body
+ *      add &reverse=true to either for miles from each of the towns to A instead
+ * Paths may add &profile=fastest or &profile=toll-free to pick the route by
+ * another CostProfile than the shortest, their miles are still the path's length,
+ * or &depart=HH:MM for the quickest path leaving then, with rush hours counted.
+ *
+ * Responses always carry a Content-Length, so clients keep the connection open
+ * between requests. Requests are handled on virtual threads when the JDK has
+ * them. Once maxInFlight requests are being handled, new ones are answered at
+ * once with 503 and a Retry-After header instead of queueing without bound.
+ * The searches themselves run through a RoutingScheduler, one per core at a
+ * time, and a request whose searches the scheduler rejects also gets a 503.
+ *
+ * The JDK server writes headers and body separately, so a client sending many
+ * small requests on one connection, such as a ShardCoordinator, can wait on
+ * delayed acknowledgements for each answer. Operators of such servers should
+ * start the JVM with -Dsun.net.httpserver.nodelay=true, which turns on
+ * TCP_NODELAY for every HttpServer in the process.
+ * @author - Faith Fru Nchang
+ */
+public class RouteServer
+{
+	public static final int DEFAULT_PORT = 8080;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 4096;
+	private static final int MAX_LIMIT = 1000;
+
+	private final TownGraphManager manager;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final RoutingScheduler scheduler;
+	private final Semaphore inFlight;
+
+	/**
+	 * creates a server for the manager, call start to accept requests
+	 * @param manager - manager shared by every request
+	 * @param port - port to listen on, 0 for any free port
+	 * @param maxInFlight - most requests handled at once before new ones are rejected
+	 * @throws IOException if the port cannot be bound
+	 */
+	public RouteServer(TownGraphManager manager, int port, int maxInFlight) throws IOException
+	{
+		this(manager, port, maxInFlight, new RoutingScheduler());
+	}
+
+	/**
+	 * creates a server for the manager, call start to accept requests
+	 * @param manager - manager shared by every request
+	 * @param port - port to listen on, 0 for any free port
+	 * @param maxInFlight - most requests handled at once before new ones are rejected
+	 * @param scheduler - runs the route searches, closed by stop
+	 * @throws IOException if the port cannot be bound
+	 */
+	public RouteServer(TownGraphManager manager, int port, int maxInFlight, RoutingScheduler scheduler) throws IOException
+	{
+		this.manager = manager;
+		this.scheduler = scheduler;
+		this.inFlight = new Semaphore(maxInFlight);
+		this.executor = RoutingScheduler.newThreadPerTaskExecutor();
+		this.server = HttpServer.create(new InetSocketAddress("localhost", port), maxInFlight);
+		server.setExecutor(executor);
+		server.createContext("/path", exchange -> handle(exchange, this::path));
+		server.createContext("/town", exchange -> handle(exchange, this::town));
+		server.createContext("/towns", exchange -> handle(exchange, this::towns));
+		server.createContext("/batch", exchange -> handle(exchange, this::batch));
+		server.createContext("/distances", exchange -> handle(exchange, this::distances));
+	}
+
+	/**
+	 * starts accepting requests
+	 */
+	public void start()
+	{
+		server.start();
+	}
+
+	/**
+	 * stops the server, waiting up to the given time for requests being handled
+	 * @param delaySeconds - seconds to wait
+	 */
+	public void stop(int delaySeconds)
+	{
+		server.stop(delaySeconds);
+		executor.shutdownNow();
+		scheduler.close();
+	}
+
+	/**
+	 * gets the port the server listens on
+	 * @return port
+	 */
+	public int getPort()
+	{
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Builds the JSON body of a response
+	 */
+	private interface Handler
+	{
+		String respond(HttpExchange exchange, Map<String, String> query) throws Exception;
+	}
+
+	/**
+	 * runs a handler unless too many requests are in flight, and sends its answer
+	 * @param exchange - request and response
+	 * @param handler - builds the response body
+	 * @throws IOException if the response cannot be sent
+	 */
+	private void handle(HttpExchange exchange, Handler handler) throws IOException
+	{
+		try
+		{
+			if (!inFlight.tryAcquire())
+			{
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, RouteJson.error("server busy"));
+				return;
+			}
+			try
+			{
+				send(exchange, 200, handler.respond(exchange, query(exchange)));
+			}
+			catch (IllegalArgumentException e)
+			{
+				send(exchange, 400, RouteJson.error(e.getMessage()));
+			}
+			catch (RejectedExecutionException e)
+			{
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, RouteJson.error(e.getMessage()));
+			}
+			catch (IOException e)
+			{
+				throw e;
+			}
+			catch (Exception e)
+			{
+				send(exchange, 500, RouteJson.error(String.valueOf(e)));
+			}
+			finally
+			{
+				inFlight.release();
+			}
+		}
+		finally
+		{
+			exchange.close();
+		}
+	}
+
+	private String path(HttpExchange exchange, Map<String, String> query) throws Exception
+	{
+		String from = required(query, "from");
+		String to = required(query, "to");
+		CostProfile profile = profile(query);
+		int departure = departure(query);
+		return scheduler.call(() -> pathJson(from, to, profile, departure));
+	}
+
+	private String town(HttpExchange exchange, Map<String, String> query)
+	{
+		String name = required(query, "name");
+		// the town and its neighbours are read from one version of the graph
+		GraphSnapshot current = manager.getGraph().snapshot();
+		Town town = current.getTown(Town.idOf(name));
+		List<String> adjacent = new ArrayList<>();
+		if (town != null)
+		{
+			for (Town t : current.getAdjacentTowns(town.getId()))
+			{
+				adjacent.add(t.getName());
+			}
+		}
+		return "{\"name\":" + RouteJson.quote(name) + ",\"exists\":" + (town != null) + ",\"adjacent\":" + RouteJson.array(adjacent) + "}";
+	}
+
+	private String towns(HttpExchange exchange, Map<String, String> query)
+	{
+		String prefix = query.getOrDefault("prefix", "");
+		int limit = Math.min(MAX_LIMIT, number(query.getOrDefault("limit", "20")));
+		return "{\"towns\":" + RouteJson.array(manager.completeTown(prefix, limit)) + "}";
+	}
+
+	private String batch(HttpExchange exchange, Map<String, String> query) throws Exception
+	{
+		if (!"POST".equals(exchange.getRequestMethod()))
+			throw new IllegalArgumentException("batch requires POST");
+		CostProfile profile = profile(query);
+		int departure = departure(query);
+
+		List<String[]> pairs = new ArrayList<>();
+		for (String line : body(exchange).split("\n"))
+		{
+			if (line.isBlank())
+				continue;
+
+			String[] pair = line.split(";", -1);
+			if (pair.length != 2 || pair[0].isBlank() || pair[1].isBlank())
+				throw new IllegalArgumentException("expected from;to but got " + line.strip());
+			pairs.add(new String[] { pair[0].strip(), pair[1].strip() });
+		}
+
+		// the pairs are searched in parallel, each one counts against the scheduler's limits
+		List<CompletableFuture<String>> searches = new ArrayList<>();
+		try
+		{
+			for (String[] pair : pairs)
+			{
+				searches.add(scheduler.submit(() -> pathJson(pair[0], pair[1], profile, departure)));
+			}
+
+			StringBuilder json = new StringBuilder("[");
+			for (CompletableFuture<String> search : searches)
+			{
+				if (json.length() > 1)
+					json.append(',');
+				json.append(search.join());
+			}
+			return json.append(']').toString();
+		}
+		catch (RejectedExecutionException | CompletionException e)
+		{
+			searches.forEach(search -> search.cancel(true));
+			throw e instanceof CompletionException && e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	private String distances(HttpExchange exchange, Map<String, String> query) throws Exception
+	{
+		String from = required(query, "from");
+		List<String> to = new ArrayList<>();
+		String names = "POST".equals(exchange.getRequestMethod()) ? body(exchange) : required(query, "to").replace(',', '\n');
+		for (String name : names.split("\n"))
+		{
+			if (!name.isBlank())
+				to.add(name.strip());
+		}
+
+		boolean reverse = "true".equals(query.get("reverse"));
+		int[] distances = scheduler.call(() -> reverse ? manager.getDistancesTo(from, to) : manager.getDistances(from, to));
+		return RouteJson.distances(from, distances);
+	}
+
+	/**
+	 * finds a path and describes it as a JSON object
+	 * @param from - name of the starting town
+	 * @param to - name of the destination town
+	 * @param profile - cost profile the path is chosen by
+	 * @param departure - second of the day to leave for the quickest path at that hour, or -1
+	 * @return JSON with the steps and total miles of the path
+	 */
+	private String pathJson(String from, String to, CostProfile profile, int departure)
+	{
+		Graph graph = manager.getGraph();
+		Town source = manager.getTown(from);
+		Town destination = manager.getTown(to);
+		ArrayList<Road> roads = departure < 0 ? graph.shortestRoads(source, destination, profile) : graph.quickestRoads(source, destination, departure);
+		int miles = 0;
+		for (Road road : roads)
+		{
+			miles += road.getWeight();
+		}
+		boolean found = source != null && destination != null && (!roads.isEmpty() || source.equals(destination));
+		List<String> steps = found ? Graph.describePath(source, roads) : new ArrayList<>();
+		return RouteJson.path(from, to, profile.getName(), found, miles, steps);
+	}
+
+	private static void send(HttpExchange exchange, int status, String json) throws IOException
+	{
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody())
+		{
+			out.write(bytes);
+		}
+	}
+
+	private static String body(HttpExchange exchange) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (InputStream in = exchange.getRequestBody())
+		{
+			in.transferTo(bytes);
+		}
+		return bytes.toString(StandardCharsets.UTF_8);
+	}
+
+	private static Map<String, String> query(HttpExchange exchange)
+	{
+		Map<String, String> query = new HashMap<>();
+		String raw = exchange.getRequestURI().getRawQuery();
+		if (raw == null)
+			return query;
+
+		for (String pair : raw.split("&"))
+		{
+			int equals = pair.indexOf('=');
+			if (equals > 0)
+				query.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+		}
+		return query;
+	}
+
+	private static String decode(String text)
+	{
+		return URLDecoder.decode(text, StandardCharsets.UTF_8);
+	}
+
+	private static String required(Map<String, String> query, String name)
+	{
+		String value = query.get(name);
+		if (value == null || value.isEmpty())
+			throw new IllegalArgumentException("missing parameter " + name);
+		return value;
+	}
+
+	private static CostProfile profile(Map<String, String> query)
+	{
+		String name = query.getOrDefault("profile", CostProfile.SHORTEST.getName());
+		CostProfile profile = CostProfile.forName(name);
+		if (profile == null)
+			throw new IllegalArgumentException("unknown profile " + name);
+		return profile;
+	}
+
+	// second of the day from HH:MM, -1 without a departure
+	private static int departure(Map<String, String> query)
+	{
+		String text = query.get("depart");
+		if (text == null)
+			return -1;
+
+		String[] parts = text.split(":");
+		int hours = parts.length == 2 ? number(parts[0]) : -1;
+		int minutes = parts.length == 2 ? number(parts[1]) : -1;
+		if (hours < 0 || hours > 23 || minutes < 0 || minutes > 59)
+			throw new IllegalArgumentException("depart must be HH:MM, not " + text);
+		return hours * 3600 + minutes * 60;
+	}
+
+	private static int number(String text)
+	{
+		try
+		{
+			return Integer.parseInt(text);
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException("not a number: " + text);
+		}
+	}
+
+	/**
+	 * Starts a server for a road file
+	 * @param args road file, then optionally the port
+	 * @throws IOException if the file cannot be read or the port cannot be bound
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 1)
+		{
+			System.err.println("usage: java RouteServer <road-file> [port]");
+			System.exit(2);
+		}
+		TownGraphManager manager = new TownGraphManager();
+		manager.populateTownGraph(new File(args[0]));
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+
+		RouteServer server = new RouteServer(manager, port, DEFAULT_MAX_IN_FLIGHT);
+		server.start();
+		System.out.println("Routing " + manager.allTowns().size() + " towns on http://localhost:" + server.getPort());
+	}
+}
@@ -0,0 +1,265 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs route searches with bounded concurrency
+ * Each search gets its own virtual thread when the JDK has them, but at most
+ * one search per core runs at a time and the rest wait their turn. Without
+ * virtual threads the searches wait in the queue of a pool of one platform
+ * thread per search allowed to run, rather than each holding a thread. Once
+ * maxQueued searches are already waiting, new ones are rejected at once with a
+ * RejectedExecutionException, so one burst of huge queries cannot pile up
+ * without bound and starve everything else.
+ * @author - Faith Fru Nchang
+ */
+public class RoutingScheduler implements AutoCloseable
+{
+	public static final int DEFAULT_MAX_QUEUED = 10_000;
+
+	private static final ThreadFactory WORKERS = task -> {
+		Thread thread = new Thread(task, "routing-worker");
+		thread.setDaemon(true);
+		return thread;
+	};
+
+	private final ExecutorService executor;
+	private final Semaphore running;
+	private final Semaphore admitted;
+	private final int concurrency;
+	private final int maxQueued;
+
+	/**
+	 * creates a scheduler running one search per core
+	 */
+	public RoutingScheduler()
+	{
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MAX_QUEUED);
+	}
+
+	/**
+	 * creates a scheduler
+	 * @param concurrency - most searches running at once
+	 * @param maxQueued - most searches waiting to run before new ones are rejected
+	 */
+	public RoutingScheduler(int concurrency, int maxQueued)
+	{
+		if (concurrency < 1 || maxQueued < 0)
+			throw new IllegalArgumentException();
+
+		this.concurrency = concurrency;
+		this.maxQueued = maxQueued;
+		running = new Semaphore(concurrency, true);
+		admitted = new Semaphore(concurrency + maxQueued);
+		executor = newSearchExecutor(concurrency);
+	}
+
+	/**
+	 * creates an executor that starts a virtual thread per task when the JDK has
+	 * them, and otherwise reuses daemon platform threads as needed
+	 * @return executor
+	 */
+	public static ExecutorService newThreadPerTaskExecutor()
+	{
+		ExecutorService executor = newVirtualThreadExecutor();
+		return executor != null ? executor : Executors.newCachedThreadPool(WORKERS);
+	}
+
+	// a virtual thread per search, or as many daemon platform threads as may run searches at once
+	private static ExecutorService newSearchExecutor(int concurrency)
+	{
+		ExecutorService executor = newVirtualThreadExecutor();
+		return executor != null ? executor : Executors.newFixedThreadPool(concurrency, WORKERS);
+	}
+
+	// null on JDKs without virtual threads
+	private static ExecutorService newVirtualThreadExecutor()
+	{
+		try
+		{
+			// looked up by name so the class still runs on JDKs without virtual threads
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * runs a search in the background, cancelling the future interrupts it
+	 * @param search - search to run
+	 * @return future for the result of the search
+	 * @throws RejectedExecutionException if too many searches are already waiting
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> search)
+	{
+		admit();
+		Task<T> task = new Task<>(search);
+		try
+		{
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e)
+		{
+			admitted.release();
+			throw e;
+		}
+		task.result.whenComplete((value, error) -> {
+			if (task.result.isCancelled())
+				task.cancel();
+		});
+		return task.result;
+	}
+
+	/**
+	 * runs a search on the calling thread once a slot is free
+	 * @param search - search to run
+	 * @return result of the search
+	 * @throws RejectedExecutionException if too many searches are already waiting
+	 * @throws Exception if the search fails
+	 */
+	public <T> T call(Callable<T> search) throws Exception
+	{
+		admit();
+		return runAdmitted(search);
+	}
+
+	/**
+	 * gets the most searches that run at once
+	 * @return concurrency
+	 */
+	public int getConcurrency()
+	{
+		return concurrency;
+	}
+
+	/**
+	 * gets the number of searches running or waiting
+	 * @return pending searches
+	 */
+	public int getPending()
+	{
+		return concurrency + maxQueued - admitted.availablePermits();
+	}
+
+	/**
+	 * stops accepting searches, interrupts the running ones and cancels the
+	 * futures of those that had not started
+	 */
+	@Override
+	public void close()
+	{
+		for (Runnable task : executor.shutdownNow())
+		{
+			if (task instanceof Task)
+				((Task<?>) task).result.cancel(false);
+		}
+	}
+
+	private void admit()
+	{
+		if (!admitted.tryAcquire())
+			throw new RejectedExecutionException("routing queue full: " + maxQueued + " searches already waiting");
+	}
+
+	// runs a search that already holds an admission permit, and gives the permit back,
+	// unless a submitted search was cancelled before it started
+	private <T> T runAdmitted(Callable<T> search) throws Exception
+	{
+		try
+		{
+			try
+			{
+				running.acquire();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new CancellationException("route search cancelled while waiting");
+			}
+			try
+			{
+				return search.call();
+			}
+			finally
+			{
+				running.release();
+			}
+		}
+		finally
+		{
+			admitted.release();
+		}
+	}
+
+	// a submitted search, whose permit is given back by whichever comes first of
+	// running it and cancelling it before it started
+	private final class Task<T> implements Runnable
+	{
+		private final Callable<T> search;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+		private final AtomicBoolean started = new AtomicBoolean();
+		// thread running the search, null before and after
+		private Thread worker;
+
+		private Task(Callable<T> search)
+		{
+			this.search = search;
+		}
+
+		@Override
+		public void run()
+		{
+			if (!started.compareAndSet(false, true))
+				return;
+
+			synchronized (this)
+			{
+				// cancelled between the two, too late for cancel to give the permit back
+				if (result.isDone())
+				{
+					admitted.release();
+					return;
+				}
+				worker = Thread.currentThread();
+			}
+			try
+			{
+				result.complete(runAdmitted(search));
+			}
+			catch (Throwable e)
+			{
+				result.completeExceptionally(e);
+			}
+			finally
+			{
+				synchronized (this)
+				{
+					worker = null;
+				}
+			}
+		}
+
+		// gives the permit back if the search never started, otherwise interrupts it
+		private void cancel()
+		{
+			if (started.compareAndSet(false, true))
+			{
+				admitted.release();
+				return;
+			}
+			synchronized (this)
+			{
+				if (worker != null)
+					worker.interrupt();
+			}
+		}
+	}
+}
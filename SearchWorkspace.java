@@ -0,0 +1,210 @@
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reusable arrays for one shortest path search at a time
+ * Distances and previous roads are indexed by town id. Instead of clearing them
+ * before each search, every entry carries the epoch of the search that wrote it
+ * and entries from older epochs read as unreached, so starting a search costs
+ * nothing however large the graph is. Workspaces are pooled rather than kept per
+ * thread, since searches run on short lived virtual threads that would each
+ * grow a workspace of their own and throw it away.
+ * @author - Faith Fru Nchang
+ */
+public class SearchWorkspace
+{
+	private static final ArrayBlockingQueue<SearchWorkspace> POOL =
+			new ArrayBlockingQueue<>(2 * Runtime.getRuntime().availableProcessors());
+
+	private int[] distances;
+	// distance plus the lower bound to the target, the queue order of a guided search
+	private int[] priorities;
+	private Road[] previousRoads;
+	// source each reached town was reached from, for searches with several sources
+	private int[] origins;
+	private int[] epochs;
+	private int epoch;
+	private final IndexedMinHeap heap;
+	private BucketQueue buckets;
+	private VertexQueue queue;
+
+	private SearchWorkspace()
+	{
+		distances = new int[0];
+		priorities = new int[0];
+		previousRoads = new Road[0];
+		origins = new int[0];
+		epochs = new int[0];
+		epoch = 0;
+		heap = new IndexedMinHeap(distances);
+		queue = heap;
+	}
+
+	/**
+	 * takes a workspace from the pool, or creates one if the pool is empty
+	 * @param capacity - one past the largest town id the search will see
+	 * @return workspace with every town unreached, give it back with release
+	 */
+	public static SearchWorkspace acquire(int capacity)
+	{
+		SearchWorkspace workspace = POOL.poll();
+		if (workspace == null)
+			workspace = new SearchWorkspace();
+		workspace.reset(capacity);
+		return workspace;
+	}
+
+	/**
+	 * returns the workspace to the pool, it must not be used afterwards
+	 */
+	public void release()
+	{
+		POOL.offer(this);
+	}
+
+	/**
+	 * gets the queue of towns waiting to be settled, ordered by distance
+	 * @return queue
+	 */
+	public VertexQueue getQueue()
+	{
+		return queue;
+	}
+
+	/**
+	 * checks if the current search has reached a town
+	 * @param id - town id
+	 * @return true if the town has a distance
+	 */
+	public boolean isReached(int id)
+	{
+		return epochs[id] == epoch;
+	}
+
+	/**
+	 * gets the distance the current search found to a town
+	 * @param id - town id
+	 * @return distance, or RouteSearch.UNREACHABLE
+	 */
+	public int getDistance(int id)
+	{
+		return epochs[id] == epoch ? distances[id] : RouteSearch.UNREACHABLE;
+	}
+
+	/**
+	 * gets the road the current search used to reach a town
+	 * @param id - town id
+	 * @return previous road, or null for a source or unreached town
+	 */
+	public Road getPreviousRoad(int id)
+	{
+		return epochs[id] == epoch ? previousRoads[id] : null;
+	}
+
+	/**
+	 * gets the source the current search reached a town from
+	 * @param id - town id
+	 * @return source id, or -1 for an unreached town
+	 */
+	public int getOrigin(int id)
+	{
+		return epochs[id] == epoch ? origins[id] : -1;
+	}
+
+	/**
+	 * records a shorter distance to a town and queues it to be settled
+	 * @param id - town id
+	 * @param distance - new distance
+	 * @param previousRoad - road used to reach the town, null for a source
+	 * @param origin - source the town was reached from
+	 */
+	public void reach(int id, int distance, Road previousRoad, int origin)
+	{
+		reach(id, distance, distance, previousRoad, origin);
+	}
+
+	/**
+	 * records a shorter distance to a town and queues it to be settled by priority,
+	 * which is only used when the workspace was reset for a guided search
+	 * @param id - town id
+	 * @param distance - new distance
+	 * @param priority - distance plus a lower bound on the distance left to the target
+	 * @param previousRoad - road used to reach the town, null for a source
+	 * @param origin - source the town was reached from
+	 */
+	public void reach(int id, int distance, int priority, Road previousRoad, int origin)
+	{
+		if (epochs[id] != epoch)
+		{
+			epochs[id] = epoch;
+			queue.forget(id);
+		}
+		distances[id] = distance;
+		priorities[id] = priority;
+		previousRoads[id] = previousRoad;
+		origins[id] = origin;
+		queue.insertOrDecrease(id);
+	}
+
+	/**
+	 * marks every town unreached and empties the queue, which is a binary heap
+	 * @param capacity - one past the largest town id the search will see
+	 */
+	public void reset(int capacity)
+	{
+		reset(capacity, -1);
+	}
+
+	/**
+	 * marks every town unreached and empties the queue, growing the arrays if the graph has grown
+	 * @param capacity - one past the largest town id the search will see
+	 * @param maxWeight - heaviest road weight to queue towns in a BucketQueue, or -1 for a binary heap
+	 */
+	public void reset(int capacity, int maxWeight)
+	{
+		reset(capacity, maxWeight, false);
+	}
+
+	/**
+	 * marks every town unreached and empties the queue, growing the arrays if the graph has grown
+	 * @param capacity - one past the largest town id the search will see
+	 * @param maxWeight - largest increase in priority along one road to queue towns in a
+	 * BucketQueue, or -1 for a binary heap
+	 * @param guided - true to order the queue by the priorities given to reach rather than by distance
+	 */
+	public void reset(int capacity, int maxWeight, boolean guided)
+	{
+		if (capacity > distances.length)
+		{
+			int grown = Math.max(capacity, distances.length * 2);
+			distances = new int[grown];
+			priorities = new int[grown];
+			previousRoads = new Road[grown];
+			origins = new int[grown];
+			epochs = new int[grown];
+			epoch = 0;
+		}
+		if (++epoch == Integer.MAX_VALUE)
+		{
+			// stale entries would match again once the epoch wraps, so clear them first
+			Arrays.fill(epochs, 0);
+			epoch = 1;
+		}
+		int[] keys = guided ? priorities : distances;
+		if (maxWeight < 0)
+		{
+			queue = heap;
+		}
+		else if (buckets == null)
+		{
+			buckets = new BucketQueue(keys, maxWeight);
+			queue = buckets;
+		}
+		else
+		{
+			buckets.setMaxWeight(maxWeight);
+			queue = buckets;
+		}
+		queue.reset(keys);
+	}
+}
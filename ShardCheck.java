@@ -0,0 +1,186 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks a ShardCoordinator against a single graph on one machine
+ * The road file is split into regions in a temporary directory, each region is
+ * served by a RouteServer in a JVM of its own on a free localhost port, and
+ * random town pairs are routed both by a coordinator over those servers and by
+ * a TownGraphManager holding the whole file. Every coordinator path must run
+ * from the source to the destination step by step and be exactly as long as
+ * the single graph's path, pairs in different regions included. Towns whose
+ * roads all lead out of their region are routed from and to on top of the
+ * random pairs, their region file holds nothing else of them. The servers
+ * and the directory are removed when the check ends.
+ *
+ * usage: java ShardCheck [-n queries] [-r regions] road-file
+ * @author - Faith Fru Nchang
+ */
+public class ShardCheck
+{
+	private static final int DEFAULT_QUERIES = 200;
+	private static final int DEFAULT_REGIONS = 4;
+	private static final long SEED = 7;
+
+	/**
+	 * Runs the check, exiting with status 1 if a path differs
+	 * @param args optionally -n and the number of queries and -r and the number of regions, then a road file
+	 * @throws Exception if a file cannot be read or written or a server cannot be started
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int queries = DEFAULT_QUERIES;
+		int regionCount = DEFAULT_REGIONS;
+		File file = null;
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-n") && i + 1 < args.length)
+				queries = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-r") && i + 1 < args.length)
+				regionCount = Integer.parseInt(args[++i]);
+			else
+				file = new File(args[i]);
+		}
+		if (file == null)
+		{
+			System.err.println("usage: java ShardCheck [-n queries] [-r regions] <road-file>");
+			System.exit(2);
+		}
+
+		TownGraphManager whole = new TownGraphManager();
+		whole.populateTownGraph(file);
+		File directory = Files.createTempDirectory("shard").toFile();
+		List<Process> servers = new ArrayList<>();
+		try
+		{
+			GraphPartition partition = GraphPartition.compute(whole.getGraph().snapshot(), regionCount);
+			partition.write(directory);
+			List<URI> urls = new ArrayList<>();
+			for (int r = 0; r < partition.getRegionCount(); r++)
+			{
+				Process server = new ProcessBuilder(new File(System.getProperty("java.home"), "bin/java").getPath(),
+						"-cp", System.getProperty("java.class.path"), "RouteServer", new File(directory, "region-" + r + ".txt").getPath(), "0")
+						.redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				servers.add(server);
+				urls.add(url(server));
+			}
+			System.out.println(file.getName() + ": " + partition.getRegionCount() + " regions on " + urls + ", "
+					+ partition.getCutSize() + " roads between them");
+
+			ShardCoordinator coordinator = new ShardCoordinator(directory, urls);
+			List<String> towns = whole.allTowns();
+			Random random = new Random(SEED);
+			int crossing = 0;
+			for (int i = 0; i < queries; i++)
+			{
+				String from = towns.get(random.nextInt(towns.size()));
+				String to = towns.get(random.nextInt(towns.size()));
+				check(whole, coordinator, from, to);
+				if (partition.getRegion(whole.getTown(from).getId()) != partition.getRegion(whole.getTown(to).getId()))
+					crossing++;
+			}
+			List<String> cutOff = cutOff(partition);
+			for (String town : cutOff)
+			{
+				String other = towns.get(random.nextInt(towns.size()));
+				check(whole, coordinator, town, other);
+				check(whole, coordinator, other, town);
+			}
+			System.out.println("shard ok, " + queries + " paths, " + crossing + " of them between regions, and "
+					+ 2 * cutOff.size() + " from or to " + cutOff.size() + " towns with every road between regions");
+		}
+		finally
+		{
+			for (Process server : servers)
+			{
+				server.destroy();
+			}
+			try (Stream<File> files = Files.walk(directory.toPath()).map(path -> path.toFile()))
+			{
+				files.sorted(Comparator.reverseOrder()).forEach(File::delete);
+			}
+		}
+	}
+
+	// base URL of a RouteServer, read from the line it prints once it is listening
+	private static URI url(Process server) throws IOException
+	{
+		BufferedReader output = new BufferedReader(new InputStreamReader(server.getInputStream(), StandardCharsets.UTF_8));
+		String line = output.readLine();
+		if (line == null || line.indexOf("http://") < 0)
+			throw new IOException("RouteServer did not start: " + line);
+		return URI.create(line.substring(line.indexOf("http://")));
+	}
+
+	// towns with roads, all of which lead to other regions
+	private static List<String> cutOff(GraphPartition partition)
+	{
+		List<String> towns = new ArrayList<>();
+		GraphSnapshot graph = partition.getSnapshot();
+		for (int id = 0; id < graph.getIdCapacity(); id++)
+		{
+			if (graph.getTown(id) == null || graph.getRoads(id).length == 0)
+				continue;
+
+			boolean inside = false;
+			for (Road road : graph.getRoads(id))
+			{
+				Town other = road.getSource().getId() == id ? road.getDestination() : road.getSource();
+				if (partition.getRegion(other.getId()) == partition.getRegion(id))
+					inside = true;
+			}
+			if (!inside)
+				towns.add(graph.getTown(id).getName());
+		}
+		return towns;
+	}
+
+	private static void check(TownGraphManager whole, ShardCoordinator coordinator, String from, String to) throws IOException, InterruptedException
+	{
+		check(from, to, whole.getPath(from, to), coordinator.getPath(from, to));
+	}
+
+	// the coordinator's path must be connected and as long as the single graph's
+	private static void check(String from, String to, List<String> expected, List<String> found)
+	{
+		if (miles(expected) != miles(found))
+			throw new IllegalStateException(from + " to " + to + ": single graph " + expected + " but coordinator " + found);
+
+		String at = from;
+		for (String step : found)
+		{
+			if (!step.startsWith(at + " via "))
+				throw new IllegalStateException(from + " to " + to + ": step " + step + " does not leave " + at);
+			// "town via road to town miles mi", town names may hold spaces
+			String rest = step.substring(0, step.lastIndexOf(' ', step.length() - 4));
+			at = rest.substring(rest.lastIndexOf(" to ") + 4);
+		}
+		if (!found.isEmpty() && !at.equals(to))
+			throw new IllegalStateException(from + " to " + to + ": path ends at " + at);
+	}
+
+	// total miles of a path, -1 for none
+	private static long miles(List<String> path)
+	{
+		if (path.isEmpty())
+			return -1;
+
+		long miles = 0;
+		for (String step : path)
+		{
+			String[] words = step.split(" ");
+			miles += Long.parseLong(words[words.length - 2]);
+		}
+		return miles;
+	}
+}
@@ -0,0 +1,325 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers shortest path queries over a graph split into regions, each served
+ * by its own RouteServer process
+ *
+ * A GraphPartition writes one road file per region plus the roads between
+ * regions. Each region file is served by a RouteServer, usually on another
+ * machine. The coordinator keeps only an overlay Graph over the boundary towns,
+ * the towns touching a road between regions. The overlay holds those roads and,
+ * for each region, a one-way shortcut road from each of its boundary towns to
+ * every other whose weight is their distance inside the region, fetched from
+ * the region's server when the coordinator starts. The shortcuts are one-way
+ * since one-way roads can make the two directions differ.
+ *
+ * A query asks the source's region for the distances from the source to its
+ * boundary towns, and the destination's region for the distances from its
+ * boundary towns to the destination. It then searches the overlay from every
+ * boundary town of the source region at once, and finally fetches the pieces of
+ * the path inside each region it passes through from that region's server.
+ *
+ * usage: java ShardCoordinator split road-file regions directory
+ *        java ShardCoordinator route directory region-0-url region-1-url ...
+ * @author - Faith Fru Nchang
+ */
+public class ShardCoordinator
+{
+	private final HttpClient client;
+	private final List<URI> servers;
+	// region of every town, from towns.txt
+	private final Map<String, Integer> regions;
+	// boundary towns of each region
+	private final List<List<String>> boundaries;
+	private final Graph overlay;
+
+	/**
+	 * reads the files written by GraphPartition.write and builds the overlay,
+	 * asking every region server for the distances between its boundary towns
+	 * @param directory - directory holding towns.txt and overlay.txt
+	 * @param servers - base URL of the RouteServer of each region, in region order
+	 * @throws IOException if a file cannot be read or a server cannot be reached
+	 * @throws InterruptedException if the thread is interrupted while waiting for a server
+	 */
+	public ShardCoordinator(File directory, List<URI> servers) throws IOException, InterruptedException
+	{
+		this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+		this.servers = servers;
+		this.regions = new HashMap<>();
+		this.boundaries = new ArrayList<>();
+		this.overlay = new Graph();
+
+		for (String line : Files.readAllLines(new File(directory, "towns.txt").toPath()))
+		{
+			String[] fields = line.split(";");
+			regions.put(fields[0], Integer.parseInt(fields[1]));
+		}
+		List<LinkedHashSet<String>> boundarySets = new ArrayList<>();
+		for (int r = 0; r < servers.size(); r++)
+		{
+			boundarySets.add(new LinkedHashSet<>());
+		}
+
+		// cheapest road between each pair of boundary towns, keyed by both names and the direction of one-way roads
+		Map<String, String[]> cheapest = new HashMap<>();
+		for (String line : Files.readAllLines(new File(directory, "overlay.txt").toPath()))
+		{
+			if (line.isBlank())
+				continue;
+
+			// road-name,miles[,seconds,toll];town-name;town-name[;oneway], the overlay routes by miles
+			String[] fields = line.strip().split(";");
+			String[] road = fields[0].split(",");
+			keep(cheapest, fields[1], fields[2], Integer.parseInt(road[1]), road[0], fields.length > 3 && fields[3].equals("oneway"));
+			boundarySets.get(region(fields[1])).add(fields[1]);
+			boundarySets.get(region(fields[2])).add(fields[2]);
+		}
+
+		for (int r = 0; r < servers.size(); r++)
+		{
+			List<String> boundary = new ArrayList<>(boundarySets.get(r));
+			boundaries.add(boundary);
+			for (int i = 0; i < boundary.size(); i++)
+			{
+				int[] distances = distances(r, boundary.get(i), boundary, false);
+				for (int j = 0; j < boundary.size(); j++)
+				{
+					if (j != i && distances[j] >= 0)
+						keep(cheapest, boundary.get(i), boundary.get(j), distances[j], "region " + r, true);
+				}
+			}
+		}
+
+		GraphBatch batch = new GraphBatch();
+		for (String[] road : cheapest.values())
+		{
+			if (road[4] != null)
+				batch.addOneWayRoad(road[0], road[1], Integer.parseInt(road[2]), road[3]);
+			else
+				batch.addRoad(road[0], road[1], Integer.parseInt(road[2]), road[3]);
+		}
+		overlay.apply(batch);
+	}
+
+	/**
+	 * gets the overlay graph of boundary towns
+	 * @return overlay
+	 */
+	public Graph getOverlay()
+	{
+		return overlay;
+	}
+
+	/**
+	 * finds the shortest path between two towns of any regions
+	 * @param from - name of the starting town
+	 * @param to - name of the destination town
+	 * @return the path in the format of TownGraphManager.getPath, empty if the towns
+	 * are unknown, the same town, or not connected
+	 * @throws IOException if a region server cannot be reached
+	 * @throws InterruptedException if the thread is interrupted while waiting for a server
+	 */
+	public ArrayList<String> getPath(String from, String to) throws IOException, InterruptedException
+	{
+		ArrayList<String> path = new ArrayList<>();
+		Integer start = regions.get(from);
+		Integer end = regions.get(to);
+		if (start == null || end == null || from.equals(to))
+			return path;
+
+		// a path inside one region is a candidate too, measured in the same request
+		List<String> exits = new ArrayList<>(boundaries.get(start));
+		if (start.equals(end))
+			exits.add(to);
+		int[] fromDistances = distances(start, from, exits, false);
+		int[] toDistances = distances(end, to, boundaries.get(end), true);
+		long best = start.equals(end) && fromDistances[exits.size() - 1] >= 0 ? fromDistances[exits.size() - 1] : Long.MAX_VALUE;
+
+		GraphSnapshot graph = overlay.snapshot();
+		List<String> entries = boundaries.get(start);
+		int[] sources = new int[entries.size()];
+		int[] sourceDistances = new int[entries.size()];
+		for (int i = 0; i < sources.length; i++)
+		{
+			// towns the source cannot reach are left out of the search
+			sources[i] = fromDistances[i] >= 0 ? Town.idOf(entries.get(i)) : -1;
+			sourceDistances[i] = fromDistances[i];
+		}
+
+		try (RouteSearch search = new RouteSearch(graph))
+		{
+			search.run(sources, sourceDistances, -1);
+
+			int exit = -1;
+			List<String> targets = boundaries.get(end);
+			for (int i = 0; i < targets.size(); i++)
+			{
+				int id = Town.idOf(targets.get(i));
+				int distance = search.getDistance(id);
+				if (toDistances[i] < 0 || distance == RouteSearch.UNREACHABLE)
+					continue;
+				if ((long) distance + toDistances[i] < best)
+				{
+					best = (long) distance + toDistances[i];
+					exit = id;
+				}
+			}
+
+			if (exit < 0)
+			{
+				if (best != Long.MAX_VALUE)
+					path.addAll(regionPath(start, from, to));
+				return path;
+			}
+
+			Town town = graph.getTown(search.getOrigin(exit));
+			path.addAll(regionPath(start, from, town.getName()));
+			for (Road road : search.getPath(exit))
+			{
+				Town next = graph.getTown(road.getOppositeId(town.getId()));
+				// a road between two towns of the same region is a shortcut through it
+				if (region(town.getName()) == region(next.getName()))
+					path.addAll(regionPath(region(town.getName()), town.getName(), next.getName()));
+				else
+					path.add(town.getName() + " via " + road.getName() + " to " + next.getName() + " " + road.getWeight() + " mi");
+				town = next;
+			}
+			path.addAll(regionPath(end, town.getName(), to));
+		}
+		return path;
+	}
+
+	private int region(String town)
+	{
+		Integer region = regions.get(town);
+		if (region == null)
+			throw new IllegalStateException(town + " is missing from towns.txt");
+		return region;
+	}
+
+	// keeps the road if it is cheaper than the one already kept for its towns, a one-way road only competes with those leading the same way
+	private static void keep(Map<String, String[]> cheapest, String a, String b, int weight, String name, boolean oneWay)
+	{
+		String key = oneWay ? a + ">" + b : a.compareTo(b) < 0 ? a + ";" + b : b + ";" + a;
+		String[] kept = cheapest.get(key);
+		if (kept == null || Integer.parseInt(kept[2]) > weight)
+			cheapest.put(key, new String[] { a, b, Integer.toString(weight), name, oneWay ? "oneway" : null });
+	}
+
+	/**
+	 * asks a region server for the distances from one town to several, or from several to one
+	 * @param reverse - true for the distances from each of the towns in to to the town from
+	 * @return miles to or from each town, -1 where the region has no path
+	 */
+	private int[] distances(int region, String from, List<String> to, boolean reverse) throws IOException, InterruptedException
+	{
+		if (to.isEmpty())
+			return new int[0];
+
+		String body = send(HttpRequest.newBuilder(servers.get(region).resolve("/distances?from=" + encode(from) + (reverse ? "&reverse=true" : "")))
+				.POST(HttpRequest.BodyPublishers.ofString(String.join("\n", to), StandardCharsets.UTF_8)));
+		int[] distances;
+		try
+		{
+			distances = RouteJson.readDistances(body);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(servers.get(region) + " sent a bad reply: " + e.getMessage(), e);
+		}
+		if (distances.length != to.size())
+			throw new IOException(servers.get(region) + " answered " + distances.length + " distances for " + to.size() + " towns");
+		return distances;
+	}
+
+	/**
+	 * asks a region server for the path between two of its towns
+	 * @return the steps, empty if the towns are the same
+	 */
+	private ArrayList<String> regionPath(int region, String from, String to) throws IOException, InterruptedException
+	{
+		if (from.equals(to))
+			return new ArrayList<>();
+
+		String body = send(HttpRequest.newBuilder(servers.get(region).resolve("/path?from=" + encode(from) + "&to=" + encode(to))).GET());
+		try
+		{
+			return RouteJson.readSteps(body);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(servers.get(region) + " sent a bad reply: " + e.getMessage(), e);
+		}
+	}
+
+	private String send(HttpRequest.Builder request) throws IOException, InterruptedException
+	{
+		HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+		if (response.statusCode() != 200)
+			throw new IOException(response.uri() + " answered " + response.statusCode() + ": " + response.body());
+		return response.body();
+	}
+
+	private static String encode(String text)
+	{
+		return URLEncoder.encode(text, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Splits a road file into regions, or routes "from;to" queries read from standard input
+	 * @param args split road-file regions directory, or route directory url...
+	 * @throws Exception if a file cannot be read or written or a server cannot be reached
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		if (args.length >= 4 && args[0].equals("split"))
+		{
+			TownGraphManager manager = new TownGraphManager();
+			manager.populateTownGraph(new File(args[1]));
+			GraphPartition partition = GraphPartition.compute(manager.getGraph().snapshot(), Integer.parseInt(args[2]));
+			File directory = new File(args[3]);
+			if (!directory.isDirectory() && !directory.mkdirs())
+				throw new FileNotFoundException(directory.toString());
+			partition.write(directory);
+			System.out.println(partition.getRegionCount() + " regions, " + partition.getCutSize() + " roads between them");
+		}
+		else if (args.length >= 3 && args[0].equals("route"))
+		{
+			List<URI> servers = new ArrayList<>();
+			for (int i = 2; i < args.length; i++)
+			{
+				servers.add(URI.create(args[i]));
+			}
+			ShardCoordinator coordinator = new ShardCoordinator(new File(args[1]), servers);
+			BufferedReader input = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+			for (String line = input.readLine(); line != null; line = input.readLine())
+			{
+				String[] pair = line.strip().split(";");
+				if (pair.length == 2)
+					System.out.println(coordinator.getPath(pair[0], pair[1]));
+			}
+		}
+		else
+		{
+			System.err.println("usage: java ShardCoordinator split <road-file> <regions> <directory>");
+			System.err.println("       java ShardCoordinator route <directory> <region-url>...");
+			System.exit(2);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the priority queues of RouteSearch on road files
+ * For each file the same random town pairs are searched with the binary heap
+ * and with the bucket queue, after a warm up round for each, and the time per
+ * search is printed together with a checksum of the distances found so the two
+ * queues can be seen to agree. With -l the pairs are also searched with A*
+ * over that many landmarks, on each queue.
+ *
+ * usage: java ShortestPathBenchmark [-n searches] [-l landmarks] road-file...
+ * @author - Faith Fru Nchang
+ */
+public class ShortestPathBenchmark
+{
+	private static final int DEFAULT_SEARCHES = 1000;
+	private static final long SEED = 42;
+
+	/**
+	 * Runs the benchmark
+	 * @param args optionally -n and the number of searches, then one or more road files
+	 * @throws FileNotFoundException if a road file cannot be read
+	 */
+	public static void main(String[] args) throws FileNotFoundException
+	{
+		int searches = DEFAULT_SEARCHES;
+		int landmarkCount = 0;
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < args.length; i++)
+		{
+			if (args[i].equals("-n") && i + 1 < args.length)
+				searches = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-l") && i + 1 < args.length)
+				landmarkCount = Integer.parseInt(args[++i]);
+			else
+				files.add(new File(args[i]));
+		}
+		if (files.isEmpty())
+		{
+			System.err.println("usage: java ShortestPathBenchmark [-n searches] [-l landmarks] <road-file>...");
+			System.exit(2);
+		}
+
+		for (File file : files)
+		{
+			TownGraphManager manager = new TownGraphManager();
+			manager.populateTownGraph(file);
+			GraphSnapshot graph = manager.getGraph().snapshot();
+			int[][] pairs = pairs(graph, searches);
+
+			System.out.println(file.getName() + ": " + graph.getVertexCount() + " towns, " + graph.getEdgeCount()
+					+ " roads, heaviest " + graph.getMaxWeight() + " mi, " + pairs.length + " searches");
+			if (graph.getMaxWeight() > RouteSearch.MAX_BUCKET_WEIGHT)
+				System.out.println("  roads over " + RouteSearch.MAX_BUCKET_WEIGHT + " mi, BUCKETS falls back to the binary heap");
+			LandmarkTable landmarks = null;
+			if (landmarkCount > 0)
+			{
+				long start = System.nanoTime();
+				landmarks = LandmarkTable.compute(graph, landmarkCount);
+				System.out.printf("  %d landmarks in %.1f ms%n", landmarks.size(), (System.nanoTime() - start) / 1e6);
+			}
+			for (RouteSearch.QueueType queueType : new RouteSearch.QueueType[] { RouteSearch.QueueType.BINARY_HEAP, RouteSearch.QueueType.BUCKETS })
+			{
+				report(queueType.toString(), graph, queueType, null, pairs);
+				if (landmarks != null)
+					report(queueType + "+ALT", graph, queueType, landmarks, pairs);
+			}
+		}
+	}
+
+	// random pairs of towns in the snapshot, the same for every queue
+	private static int[][] pairs(GraphSnapshot graph, int searches)
+	{
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 0; id < graph.getIdCapacity(); id++)
+		{
+			if (graph.getTown(id) != null)
+				ids.add(id);
+		}
+		if (ids.isEmpty())
+			return new int[0][];
+
+		Random random = new Random(SEED);
+		int[][] pairs = new int[searches][];
+		for (int i = 0; i < searches; i++)
+		{
+			pairs[i] = new int[] { ids.get(random.nextInt(ids.size())), ids.get(random.nextInt(ids.size())) };
+		}
+		return pairs;
+	}
+
+	// warms up, then times one round of searches
+	private static void report(String label, GraphSnapshot graph, RouteSearch.QueueType queueType, LandmarkTable landmarks, int[][] pairs)
+	{
+		run(graph, queueType, landmarks, pairs);
+		long start = System.nanoTime();
+		long checksum = run(graph, queueType, landmarks, pairs);
+		double micros = (System.nanoTime() - start) / 1000.0 / Math.max(1, pairs.length);
+		System.out.printf("  %-16s %10.1f us/search  checksum %d%n", label, micros, checksum);
+	}
+
+	// searches every pair and sums the distances of the ones that were reached
+	private static long run(GraphSnapshot graph, RouteSearch.QueueType queueType, LandmarkTable landmarks, int[][] pairs)
+	{
+		long checksum = 0;
+		for (int[] pair : pairs)
+		{
+			try (RouteSearch search = new RouteSearch(graph, queueType))
+			{
+				if (landmarks != null)
+					search.run(pair[0], pair[1], landmarks);
+				else
+					search.run(pair[0], pair[1]);
+				int distance = search.getDistance(pair[1]);
+				if (distance != RouteSearch.UNREACHABLE)
+					checksum += distance;
+			}
+		}
+		return checksum;
+	}
+}
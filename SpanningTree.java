@@ -0,0 +1,226 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * A minimum spanning tree of the roads of a GraphSnapshot, the cheapest set of
+ * roads by miles that keeps every town connected to every town it was connected
+ * to, with one tree per connected component when the graph is not connected
+ * Roads are taken as links between towns whichever way they may be driven, so
+ * one-way roads count like two-way ones, and roads from a town to itself are
+ * never taken.
+ *
+ * Kruskal's algorithm sorts the roads and joins towns in a ComponentIndex, which
+ * is quickest on one core. Boruvka's algorithm instead lets every tree pick its
+ * cheapest road out in each round, at most log2(towns) rounds of passes over
+ * the roads that split across the threads of a ForkJoinPool, which is what
+ * full state networks use. Ties are broken by the order the roads are read in,
+ * so both always find a tree of the same total miles, though not always the
+ * same roads.
+ * @author - Faith Fru Nchang
+ */
+public class SpanningTree
+{
+	// roads a snapshot needs before Graph spreads the work over every core
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	// marks a tree that has no road out in the current round
+	private static final long NONE = Long.MAX_VALUE;
+
+	private final Set<Road> roads;
+	private final long totalWeight;
+	private final int treeCount;
+
+	private SpanningTree(Set<Road> roads, long totalWeight, int treeCount)
+	{
+		this.roads = Collections.unmodifiableSet(roads);
+		this.totalWeight = totalWeight;
+		this.treeCount = treeCount;
+	}
+
+	/**
+	 * finds a minimum spanning tree with Kruskal's algorithm on the calling thread
+	 * @param graph - snapshot to span
+	 * @return the tree
+	 */
+	public static SpanningTree kruskal(GraphSnapshot graph)
+	{
+		Road[] sorted = roadsOf(graph);
+		// the natural order of roads is by miles
+		Arrays.sort(sorted);
+
+		ComponentIndex components = new ComponentIndex();
+		LinkedHashSet<Road> taken = new LinkedHashSet<>();
+		long total = 0;
+		for (Road road : sorted)
+		{
+			int first = road.getSource().getId();
+			int second = road.getDestination().getId();
+			if (components.connected(first, second))
+				continue;
+
+			components.union(first, second);
+			taken.add(road);
+			total += road.getWeight();
+			if (taken.size() == graph.getVertexCount() - 1)
+				break;
+		}
+		return new SpanningTree(taken, total, graph.getVertexCount() - taken.size());
+	}
+
+	/**
+	 * finds a minimum spanning tree with Boruvka's algorithm, scanning the roads in parallel
+	 * @param graph - snapshot to span
+	 * @param pool - threads to scan with, ForkJoinPool.commonPool() for every core
+	 * @return the tree
+	 */
+	public static SpanningTree boruvka(GraphSnapshot graph, ForkJoinPool pool)
+	{
+		// parallel streams started from a task of the pool run on that pool's threads
+		return pool.submit(() -> boruvka(graph)).join();
+	}
+
+	private static SpanningTree boruvka(GraphSnapshot graph)
+	{
+		Road[] edges = roadsOf(graph);
+		int[] from = new int[edges.length];
+		int[] to = new int[edges.length];
+		IntStream.range(0, edges.length).parallel().forEach(e -> {
+			from[e] = edges[e].getSource().getId();
+			to[e] = edges[e].getDestination().getId();
+		});
+
+		// tree of each town, every town pointing straight at its tree's root at the start of a round
+		int capacity = graph.getIdCapacity();
+		int[] trees = new int[capacity];
+		int[] sizes = new int[capacity];
+		Arrays.setAll(trees, id -> id);
+		Arrays.fill(sizes, 1);
+		// cheapest road out of each tree as miles in the high half and road index in the low half
+		AtomicLongArray cheapest = new AtomicLongArray(capacity);
+
+		LinkedHashSet<Road> taken = new LinkedHashSet<>();
+		long total = 0;
+		int[] live = IntStream.range(0, edges.length).toArray();
+		while (live.length > 0)
+		{
+			IntStream.range(0, capacity).parallel().forEach(id -> cheapest.set(id, NONE));
+			int[] scanned = live;
+			IntStream.range(0, scanned.length).parallel().forEach(i -> {
+				int e = scanned[i];
+				long key = (long) edges[e].getWeight() << 32 | e;
+				lower(cheapest, trees[from[e]], key);
+				lower(cheapest, trees[to[e]], key);
+			});
+
+			// joining trees touches one road per tree, few next to the scan
+			for (int id = 0; id < capacity; id++)
+			{
+				long key = cheapest.get(id);
+				if (key == NONE)
+					continue;
+
+				int e = (int) key;
+				int first = root(trees, from[e]);
+				int second = root(trees, to[e]);
+				if (first == second)
+					continue;
+
+				if (sizes[first] < sizes[second])
+				{
+					int swap = first;
+					first = second;
+					second = swap;
+				}
+				trees[second] = first;
+				sizes[first] += sizes[second];
+				taken.add(edges[e]);
+				total += edges[e].getWeight();
+			}
+
+			int[] roots = new int[capacity];
+			IntStream.range(0, capacity).parallel().forEach(id -> roots[id] = root(trees, id));
+			System.arraycopy(roots, 0, trees, 0, capacity);
+			// roads inside one tree can never be taken again
+			live = Arrays.stream(live).parallel().filter(e -> trees[from[e]] != trees[to[e]]).toArray();
+		}
+		return new SpanningTree(taken, total, graph.getVertexCount() - taken.size());
+	}
+
+	/**
+	 * gets the roads of the tree
+	 * @return an unmodifiable set of the roads
+	 */
+	public Set<Road> getRoads()
+	{
+		return roads;
+	}
+
+	/**
+	 * gets the sum of the miles of the roads of the tree
+	 * @return totalWeight
+	 */
+	public long getTotalWeight()
+	{
+		return totalWeight;
+	}
+
+	/**
+	 * gets the number of trees, one per connected component including towns with no roads
+	 * @return treeCount, 1 if the graph is connected
+	 */
+	public int getTreeCount()
+	{
+		return treeCount;
+	}
+
+	// every road of the snapshot once, read from the row of its lower numbered town
+	private static Road[] roadsOf(GraphSnapshot graph)
+	{
+		int capacity = graph.getIdCapacity();
+		int[] starts = new int[capacity + 1];
+		IntStream.range(0, capacity).parallel().forEach(id -> {
+			for (Road road : graph.getRoads(id))
+			{
+				if (road.getOppositeId(id) > id)
+					starts[id + 1]++;
+			}
+		});
+		Arrays.parallelPrefix(starts, Integer::sum);
+
+		Road[] roads = new Road[starts[capacity]];
+		IntStream.range(0, capacity).parallel().forEach(id -> {
+			int at = starts[id];
+			for (Road road : graph.getRoads(id))
+			{
+				if (road.getOppositeId(id) > id)
+					roads[at++] = road;
+			}
+		});
+		return roads;
+	}
+
+	// lowers a tree's cheapest road to key if key is cheaper
+	private static void lower(AtomicLongArray cheapest, int tree, long key)
+	{
+		long current = cheapest.get(tree);
+		while (key < current && !cheapest.compareAndSet(tree, current, key))
+		{
+			current = cheapest.get(tree);
+		}
+	}
+
+	// follows a town up to its tree's root without changing anything, so threads can share it
+	private static int root(int[] trees, int id)
+	{
+		while (trees[id] != id)
+		{
+			id = trees[id];
+		}
+		return id;
+	}
+}
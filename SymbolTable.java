@@ -0,0 +1,90 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns names to stable, dense int ids
+ * Each distinct name is stored once and every occurrence shares that copy,
+ * so towns and roads can hash and compare ids instead of strings
+ * @author - Faith Fru Nchang
+ */
+public class SymbolTable
+{
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final ConcurrentHashMap<String, Integer> ids;
+	private volatile String[] names;
+	private int size;
+
+	public SymbolTable()
+	{
+		ids = new ConcurrentHashMap<>();
+		names = new String[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * returns the id of the name, assigning the next free id if the name is new
+	 * @param name - name to intern
+	 * @return id of the name
+	 * @throws NullPointerException if name is null
+	 */
+	public int intern(String name)
+	{
+		Integer id = ids.get(name);
+		if (id != null)
+		{
+			return id;
+		}
+
+		synchronized (this)
+		{
+			id = ids.get(name);
+			if (id != null)
+			{
+				return id;
+			}
+
+			if (size == names.length)
+			{
+				String[] grown = new String[size * 2];
+				System.arraycopy(names, 0, grown, 0, size);
+				names = grown;
+			}
+			names[size] = name;
+			ids.put(name, size);
+			return size++;
+		}
+	}
+
+	/**
+	 * looks up the id of a name without interning it
+	 * @param name - name to look up
+	 * @return id of the name, or -1 if the name was never interned
+	 */
+	public int find(String name)
+	{
+		if (name == null)
+			return -1;
+
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * gets the shared copy of the name with the given id
+	 * @param id - id returned by intern
+	 * @return the interned name
+	 */
+	public String name(int id)
+	{
+		return names[id];
+	}
+
+	/**
+	 * gets the number of interned names
+	 * @return number of names, which is also one past the largest id
+	 */
+	public synchronized int size()
+	{
+		return size;
+	}
+}
@@ -9,25 +9,61 @@ import java.util.Set;
  */
 public class Town implements Comparable<Town>
 {
+	// shared by every town so equal names always map to the same id
+	private static final SymbolTable NAMES = new SymbolTable();
+	
+	private int id;
 	private String townName;
-	private ArrayList<Town> adjacentTowns;
+	// replaced rather than changed in place, so a list handed out is never modified;
+	// not kept up to date by Graph, whose snapshots answer adjacency from their roads
+	private volatile ArrayList<Town> adjacentTowns;
 	private Town previousTown;
 	
 	
 	public Town(String name)
 	{
-		townName = name;
+		id = NAMES.intern(name);
+		townName = NAMES.name(id);
 		adjacentTowns = new ArrayList<>();
 		previousTown = null;
 	}
 	
 	public Town(Town newTown)
 	{
+		this.id = newTown.id;
 		this.townName = newTown.townName;
 		this.adjacentTowns = newTown.adjacentTowns;
 		previousTown = newTown.previousTown;
 		
 	}
+	/**
+	 * looks up the id of a town name without interning it
+	 * @param name - name of town
+	 * @return id of the name, or -1 if no town was ever created with that name
+	 */
+	public static int idOf(String name)
+	{
+		return NAMES.find(name);
+	}
+	
+	/**
+	 * gets the number of town ids handed out so far
+	 * @return one past the largest town id
+	 */
+	public static int idCount()
+	{
+		return NAMES.size();
+	}
+	
+	/**
+	 * gets the interned id of the town name
+	 * @return - id
+	 */
+	public int getId()
+	{
+		return this.id;
+	}
+	
 	/**
 	 * gets the town name
 	 * @return - townName
@@ -43,11 +79,13 @@ public class Town implements Comparable<Town>
 	 */
 	public void setTownName(String name)
 	{
-		this.townName = name;
+		this.id = NAMES.intern(name);
+		this.townName = NAMES.name(id);
 	}
 	
 	/**
-	 * gets the neighboring towns
+	 * gets the neighboring towns set on this town, a Graph does not keep them
+	 * here since its towns are shared by every version, use Graph.adjacentTowns
 	 * @return adjacentTowns
 	 */
 	public ArrayList<Town> getAdjacentTowns()
@@ -59,7 +97,7 @@ public class Town implements Comparable<Town>
 	 * updates the adjacent towns 
 	 * @param towns - ajacentTowns
 	 */
-	public void setAjacentTowns(ArrayList<Town> towns)
+	public synchronized void setAjacentTowns(ArrayList<Town> towns)
 	{
 		this.adjacentTowns = towns;
 	}
@@ -70,7 +108,7 @@ public class Town implements Comparable<Town>
 	 */
 	@Override
 	public int compareTo(Town otherTown) {
-		if (this.townName.equals(otherTown.townName))
+		if (this.id == otherTown.id)
 		{
 			return 0;
 		}
@@ -93,33 +131,38 @@ public class Town implements Comparable<Town>
 		return townName;
 	}
 	/**
-	 * checks if two towns are equal
+	 * checks if two towns are equal, names are interned so comparing ids is enough
 	 * @param object
 	 * @return
 	 */
 	@Override
 	public boolean equals(Object obj)
 	{
-		Town town = (Town) obj;
-		return this.townName.compareTo(town.townName) ==0;
+		if (!(obj instanceof Town))
+			return false;
+		
+		return this.id == ((Town) obj).id;
 	}
 	
 	/**
-	 * computes the hash code of the town based on the town name
+	 * computes the hash code of the town based on the interned id of the town name
 	 * @return hashCode of town
 	 */
 	@Override
 	public int hashCode()
 	{
-		return this.townName.hashCode();
+		return this.id;
 	}
 	
 	
-	public void addAjacentTown(Town town)
+	public synchronized void addAjacentTown(Town town)
 	{
 		if (!containsTown(town) && town !=null)
 		{
-			adjacentTowns.add(town);
+			ArrayList<Town> towns = new ArrayList<>(adjacentTowns.size() + 1);
+			towns.addAll(adjacentTowns);
+			towns.add(town);
+			adjacentTowns = towns;
 		}
 	}
 
@@ -146,8 +189,10 @@ public class Town implements Comparable<Town>
 		return this.previousTown;
 	}
 	
-	public void removeAdjacentTown(Town t)
+	public synchronized void removeAdjacentTown(Town t)
 	{
-		adjacentTowns.remove(t);
+		ArrayList<Town> towns = new ArrayList<>(adjacentTowns);
+		if (towns.remove(t))
+			adjacentTowns = towns;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
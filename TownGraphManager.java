@@ -1,9 +1,24 @@
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
 
 
 /**
@@ -14,8 +29,28 @@ import java.util.Set;
 public class TownGraphManager implements TownGraphManagerInterface
 {	
 	private Graph townGraph = new Graph();
-
 	
+	// town names in sorted order for prefix lookups
+	private NameIndex townIndex = new NameIndex();
+	// road names in sorted order, listed once per road
+	private NameIndex roadIndex = new NameIndex();
+	// durable record of edits, null until openChangeLog, only replaced while every stripe is held
+	private volatile ChangeLog changeLog;
+	// claimed by the one writer that compacts the log once it has grown too long
+	private final AtomicBoolean compacting = new AtomicBoolean();
+	
+	// passed to edit as a town id to hold every stripe
+	private static final int ALL_TOWNS = -1;
+	
+	
+	/**
+	 * gets the graph the manager populates
+	 * @return townGraph
+	 */
+	public Graph getGraph()
+	{
+		return townGraph;
+	}
 	
 	/**
 	 * Adds a road with 2 towns and a road name
@@ -26,14 +61,81 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public boolean addRoad(String town1, String town2, int weight, String roadName)
 	{
-		if (town1 == null || town2 == null)
+		return addRoad(town1, town2, weight, roadName, false, -1, 0);
+	}
+	
+	/**
+	 * Adds a one-way road that can only be travelled from town 1 to town 2
+	 * @param from name of the town the road leads from
+	 * @param to name of the town the road leads to
+	 * @param roadName name of road
+	 * @return true if the road was added successfully
+	 */
+	public boolean addOneWayRoad(String from, String to, int weight, String roadName)
+	{
+		return addRoad(from, to, weight, roadName, true, -1, 0);
+	}
+	
+	/**
+	 * Adds a road with its travel time and toll, which the fastest and toll-free
+	 * cost profiles route by
+	 * @param town1 name of town 1, the town the road leads from if it is one-way
+	 * @param town2 name of town 2
+	 * @param weight distance in miles
+	 * @param roadName name of road
+	 * @param oneWay true if the road only leads from town 1 to town 2
+	 * @param seconds travel time, or -1 for the time at Road.DEFAULT_SPEED
+	 * @param toll toll in cents
+	 * @return true if the road was added successfully
+	 */
+	public boolean addRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return false;
+		
+		return edit(t1.getId(), t2.getId(),
+				() -> canInsertRoad(town1, town2, weight, roadName, oneWay, seconds, toll),
+				log -> log.addRoad(town1, town2, weight, roadName, oneWay, seconds, toll),
+				() -> insertRoad(town1, town2, weight, roadName, oneWay, seconds, toll));
+	}
+	
+	// whether insertRoad would add the road, without adding it
+	private boolean canInsertRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null || toll < 0)
+			return false;
+		// no road has a name never interned, and it is interned only once the road is added
+		if (roadName != null && Road.idOf(roadName) < 0)
+			return true;
+		
+		try
+		{
+			return !townGraph.edgeSet().contains(new Road(t1, t2, weight, roadName, oneWay, seconds, toll));
+		}
+		catch (Exception e)
+		{
+			return false;
+		}
+	}
+	
+	private boolean insertRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
 			return false;
 		
-		Town t1 = new Town(town1);
-		Town t2 = new Town(town2);
 		try
 		{
-			townGraph.addEdge(t1, t2, weight, roadName);
+			Road road = townGraph.addEdge(t1, t2, weight, roadName, oneWay, seconds, toll);
+			if (road == null)
+				return false;
+			
+			roadIndex.add(road.getName());
 			return true;
 		}
 		catch (Exception e)
@@ -44,36 +146,197 @@ public class TownGraphManager implements TownGraphManagerInterface
 	
 	}
 	
+	/**
+	 * Gives a road a new distance in place, without removing and adding it again
+	 * @param town1 name of town 1 (lastname, firstname)
+	 * @param town2 name of town 2 (lastname, firstname)
+	 * @param roadName name of road
+	 * @param weight new distance
+	 * @return true if the road was found and changed
+	 * @throws IllegalArgumentException if the road's travel time profile would fall faster
+	 * than the clock on it at the new distance
+	 */
+	public boolean reweightRoad(String town1, String town2, String roadName, int weight)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return false;
+		
+		return edit(t1.getId(), t2.getId(),
+				() -> {
+					Road road = findRoad(town1, town2, roadName);
+					if (weight < 0 || road == null)
+						return false;
+					// thrown before the edit is logged
+					Graph.checkTravelTimeProfile(road.withWeight(weight), road.getTravelTimeProfile());
+					return true;
+				},
+				log -> log.reweightRoad(town1, town2, roadName, weight),
+				() -> changeWeight(town1, town2, roadName, weight));
+	}
+	
+	private boolean changeWeight(String town1, String town2, String roadName, int weight)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return false;
+		
+		return townGraph.reweightEdge(t1, t2, roadName, weight) != null;
+	}
+	
+	/**
+	 * Stores a travel time profile that roads can then follow, identical profiles share one id
+	 * @param seconds second of the day of each breakpoint, increasing
+	 * @param factors travel time at each breakpoint in thousandths of a road's own time
+	 * @return id of the profile
+	 * @throws IllegalArgumentException if the breakpoints are not a valid profile
+	 */
+	public int addTravelTimeProfile(int[] seconds, int[] factors)
+	{
+		return TravelTimeProfiles.SHARED.register(seconds, factors);
+	}
+	
+	/**
+	 * Makes a road's travel time follow a profile over the day, used by getQuickestPath
+	 * @param town1 name of town 1 (lastname, firstname)
+	 * @param town2 name of town 2 (lastname, firstname)
+	 * @param roadName name of road
+	 * @param profile id from addTravelTimeProfile, or -1 for the same time all day
+	 * @return true if the road was found and changed
+	 * @throws IllegalArgumentException if the profile is unknown or falls faster than the clock on the road
+	 */
+	public boolean setTravelTimeProfile(String town1, String town2, String roadName, int profile)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return false;
+		
+		return edit(t1.getId(), t2.getId(),
+				() -> {
+					Road road = findRoad(town1, town2, roadName);
+					if (road == null)
+						return false;
+					// thrown before the edit is logged
+					Graph.checkTravelTimeProfile(road, profile);
+					return true;
+				},
+				log -> log.setTravelTimeProfile(town1, town2, roadName, profile),
+				() -> changeTravelTimeProfile(town1, town2, roadName, profile));
+	}
+	
+	private boolean changeTravelTimeProfile(String town1, String town2, String roadName, int profile)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return false;
+		
+		return townGraph.setTravelTimeProfile(t1, t2, roadName, profile) != null;
+	}
+	
+	/**
+	 * Gives many roads new distances in one change, only the batch's reweights are used.
+	 * Roads whose travel time profile could not keep the new distance are left alone.
+	 * @param batch roads and their new distances, afterwards it holds the roads that changed
+	 * @return number of roads changed
+	 */
+	public int reweightRoads(GraphBatch batch)
+	{
+		boolean[] held = townGraph.lockRoads(batch.getReweights());
+		ChangeLog log;
+		int changed;
+		try
+		{
+			log = changeLog;
+			if (log != null)
+			{
+				long sequence = 0;
+				for (Road road : batch.getReweights())
+				{
+					Road old = findRoad(road.getSource().getName(), road.getDestination().getName(), road.getName());
+					if (road.getWeight() >= 0 && old != null && Graph.keepsProfile(old, road.getWeight()))
+						sequence = log.reweightRoad(road.getSource().getName(), road.getDestination().getName(), road.getName(), road.getWeight());
+				}
+				commit(log, sequence);
+			}
+			changed = townGraph.reweightEdges(batch);
+		}
+		finally
+		{
+			townGraph.unlockStripes(held);
+		}
+		if (log != null)
+			compactIfNeeded(log);
+		return changed;
+	}
+	
 	/**
 	 * Returns the name of the road that both towns are connected through
 	 * @param town1 name of town 1 (lastname, firstname)
 	 * @param town2 name of town 2 (lastname, firstname)
-	 * @return name of road if town 1 and town2 are in the same road, returns null if not
+	 * @return name of road if town 1 and town2 are in the same road, the shortest one if
+	 * several roads join them, returns null if not
 	 */
 	public String getRoad(String town1, String town2)
 	{
-		if (town1 == null || town2 == null)
-			return null;
-		
-		Town t1 = new Town(town1);
-		Town t2 = new Town(town2);
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
 		
 		Road road = townGraph.getEdge(t1, t2);
+		if (road == null)
+			return null;
+		
 		return road.getName();
 	}
 	
+	/**
+	 * Returns the names of every road between two towns, several roads may join the same towns
+	 * @param town1 name of town 1 (lastname, firstname)
+	 * @param town2 name of town 2 (lastname, firstname)
+	 * @return names of the roads joining the towns, shortest first, empty if there are none
+	 */
+	public ArrayList<String> getRoads(String town1, String town2)
+	{
+		ArrayList<String> names = new ArrayList<String>();
+		for (Road road : townGraph.getAllEdges(townGraph.getVertex(town1), townGraph.getVertex(town2)))
+		{
+			names.add(road.getName());
+		}
+		return names;
+	}
+	
 	/**
 	 * Adds a town to the graph
 	 * @param v the town's name  (lastname, firstname)
 	 * @return true if the town was successfully added, false if not
 	 */
 	public boolean addTown(String v)
+	{
+		if (v == null || townGraph.getVertex(v) != null)
+			return false;
+		
+		// interned only now the town is about to be added, to find its stripe
+		int id = new Town(v).getId();
+		return edit(id, id,
+				() -> townGraph.getVertex(v) == null,
+				log -> log.addTown(v),
+				() -> insertTown(v));
+	}
+	
+	private boolean insertTown(String v)
 	{
 		if (v == null)
 			return false;
 		
 		Town town = new Town(v);
-		return townGraph.addVertex(town);
+		if (!townGraph.addVertex(town))
+			return false;
+		
+		townIndex.add(town.getName());
+		return true;
 	}
 	
 	/**
@@ -83,21 +346,7 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public Town getTown(String name)
 	{
-		if (name == null)
-			return null;
-		
-		
-		Set<Town> towns = townGraph.vertexSet();
-		
-		for (Town t: towns)
-		{
-			if (t.getName().equals(name))
-			{
-				return t;
-			}
-		}
-		
-		return null;
+		return townGraph.getVertex(name);
 	}
 	
 	/**
@@ -107,11 +356,7 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public boolean containsTown(String v)
 	{
-		if (v == null)
-			return false; 
-		
-		Town t = new Town(v);
-		return  townGraph.containsVertex(t);
+		return townGraph.getVertex(v) != null;
 	}
 	
 	/**
@@ -122,33 +367,42 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public boolean containsRoadConnection(String town1, String town2)
 	{
-		if (town1 == null || town2 == null)
-			return false;
-		
-		Town t1 = new Town(town1);
-		Town t2 = new Town(town2);
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
 		
 		return townGraph.containsEdge(t1, t2);
 	}
 	
 	/**
 	 * Creates an arraylist of all road titles in sorted order by road name
+	 * Roads that share a name are each listed, like roadStream and roadPage.
 	 * @return an arraylist of all road titles in sorted order by road name
 	 */
 	public ArrayList<String> allRoads()
 	{
-		Set<Road> roadSet = townGraph.edgeSet();
-		ArrayList<String> roads = new ArrayList<>();
-		
-		for (Road road: roadSet)
-		{
-			roads.add(road.getName());
-		}
-		
-		Collections.sort(roads); 
-		
-		return roads;
-		
+		return roadIndex.list();
+	}
+	
+	/**
+	 * Gets the next page of road names in sorted order, one per road like allRoads,
+	 * so reading every page in turn lists the same roads as allRoads. Roads sharing
+	 * a name are never split across pages, so a page may stop short of limit.
+	 * @param after last road name of the previous page, or null for the first page
+	 * @param limit most road names to return, unless more roads than that share one name
+	 * @return an arraylist of the names of the roads whose names sort after the given name
+	 */
+	public ArrayList<String> roadPage(String after, int limit)
+	{
+		return roadIndex.page(after, limit);
+	}
+	
+	/**
+	 * Streams all road titles in sorted order by road name without copying them
+	 * @return a sorted stream of road names, one per road
+	 */
+	public Stream<String> roadStream()
+	{
+		return roadIndex.stream();
 	}
 	
 	/**
@@ -160,26 +414,33 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public boolean deleteRoadConnection(String town1, String town2, String road)
 	{
-		if (town1 == null || town2 == null || road == null)
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null || road == null)
 			return false;
 		
-		Town t1 = new Town(town1);
-		Town t2 = new Town(town2);
-		Road otherRoad = null;
-		for (Road r: townGraph.edgeSet())
-		{
-			String edge = getRoad(town1, town2);
-			if (edge.equals(r.getName()))
-			{
-				otherRoad = r;
-				
-			}
-		}
+		return edit(t1.getId(), t2.getId(),
+				() -> findRoad(town1, town2, road) != null,
+				log -> log.deleteRoad(town1, town2, road),
+				() -> removeRoad(town1, town2, road));
+	}
+	
+	private boolean removeRoad(String town1, String town2, String road)
+	{
+		if (road == null)
+			return false;
 		
-		Road removeRoad = townGraph.removeEdge(t1, t2, otherRoad.getWeight(), road);
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return false;
+		
+		// the road is picked by name alone, whatever its weight and whatever other roads join the towns
+		Road removeRoad = townGraph.removeEdge(t1, t2, -1, road);
 		if (removeRoad == null)
 			return false;
 		
+		roadIndex.remove(removeRoad.getName());
 		return true;
 	}
 	
@@ -190,12 +451,30 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public boolean deleteTown(String v)
 	{
-		if (v == null)
+		// removing a town takes every stripe, which may not be locked after a single one
+		return edit(ALL_TOWNS, ALL_TOWNS,
+				() -> townGraph.getVertex(v) != null,
+				log -> log.deleteTown(v),
+				() -> removeTown(v));
+	}
+	
+	private boolean removeTown(String v)
+	{
+		Town town = townGraph.getVertex(v);
+		if (town == null)
 			return false;
 		
-		Town town = new Town(v);
+		// the roads touching the town are removed along with it
+		Set<Road> roads = townGraph.edgesOf(town);
+		if (!townGraph.removeVertex(town))
+			return false;
 		
-		return townGraph.removeVertex(town);
+		townIndex.remove(town.getName());
+		for (Road road : roads)
+		{
+			roadIndex.remove(road.getName());
+		}
+		return true;
 	}
 	
 	/**
@@ -204,17 +483,39 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public ArrayList<String> allTowns()
 	{
-		Set<Town> townSet = townGraph.vertexSet();
-		ArrayList<String> towns = new ArrayList<>();
-		for (Town t: townSet)
-		{
-			towns.add(t.getName());
-		}
-		
-		Collections.sort(towns);
-		return towns;
+		return townIndex.list();
+	}
+	
+	/**
+	 * Gets the next page of towns in alphabetical order
+	 * @param after last town name of the previous page, or null for the first page
+	 * @param limit most town names to return
+	 * @return an arraylist of up to limit town names that sort after the given name
+	 */
+	public ArrayList<String> townPage(String after, int limit)
+	{
+		return townIndex.page(after, limit);
 	}
 	
+	/**
+	 * Streams all towns in alphabetical order without copying them
+	 * @return a sorted stream of town names
+	 */
+	public Stream<String> townStream()
+	{
+		return townIndex.stream();
+	}
+	
+	/**
+	 * Finds the town names that start with the typed prefix, in alphabetical order
+	 * @param prefix beginning of the town name
+	 * @param limit most names to return
+	 * @return an arraylist of at most limit town names starting with prefix
+	 */
+	public ArrayList<String> completeTown(String prefix, int limit)
+	{
+		return townIndex.complete(prefix, limit);
+	}
 	
 	/**
 	 * Returns the shortest path from town 1 to town 2
@@ -225,40 +526,783 @@ public class TownGraphManager implements TownGraphManagerInterface
 	 */
 	public ArrayList<String> getPath(String town1, String town2)
 	{
-		return townGraph.shortestPath(new Town(town1), new Town(town2));
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return new ArrayList<String>();
+		
+		return townGraph.shortestPath(t1, t2);
+	}
+	
+	/**
+	 * Finds the cheapest path between two towns with the roads costed by a profile
+	 * @param town1 name of town 1 (lastname, firstname)
+	 * @param town2 name of town 2 (lastname, firstname)
+	 * @param profile cost of each road, such as CostProfile.FASTEST or CostProfile.TOLL_FREE
+	 * @return the roads of the path in the format of getPath, empty if there is none
+	 */
+	public ArrayList<String> getPath(String town1, String town2, CostProfile profile)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return new ArrayList<String>();
+		
+		return townGraph.shortestPath(t1, t2, profile);
+	}
+	
+	/**
+	 * Finds the quickest path between two towns when leaving at a time of day, with
+	 * roads that follow a travel time profile taking their time at that hour
+	 * @param town1 name of town 1 (lastname, firstname)
+	 * @param town2 name of town 2 (lastname, firstname)
+	 * @param departure second of the day town 1 is left
+	 * @return the roads of the path in the format of getPath, empty if there is none
+	 */
+	public ArrayList<String> getQuickestPath(String town1, String town2, int departure)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null)
+			return new ArrayList<String>();
+		
+		return townGraph.quickestPath(t1, t2, departure);
+	}
+	
+	/**
+	 * Returns the travel time from a town to each of several towns when leaving at a
+	 * time of day, found with one search
+	 * @param town name of the starting town
+	 * @param others names of the towns to measure to
+	 * @param departure second of the day the town is left
+	 * @return seconds to each town in order, -1 for towns that are unknown or cannot be reached
+	 */
+	public int[] getTravelTimes(String town, List<String> others, int departure)
+	{
+		int[] times = new int[others.size()];
+		Town t = townGraph.getVertex(town);
+		if (t == null)
+		{
+			Arrays.fill(times, -1);
+			return times;
+		}
+		
+		int[] found = townGraph.travelTimes(t, targets(others), departure);
+		for (int i = 0; i < found.length; i++)
+		{
+			times[i] = found[i] == RouteSearch.UNREACHABLE ? -1 : found[i];
+		}
+		return times;
+	}
+	
+	/**
+	 * Returns the shortest distance from a town to each of several towns, found with one search
+	 * @param town name of the starting town
+	 * @param others names of the towns to measure to
+	 * @return miles to each town in order, -1 for towns that are unknown or cannot be reached
+	 */
+	public int[] getDistances(String town, List<String> others)
+	{
+		return getDistances(town, others, false);
+	}
+	
+	/**
+	 * Returns the shortest distance from each of several towns to one town, found with one
+	 * search, which differs from getDistances when roads are one-way
+	 * @param town name of the destination town
+	 * @param others names of the towns to measure from
+	 * @return miles from each town in order, -1 for towns that are unknown or cannot reach it
+	 */
+	public int[] getDistancesTo(String town, List<String> others)
+	{
+		return getDistances(town, others, true);
+	}
+	
+	/**
+	 * Returns the shortest distance from every source to every target, with one
+	 * search per town on the smaller side instead of one per pair
+	 * @param sources names of the towns to measure from
+	 * @param targets names of the towns to measure to
+	 * @return miles from the s-th source to the t-th target at [s][t], -1 where a
+	 * town is unknown or there is no path
+	 */
+	public int[][] getDistanceTable(List<String> sources, List<String> targets)
+	{
+		return getDistanceTable(sources, targets, CostProfile.SHORTEST);
+	}
+	
+	/**
+	 * Returns the cost of the cheapest path from every source to every target like
+	 * getDistanceTable, with the roads costed by a profile
+	 * @param sources names of the towns to measure from
+	 * @param targets names of the towns to measure to
+	 * @param profile cost of each road
+	 * @return cost from the s-th source to the t-th target at [s][t], -1 where a
+	 * town is unknown or there is no path
+	 */
+	public int[][] getDistanceTable(List<String> sources, List<String> targets, CostProfile profile)
+	{
+		int[][] table = townGraph.distanceTable(targets(sources), targets(targets), profile);
+		for (int[] row : table)
+		{
+			for (int i = 0; i < row.length; i++)
+			{
+				if (row[i] == RouteSearch.UNREACHABLE)
+					row[i] = -1;
+			}
+		}
+		return table;
+	}
+	
+	/**
+	 * Writes the table getDistanceTable returns to a RouteMatrixWriter file as each
+	 * search finishes, so the table is never held in memory
+	 * @param file file to write
+	 * @param sources names of the towns to measure from
+	 * @param targets names of the towns to measure to
+	 * @param profile cost of each road
+	 * @param delta true to delta encode the costs, which makes the file smaller
+	 * but means a row or column can only be read from its start
+	 * @throws IOException if the file cannot be written
+	 */
+	public void exportDistanceTable(File file, List<String> sources, List<String> targets, CostProfile profile, boolean delta) throws IOException
+	{
+		// the same choice distanceTable makes, one search per town on the smaller side
+		boolean columns = sources.size() > targets.size();
+		try (RouteMatrixWriter writer = new RouteMatrixWriter(file, sources, targets, columns, delta))
+		{
+			townGraph.distanceVectors(targets(sources), targets(targets), profile, columns, vector -> {
+				try
+				{
+					writer.writeVector(vector);
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+	
+	/**
+	 * Writes the cheapest path between each pair of towns to a RoutePathWriter
+	 * file, with one search per source town for all of its pairs
+	 * @param file file to write
+	 * @param pairs source and target name of each path, paths of pairs from the
+	 * same source are written together in the order that source first appears
+	 * @param profile cost of each road
+	 * @param delta true to delta encode the columns
+	 * @throws IOException if the file cannot be written
+	 */
+	public void exportPaths(File file, List<String[]> pairs, CostProfile profile, boolean delta) throws IOException
+	{
+		LinkedHashMap<String, ArrayList<String>> bySource = new LinkedHashMap<String, ArrayList<String>>();
+		for (String[] pair : pairs)
+		{
+			bySource.computeIfAbsent(pair[0], name -> new ArrayList<String>()).add(pair[1]);
+		}
+		
+		try (RoutePathWriter writer = new RoutePathWriter(file, delta))
+		{
+			for (Map.Entry<String, ArrayList<String>> entry : bySource.entrySet())
+			{
+				Town source = townGraph.getVertex(entry.getKey());
+				ArrayList<Town> targets = targets(entry.getValue());
+				ArrayList<ArrayList<Road>> paths = townGraph.paths(source, targets, profile);
+				for (int i = 0; i < targets.size(); i++)
+				{
+					ArrayList<Road> path = paths.get(i);
+					long cost = path == null ? -1 : 0;
+					for (int r = 0; path != null && r < path.size(); r++)
+					{
+						cost += profile.cost(path.get(r));
+					}
+					writer.writePath(entry.getKey(), entry.getValue().get(i), (int) Math.min(cost, RouteSearch.UNREACHABLE - 1), path);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the cheapest set of roads by miles that keeps every connected town
+	 * connected, using every core on large graphs
+	 * @return the roads of the tree, their total miles and the number of trees
+	 */
+	public SpanningTree getMinimumSpanningTree()
+	{
+		return townGraph.minimumSpanningTree();
+	}
+	
+	private int[] getDistances(String town, List<String> others, boolean reverse)
+	{
+		int[] distances = new int[others.size()];
+		Town t = townGraph.getVertex(town);
+		if (t == null)
+		{
+			Arrays.fill(distances, -1);
+			return distances;
+		}
+		
+		ArrayList<Town> targets = targets(others);
+		int[] found = reverse ? townGraph.distancesTo(t, targets) : townGraph.distances(t, targets);
+		for (int i = 0; i < found.length; i++)
+		{
+			distances[i] = found[i] == RouteSearch.UNREACHABLE ? -1 : found[i];
+		}
+		return distances;
+	}
+	
+	/**
+	 * Finds the nearest facility of every town in one search
+	 * @param facilities names of the towns holding a facility, unknown names are ignored
+	 * @return nearest facility and its distance for every town
+	 */
+	public FacilityTable nearestFacilities(Collection<String> facilities)
+	{
+		return townGraph.nearestFacilities(towns(facilities));
+	}
+	
+	/**
+	 * Returns the path from a town to the nearest of the facilities
+	 * @param town name of the starting town
+	 * @param facilities names of the towns holding a facility, unknown names are ignored
+	 * @return an Arraylist of roads leading to the nearest facility, empty if the
+	 * town is unknown, is a facility, or cannot reach one
+	 */
+	public ArrayList<String> getPathToNearest(String town, Collection<String> facilities)
+	{
+		Town t = townGraph.getVertex(town);
+		if (t == null)
+			return new ArrayList<String>();
+		
+		return townGraph.pathToNearestFacility(t, towns(facilities));
+	}
+	
+	/**
+	 * Computes landmark tables that speed up getPath until the graph changes
+	 * @param count number of landmarks, more give tighter bounds but cost a full search each
+	 */
+	public void computeLandmarks(int count)
+	{
+		townGraph.computeLandmarks(count);
+	}
+	
+	/**
+	 * Computes landmark tables that speed up getPath with a profile until the graph changes,
+	 * each profile keeps its own tables
+	 * @param count number of landmarks
+	 * @param profile cost of each road
+	 */
+	public void computeLandmarks(int count, CostProfile profile)
+	{
+		townGraph.computeLandmarks(count, profile);
+	}
+	
+	/**
+	 * Writes the landmark tables so they can be loaded with the same road file later
+	 * @param file file to write
+	 * @return false if there are no tables for the current graph
+	 * @throws IOException if the file cannot be written
+	 */
+	public boolean saveLandmarks(File file) throws IOException
+	{
+		return saveLandmarks(file, CostProfile.SHORTEST);
+	}
+	
+	/**
+	 * Writes the landmark tables of a profile, loadLandmarks reads the profile back from the file
+	 * @param file file to write
+	 * @param profile profile whose tables are written
+	 * @return false if there are no tables for the current graph and profile
+	 * @throws IOException if the file cannot be written
+	 */
+	public boolean saveLandmarks(File file, CostProfile profile) throws IOException
+	{
+		GraphSnapshot current = townGraph.snapshot();
+		LandmarkTable landmarks = townGraph.getLandmarks(profile);
+		if (landmarks == null || !landmarks.isValidFor(current))
+			return false;
+		
+		landmarks.save(file, current);
+		return true;
+	}
+	
+	/**
+	 * Reads landmark tables written by saveLandmarks
+	 * @param file file to read
+	 * @return false if the tables were written for different roads and must be computed again
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean loadLandmarks(File file) throws IOException
+	{
+		LandmarkTable landmarks = LandmarkTable.load(file, townGraph.snapshot());
+		if (landmarks == null)
+			return false;
+		
+		townGraph.setLandmarks(landmarks);
+		return true;
+	}
+	
+	/**
+	 * Recovers the graph from a change log directory and logs every later edit there.
+	 * Each edit is durable in the log before it is made, so an edit a reader has seen
+	 * survives a crash, and edits of different towns share the log's fsyncs.
+	 * The snapshot in the directory is loaded and the edits logged after it are
+	 * replayed on top of the towns and roads already in the graph, then a new
+	 * snapshot of the result is written so the next start replays nothing.
+	 * @param directory directory of the log, created if missing
+	 * @throws IOException if the log cannot be read or written
+	 */
+	public void openChangeLog(File directory) throws IOException
+	{
+		openChangeLog(directory, ChangeLog.DEFAULT_COMPACT_BYTES);
+	}
+	
+	/**
+	 * Recovers from and attaches a change log like openChangeLog(File)
+	 * @param directory directory of the log, created if missing
+	 * @param compactBytes log size past which a new snapshot is written
+	 * @throws IOException if the log cannot be read or written
+	 */
+	public void openChangeLog(File directory, long compactBytes) throws IOException
+	{
+		if (changeLog != null)
+			throw new IllegalStateException("a change log is already open");
+		
+		ChangeLog log = new ChangeLog(directory, compactBytes);
+		insertBatch(log.readSnapshot());
+		// an edit refused when it was made is refused again, whatever the reason
+		log.replay(new ChangeLog.Changes()
+		{
+			public void addTown(String town)
+			{
+				insertTown(town);
+			}
+			
+			public void addRoad(String town1, String town2, int weight, String roadName, boolean oneWay, int seconds, int toll)
+			{
+				insertRoad(town1, town2, weight, roadName, oneWay, seconds, toll);
+			}
+			
+			public void deleteRoad(String town1, String town2, String roadName)
+			{
+				removeRoad(town1, town2, roadName);
+			}
+			
+			public void deleteTown(String town)
+			{
+				removeTown(town);
+			}
+			
+			public void reweightRoad(String town1, String town2, String roadName, int weight)
+			{
+				try
+				{
+					changeWeight(town1, town2, roadName, weight);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// the road's profile could not keep the weight when the edit was made either
+				}
+			}
+			
+			public void setTravelTimeProfile(String town1, String town2, String roadName, int[] seconds, int[] factors)
+			{
+				try
+				{
+					int profile = seconds.length == 0 ? -1 : TravelTimeProfiles.SHARED.register(seconds, factors);
+					changeTravelTimeProfile(town1, town2, roadName, profile);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// the profile was refused when the edit was made too
+				}
+			}
+		});
+		townGraph.lockAll();
+		try
+		{
+			if (changeLog != null)
+				throw new IllegalStateException("a change log is already open");
+			changeLog = log;
+		}
+		finally
+		{
+			townGraph.unlockAll();
+		}
+		// also covers any edit made while the log was being replayed
+		compactChangeLog();
+	}
+	
+	/**
+	 * Writes a snapshot of the graph to the change log and deletes the edits it covers,
+	 * done on its own once the log grows past its compaction size
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public synchronized void compactChangeLog() throws IOException
+	{
+		ChangeLog log;
+		GraphSnapshot snapshot;
+		long generation;
+		// every edit logged before the rotation has been made, and no other is logged until the snapshot is taken
+		townGraph.lockAll();
+		try
+		{
+			log = changeLog;
+			if (log == null)
+				return;
+			
+			generation = log.rotate();
+			snapshot = townGraph.snapshot();
+		}
+		finally
+		{
+			townGraph.unlockAll();
+		}
+		log.writeSnapshot(snapshot, generation);
+	}
+	
+	/**
+	 * Makes every logged edit durable and stops logging
+	 * @throws IOException if the log cannot be written
+	 */
+	public void closeChangeLog() throws IOException
+	{
+		ChangeLog log;
+		townGraph.lockAll();
+		try
+		{
+			log = changeLog;
+			changeLog = null;
+		}
+		finally
+		{
+			townGraph.unlockAll();
+		}
+		if (log != null)
+			log.close();
+	}
+	
+	/**
+	 * Makes one edit while the stripes of the towns it touches are held. With a
+	 * change log the edit is checked, then logged and made durable, and only then
+	 * made, so no reader sees an edit that a crash could lose. Edits of other
+	 * towns are logged at the same time and share fsyncs, while edits of the same
+	 * town are logged in the order they are made, so replay reaches the same graph.
+	 * @param first id of one town, or ALL_TOWNS for edits that can touch any town
+	 * @param second id of the other town
+	 * @param check whether the edit can be made, asked with the stripes held
+	 * @param record appends the edit to the log, returning its sequence number
+	 * @param change makes the edit
+	 * @return false if the check or the change refused the edit
+	 * @throws UncheckedIOException if the log cannot be written, the edit is then
+	 * not made though its record may already be on disk and be replayed on restart
+	 */
+	private boolean edit(int first, int second, BooleanSupplier check, ToLongFunction<ChangeLog> record, BooleanSupplier change)
+	{
+		if (first == ALL_TOWNS)
+			townGraph.lockAll();
+		else
+			townGraph.lockTowns(first, second);
+		ChangeLog log;
+		boolean changed;
+		try
+		{
+			log = changeLog;
+			if (log != null)
+			{
+				if (!check.getAsBoolean())
+					return false;
+				commit(log, record.applyAsLong(log));
+			}
+			// a logged edit the graph still refuses is refused the same way on replay
+			changed = change.getAsBoolean();
+		}
+		finally
+		{
+			if (first == ALL_TOWNS)
+				townGraph.unlockAll();
+			else
+				townGraph.unlockTowns(first, second);
+		}
+		if (log != null)
+			compactIfNeeded(log);
+		return changed;
+	}
+	
+	// waits for logged edits to be durable
+	private void commit(ChangeLog log, long sequence)
+	{
+		try
+		{
+			log.commit(sequence);
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	// compacts the log once it has grown too long, by the one writer that claims it while the others carry on
+	private void compactIfNeeded(ChangeLog log)
+	{
+		if (!log.needsCompaction() || !compacting.compareAndSet(false, true))
+			return;
+		
+		try
+		{
+			// checked again, a compaction may have finished since the first check
+			if (log.needsCompaction())
+				compactChangeLog();
+		}
+		catch (IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+		finally
+		{
+			compacting.set(false);
+		}
+	}
+	
+	// the road of the current graph with the name between two towns, or null
+	private Road findRoad(String town1, String town2, String roadName)
+	{
+		Town t1 = townGraph.getVertex(town1);
+		Town t2 = townGraph.getVertex(town2);
+		if (t1 == null || t2 == null || roadName == null)
+			return null;
+		
+		return townGraph.snapshot().getRoad(t1.getId(), t2.getId(), roadName);
+	}
+	
+	// the towns of the graph with the given names, null for unknown names so they are never interned as towns
+	private ArrayList<Town> targets(List<String> names)
+	{
+		ArrayList<Town> targets = new ArrayList<Town>();
+		for (String name : names)
+		{
+			targets.add(townGraph.getVertex(name));
+		}
+		return targets;
+	}
+	
+	// the towns of the graph with the given names, skipping unknown names
+	private ArrayList<Town> towns(Collection<String> names)
+	{
+		ArrayList<Town> towns = new ArrayList<Town>();
+		for (String name : names)
+		{
+			Town town = townGraph.getVertex(name);
+			if (town != null)
+				towns.add(town);
+		}
+		return towns;
 	}
 
 	
 	
 	/**
-	 * 
+	 * Reads roads from a file, one per line as road-name,miles;town-name;town-name,
+	 * and adds them together with their towns in a single batch. A line ending in
+	 * ;oneway adds a road that only leads from the first town to the second, and
+	 * the miles may be followed by ,seconds and ,toll in cents. A line holding
+	 * only a town-name adds that town, with or without roads.
 	 * @param file
 	 * @throws FileNotFoundException
 	 */
 	public void populateTownGraph(File file) throws FileNotFoundException
 	{
-		// road-name,miles;town-name;town-name
-		Scanner inputFile = new Scanner(file);
+		populateTownGraph(file, null);
+	}
+	
+	/**
+	 * Reads roads from a file like populateTownGraph(File), reporting how far it has got
+	 * @param file
+	 * @param progress receives the fraction of the file read so far, from 0 to 1, may be null
+	 * @throws FileNotFoundException
+	 */
+	public void populateTownGraph(File file, DoubleConsumer progress) throws FileNotFoundException
+	{
+		// road-name,miles[,seconds[,toll]];town-name;town-name[;oneway] or town-name
+		ProgressInputStream input = new ProgressInputStream(new FileInputStream(file), file.length(), progress);
+		Scanner inputFile = new Scanner(input);
+		GraphBatch batch = new GraphBatch();
 		
 		String[] towns;
 		
-		while (inputFile.hasNext())
+		try
 		{
-			towns = inputFile.next().strip().split(",|;");
-			
-			String roadName = towns[0];
-			int miles = Integer.parseInt(towns[1]);
-			
-			Town town1 = new Town(towns[2]);
-			Town town2 = new Town(towns[3]);
-			
-			townGraph.addVertex(town1);
-			townGraph.addVertex(town2);
-			townGraph.addEdge(town1, town2, miles, roadName);
+			while (inputFile.hasNext())
+			{
+				towns = inputFile.next().strip().split(";");
+				if (towns.length == 1)
+				{
+					batch.addTown(towns[0]);
+					continue;
+				}
+				String[] road = towns[0].split(",");
+				
+				String roadName = road[0];
+				int miles = Integer.parseInt(road[1]);
+				int seconds = road.length > 2 ? Integer.parseInt(road[2]) : -1;
+				int toll = road.length > 3 ? Integer.parseInt(road[3]) : 0;
+				boolean oneWay = towns.length > 3 && towns[3].equals("oneway");
+				
+				batch.addRoad(towns[1], towns[2], miles, roadName, oneWay, seconds, toll);
+			}
+		}
+		finally
+		{
+			inputFile.close();
+		}
+		
+		apply(batch);
+		if (progress != null)
+			progress.accept(1.0);
+	}
+	
+	/**
+	 * Adds all towns and roads of a batch at once, building adjacency in one pass,
+	 * then makes its removals and new weights, publishing everything as one change
+	 * @param batch towns and roads to add, roads to remove or reweight, afterwards it
+	 * holds the ones that were actually changed
+	 */
+	public void apply(GraphBatch batch)
+	{
+		ChangeLog log;
+		// a batch can touch any town, and the graph locks every stripe to apply it anyway
+		townGraph.lockAll();
+		try
+		{
+			log = changeLog;
+			if (log != null)
+			{
+				// thrown before the batch is logged
+				Graph.checkTravelTimeProfiles(batch);
+				commit(log, logBatch(log, batch));
+			}
+			insertBatch(batch);
+		}
+		finally
+		{
+			townGraph.unlockAll();
+		}
+		if (log != null)
+			compactIfNeeded(log);
+	}
+	
+	/**
+	 * Appends what a batch asks for, before it is applied, in the order the graph
+	 * applies it: towns, roads with the towns they name and their travel time
+	 * profiles, removals and reweights. Roads the graph already has are left out,
+	 * since a profile record would change the road there is; whatever else the
+	 * graph leaves out replay leaves out too.
+	 * @return sequence number of the last record, 0 for an empty batch
+	 */
+	private long logBatch(ChangeLog log, GraphBatch batch)
+	{
+		long sequence = 0;
+		HashSet<String> logged = new HashSet<String>();
+		HashSet<Road> added = new HashSet<Road>();
+		for (Town town : batch.getTowns())
+		{
+			if (townGraph.getVertex(town) == null && logged.add(town.getName()))
+				sequence = log.addTown(town.getName());
+		}
+		for (Road road : batch.getRoads())
+		{
+			for (Town town : new Town[] { road.getSource(), road.getDestination() })
+			{
+				if (townGraph.getVertex(town) == null && logged.add(town.getName()))
+					sequence = log.addTown(town.getName());
+			}
+			if (townGraph.edgeSet().contains(road) || !added.add(road))
+				continue;
 			
+			sequence = log.addRoad(road.getSource().getName(), road.getDestination().getName(), road.getWeight(), road.getName(), road.isOneWay(),
+					road.hasDefaultTime() ? -1 : road.getTime(), road.getToll());
+			if (road.getTravelTimeProfile() >= 0)
+				sequence = log.setTravelTimeProfile(road.getSource().getName(), road.getDestination().getName(), road.getName(), road.getTravelTimeProfile());
 		}
+		for (Road road : batch.getRemovals())
+		{
+			sequence = log.deleteRoad(road.getSource().getName(), road.getDestination().getName(), road.getName());
+		}
+		for (Road road : batch.getReweights())
+		{
+			sequence = log.reweightRoad(road.getSource().getName(), road.getDestination().getName(), road.getName(), road.getWeight());
+		}
+		return sequence;
+	}
+	
+	private void insertBatch(GraphBatch batch)
+	{
+		townGraph.apply(batch);
 		
-		inputFile.close();
-	    
+		for (Town town : batch.getAddedTowns())
+		{
+			townIndex.add(town.getName());
+		}
+		for (Road road : batch.getAddedRoads())
+		{
+			roadIndex.add(road.getName());
+		}
+		for (Road road : batch.getRemovedRoads())
+		{
+			roadIndex.remove(road.getName());
+		}
+	}
+	
+	/**
+	 * Counts the bytes read from a file and reports each new whole percent
+	 */
+	private static class ProgressInputStream extends FilterInputStream
+	{
+		private final long length;
+		private final DoubleConsumer progress;
+		private long read;
+		private int percent;
+		
+		private ProgressInputStream(InputStream in, long length, DoubleConsumer progress)
+		{
+			super(in);
+			this.length = length;
+			this.progress = progress;
+		}
+		
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b >= 0)
+				advance(1);
+			return b;
+		}
+		
+		@Override
+		public int read(byte[] buffer, int offset, int count) throws IOException
+		{
+			int n = super.read(buffer, offset, count);
+			if (n > 0)
+				advance(n);
+			return n;
+		}
+		
+		private void advance(int n)
+		{
+			read += n;
+			int now = length > 0 ? (int) Math.min(99, read * 100 / length) : 0;
+			// the last percent is reported once the roads are in the graph
+			if (progress != null && now > percent)
+			{
+				percent = now;
+				progress.accept(now / 100.0);
+			}
+		}
 	}
 }
@@ -0,0 +1,196 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores how the travel time of roads changes over the day
+ * A profile is a list of breakpoints, each a second of the day and a factor in
+ * thousandths of the road's own time, with the factor between two breakpoints
+ * found on the straight line joining them and the last breakpoint joined to the
+ * first of the next day. A road refers to a profile by its int id, so every road
+ * with the same rush hours shares one profile whatever its length, and all the
+ * breakpoints sit in one int array read without locking.
+ *
+ * Time-dependent searches are exact when leaving a road later never means
+ * arriving sooner, which holds as long as the road's time falls no faster than
+ * the clock runs; isFifo checks that for a road's own time.
+ * @author - Faith Fru Nchang
+ */
+public class TravelTimeProfiles
+{
+	public static final int SECONDS_PER_DAY = 24 * 60 * 60;
+	// factor of a road travelled at its own time
+	public static final int FREE_FLOW = 1000;
+	// the profiles every road refers to
+	public static final TravelTimeProfiles SHARED = new TravelTimeProfiles();
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// id of each profile by its breakpoints, so identical profiles are stored once
+	private final ConcurrentHashMap<String, Integer> ids;
+	// second and factor of every breakpoint, profile p holds pairs offsets[p] to offsets[p + 1]
+	private volatile int[] breakpoints;
+	private volatile int[] offsets;
+	// written under the lock after the offsets, so a reader that sees an id can find its breakpoints
+	private volatile int size;
+
+	public TravelTimeProfiles()
+	{
+		ids = new ConcurrentHashMap<>();
+		breakpoints = new int[INITIAL_CAPACITY * 2];
+		offsets = new int[INITIAL_CAPACITY + 1];
+		size = 0;
+	}
+
+	/**
+	 * returns the id of a profile, storing it if no identical profile is stored yet
+	 * @param seconds - second of the day of each breakpoint, increasing and from 0 to SECONDS_PER_DAY - 1
+	 * @param factors - travel time at each breakpoint in thousandths of the road's own time
+	 * @return id of the profile
+	 * @throws IllegalArgumentException if the breakpoints are empty, out of order or a factor is not positive
+	 */
+	public int register(int[] seconds, int[] factors)
+	{
+		if (seconds.length == 0 || seconds.length != factors.length)
+			throw new IllegalArgumentException("a profile needs one factor per breakpoint");
+		for (int i = 0; i < seconds.length; i++)
+		{
+			if (seconds[i] < 0 || seconds[i] >= SECONDS_PER_DAY || (i > 0 && seconds[i] <= seconds[i - 1]))
+				throw new IllegalArgumentException("breakpoint seconds must increase within a day");
+			if (factors[i] <= 0)
+				throw new IllegalArgumentException("factor " + factors[i] + " is not positive");
+		}
+
+		String key = Arrays.toString(seconds) + Arrays.toString(factors);
+		Integer id = ids.get(key);
+		if (id != null)
+			return id;
+
+		synchronized (this)
+		{
+			id = ids.get(key);
+			if (id != null)
+				return id;
+
+			int start = offsets[size];
+			int[] pool = breakpoints;
+			if (start + seconds.length * 2 > pool.length)
+				pool = Arrays.copyOf(pool, Math.max(pool.length * 2, start + seconds.length * 2));
+			for (int i = 0; i < seconds.length; i++)
+			{
+				pool[start + i * 2] = seconds[i];
+				pool[start + i * 2 + 1] = factors[i];
+			}
+			int[] ends = offsets;
+			if (size + 2 > ends.length)
+				ends = Arrays.copyOf(ends, ends.length * 2);
+			ends[size + 1] = start + seconds.length * 2;
+
+			// the breakpoints are published before the offsets that let readers find them
+			breakpoints = pool;
+			offsets = ends;
+			ids.put(key, size);
+			return size++;
+		}
+	}
+
+	/**
+	 * gets the number of profiles stored
+	 * @return size
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * gets the seconds of the breakpoints of a profile
+	 * @param id - profile id
+	 * @return a copy of the seconds
+	 */
+	public int[] getSeconds(int id)
+	{
+		return column(id, 0);
+	}
+
+	/**
+	 * gets the factors of the breakpoints of a profile
+	 * @param id - profile id
+	 * @return a copy of the factors
+	 */
+	public int[] getFactors(int id)
+	{
+		return column(id, 1);
+	}
+
+	private int[] column(int id, int field)
+	{
+		int[] ends = offsets;
+		int[] pool = breakpoints;
+		int[] values = new int[(ends[id + 1] - ends[id]) / 2];
+		for (int i = 0; i < values.length; i++)
+		{
+			values[i] = pool[ends[id] + i * 2 + field];
+		}
+		return values;
+	}
+
+	/**
+	 * gets the time to travel a road entered at a time of day
+	 * @param id - profile id
+	 * @param baseSeconds - the road's own travel time
+	 * @param timeOfDay - second of the day the road is entered, 0 to SECONDS_PER_DAY - 1
+	 * @return travel time in seconds
+	 */
+	public int travelTime(int id, int baseSeconds, int timeOfDay)
+	{
+		int[] ends = offsets;
+		int[] pool = breakpoints;
+		int start = ends[id];
+		int count = (ends[id + 1] - start) / 2;
+
+		// the last breakpoint at or before the time, or the day's last one if the time is before the first
+		int low = 0;
+		int high = count - 1;
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			if (pool[start + mid * 2] <= timeOfDay)
+				low = mid + 1;
+			else
+				high = mid - 1;
+		}
+		int before = high < 0 ? count - 1 : high;
+		int after = before + 1 == count ? 0 : before + 1;
+
+		int fromSecond = pool[start + before * 2];
+		int toSecond = pool[start + after * 2];
+		if (toSecond <= fromSecond)
+			toSecond += SECONDS_PER_DAY;
+		int at = timeOfDay < fromSecond ? timeOfDay + SECONDS_PER_DAY : timeOfDay;
+		long fromFactor = pool[start + before * 2 + 1];
+		long toFactor = pool[start + after * 2 + 1];
+		long factor = count == 1 ? fromFactor : fromFactor + (toFactor - fromFactor) * (at - fromSecond) / (toSecond - fromSecond);
+		return (int) Math.min((long) baseSeconds * factor / FREE_FLOW, Integer.MAX_VALUE / 2);
+	}
+
+	/**
+	 * checks that a road with a profile is never reached sooner by entering it later
+	 * @param id - profile id
+	 * @param baseSeconds - the road's own travel time
+	 * @return true if the travel time never falls faster than the clock runs
+	 */
+	public boolean isFifo(int id, int baseSeconds)
+	{
+		int[] seconds = getSeconds(id);
+		int[] factors = getFactors(id);
+		for (int i = 0; i < seconds.length; i++)
+		{
+			int next = (i + 1) % seconds.length;
+			long span = seconds[next] - seconds[i] + (next <= i ? SECONDS_PER_DAY : 0);
+			long drop = (long) baseSeconds * (factors[i] - factors[next]);
+			if (drop > span * FREE_FLOW)
+				return false;
+		}
+		return true;
+	}
+}
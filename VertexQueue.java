@@ -0,0 +1,40 @@
+/**
+ * Priority queue of town ids used by RouteSearch
+ * Keys are read from an int array owned by the caller, usually the distances
+ * of a SearchWorkspace. An id is in the queue at most once; when its key is
+ * lowered the caller calls insertOrDecrease again to move it.
+ * @author - Faith Fru Nchang
+ */
+public interface VertexQueue
+{
+	/**
+	 * empties the queue and switches to a new key array, growing the queue to match
+	 * @param keys - key of each id
+	 */
+	public void reset(int[] keys);
+
+	/**
+	 * marks an id as never inserted, must be called before the first insert of the
+	 * id after a reset since the queue does not clear its per id state between searches
+	 * @param id - town id
+	 */
+	public void forget(int id);
+
+	/**
+	 * checks if the queue is empty
+	 * @return true if there are no ids in the queue
+	 */
+	public boolean isEmpty();
+
+	/**
+	 * adds an id, or moves it if it is already in the queue and its key was lowered
+	 * @param id - town id whose key was set or lowered
+	 */
+	public void insertOrDecrease(int id);
+
+	/**
+	 * removes the id with the smallest key
+	 * @return the id
+	 */
+	public int pollMin();
+}